@@ -1,6 +1,7 @@
 package org.gluu.oxtrust.api.server.api.impl;
 
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -23,6 +24,8 @@ import org.gluu.model.GluuAttribute;
 import org.gluu.model.GluuStatus;
 import org.gluu.oxtrust.api.server.util.ApiConstants;
 import org.gluu.oxtrust.api.server.util.Constants;
+import org.gluu.oxtrust.api.server.util.ListResponses;
+import org.gluu.oxtrust.api.server.util.ListResponses.Page;
 import org.gluu.oxtrust.service.AttributeService;
 import org.gluu.oxtrust.service.filter.ProtectedApi;
 import org.gluu.util.StringHelper;
@@ -55,13 +58,24 @@ public class AttributeWebResource extends BaseWebResource {
 	@Operation(summary = "Get all attributes", description = "Gets all the gluu attributes")
 	@ApiResponses(value = {
 			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = GluuAttribute[].class)), description = "Success"),
+			@ApiResponse(responseCode = "400", description = "Invalid cursor"),
 			@ApiResponse(responseCode = "500", description = "Server error") })
 	@ProtectedApi(scopes = { READ_ACCESS })
-	public Response getAllAttributes() {
+	public Response getAllAttributes(@DefaultValue("0") @QueryParam(ApiConstants.START_INDEX) int startIndex,
+			@DefaultValue("0") @QueryParam(ApiConstants.COUNT) int count,
+			@QueryParam(ApiConstants.CURSOR) String cursor) {
 		log(logger, "Processing getAllAttributes()");
 		try {
 			List<GluuAttribute> gluuAttributes = attributeService.getAllAttributes();
+			if (ListResponses.isPagedRequest(count, cursor)) {
+				Page page = ListResponses.getPage(startIndex, count, cursor);
+				return ListResponses.paged(page, gluuAttributes, Function.identity());
+			}
+
 			return Response.ok(gluuAttributes).build();
+		} catch (IllegalArgumentException e) {
+			log(logger, e);
+			return Response.status(Response.Status.BAD_REQUEST).build();
 		} catch (Exception e) {
 			log(logger, e);
 			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -1,5 +1,8 @@
 package org.gluu.oxtrust.api.server.api.impl;
 
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Providers;
+
 import org.slf4j.Logger;
 
 import io.swagger.v3.oas.annotations.info.Contact;
@@ -22,6 +25,9 @@ public class BaseWebResource {
 	protected static final String READ_ACCESS = "oxtrust-api-read";
 	protected static final String WRITE_ACCESS = "oxtrust-api-write";
 
+	@Context
+	protected Providers providers;
+
 	public BaseWebResource() {
 	}
 
@@ -0,0 +1,80 @@
+package org.gluu.oxtrust.api.server.api.impl;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.gluu.oxtrust.api.server.util.ApiConstants;
+import org.gluu.oxtrust.api.server.util.Constants;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshStatistics;
+import org.gluu.oxtrust.ldap.cache.service.CacheRefreshMetricsService;
+import org.gluu.oxtrust.service.filter.ProtectedApi;
+import org.slf4j.Logger;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+
+@Path(ApiConstants.BASE_API_URL + ApiConstants.CONFIGURATION + ApiConstants.CACHE_REFRESH + ApiConstants.STATISTICS)
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+@ApplicationScoped
+public class CacheRefreshStatisticsWebResource extends BaseWebResource {
+
+	@Inject
+	private Logger logger;
+
+	@Inject
+	private CacheRefreshMetricsService cacheRefreshMetricsService;
+
+	@GET
+	@Operation(summary = "Get last cache refresh statistics", description = "Get phase durations and throughput of last finished cache refresh run")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = CacheRefreshStatistics.class)), description = Constants.RESULT_SUCCESS),
+			@ApiResponse(responseCode = "404", description = "Not found"),
+			@ApiResponse(responseCode = "500", description = "Server error") })
+	@ProtectedApi(scopes = { READ_ACCESS })
+	public Response getLastStatistics() {
+		log(logger, "Get last cache refresh statistics");
+		try {
+			return toResponse(cacheRefreshMetricsService.getLastStatistics());
+		} catch (Exception e) {
+			log(logger, e);
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	@GET
+	@Path(ApiConstants.CURRENT)
+	@Operation(summary = "Get running cache refresh statistics", description = "Get phase durations and throughput of running cache refresh")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = CacheRefreshStatistics.class)), description = Constants.RESULT_SUCCESS),
+			@ApiResponse(responseCode = "404", description = "Not found"),
+			@ApiResponse(responseCode = "500", description = "Server error") })
+	@ProtectedApi(scopes = { READ_ACCESS })
+	public Response getCurrentStatistics() {
+		log(logger, "Get running cache refresh statistics");
+		try {
+			return toResponse(cacheRefreshMetricsService.getCurrentStatistics());
+		} catch (Exception e) {
+			log(logger, e);
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	private Response toResponse(CacheRefreshStatistics statistics) {
+		if (statistics == null) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+
+		return Response.ok(statistics).build();
+	}
+
+}
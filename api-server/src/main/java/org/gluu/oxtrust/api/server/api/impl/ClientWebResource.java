@@ -6,6 +6,8 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.gluu.oxtrust.api.server.util.ApiConstants;
+import org.gluu.oxtrust.api.server.util.ListResponses;
+import org.gluu.oxtrust.api.server.util.ListResponses.Page;
 import org.gluu.oxtrust.service.ClientService;
 import org.gluu.oxtrust.service.ScopeService;
 import org.gluu.oxtrust.model.OxAuthClient;
@@ -23,6 +25,7 @@ import javax.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 @Path(ApiConstants.BASE_API_URL + ApiConstants.CLIENTS)
 @Consumes(MediaType.APPLICATION_JSON)
@@ -46,13 +49,26 @@ public class ClientWebResource extends BaseWebResource {
 	@Operation(summary = "Get openid connect clients", description = "Get openid connect clients")
 	@ApiResponses(value = {
 			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = OxAuthClient[].class)), description = "Success"),
+			@ApiResponse(responseCode = "400", description = "Invalid cursor"),
 			@ApiResponse(responseCode = "500", description = "Server error") })
 	@ProtectedApi(scopes = { READ_ACCESS })
-	public Response listClients() {
+	public Response listClients(@DefaultValue("0") @QueryParam(ApiConstants.START_INDEX) int startIndex,
+			@DefaultValue("0") @QueryParam(ApiConstants.COUNT) int count,
+			@QueryParam(ApiConstants.CURSOR) String cursor) {
 		log(logger, "Get all clients ");
 		try {
-			List<OxAuthClient> clientList = clientService.getAllClients();
-			return Response.ok(clientList).build();
+			if (ListResponses.isPagedRequest(count, cursor)) {
+				Page page = ListResponses.getPage(startIndex, count, cursor);
+				return ListResponses.paged(page, clientService.findPagedClients(page.getStart(), page.getCount()),
+						Function.identity());
+			}
+
+			return ListResponses.streamed(providers, OxAuthClient.class,
+					batchOperation -> clientService.processClients(batchOperation, ListResponses.STREAM_CHUNK_SIZE),
+					Function.identity());
+		} catch (IllegalArgumentException e) {
+			log(logger, e);
+			return Response.status(Response.Status.BAD_REQUEST).build();
 		} catch (Exception e) {
 			log(logger, e);
 			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
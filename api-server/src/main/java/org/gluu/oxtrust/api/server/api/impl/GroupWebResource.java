@@ -8,6 +8,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.gluu.oxtrust.api.server.model.GluuGroupApi;
 import org.gluu.oxtrust.api.server.model.GluuPersonApi;
 import org.gluu.oxtrust.api.server.util.ApiConstants;
+import org.gluu.oxtrust.api.server.util.ListResponses;
+import org.gluu.oxtrust.api.server.util.ListResponses.Page;
 import org.gluu.oxtrust.service.GroupService;
 import org.gluu.oxtrust.service.OrganizationService;
 import org.gluu.oxtrust.service.PersonService;
@@ -51,16 +53,31 @@ public class GroupWebResource extends BaseWebResource {
 	@Operation(summary = "Get groups", description = "Get groups")
 	@ApiResponses(value = {
 			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = GluuGroupApi[].class)), description = "Success"),
+			@ApiResponse(responseCode = "400", description = "Invalid cursor"),
 			@ApiResponse(responseCode = "500", description = "Server error") })
 	@ProtectedApi(scopes = { READ_ACCESS })
-	public Response listGroups(@DefaultValue("0") @QueryParam(ApiConstants.SIZE) int size) {
+	public Response listGroups(@DefaultValue("0") @QueryParam(ApiConstants.SIZE) int size,
+			@DefaultValue("0") @QueryParam(ApiConstants.START_INDEX) int startIndex,
+			@DefaultValue("0") @QueryParam(ApiConstants.COUNT) int count,
+			@QueryParam(ApiConstants.CURSOR) String cursor) {
 		log("Get groups");
 		try {
-			if (size <= 0) {
-				return Response.ok(convert(groupService.getAllGroups())).build();
-			} else {
+			if (size > 0) {
 				return Response.ok(convert(groupService.getAllGroups(size))).build();
 			}
+
+			if (ListResponses.isPagedRequest(count, cursor)) {
+				Page page = ListResponses.getPage(startIndex, count, cursor);
+				return ListResponses.paged(page, groupService.findPagedGroups(page.getStart(), page.getCount()),
+						group -> convert(Arrays.asList(group)).get(0));
+			}
+
+			return ListResponses.streamed(providers, GluuGroupApi.class,
+					batchOperation -> groupService.processGroups(batchOperation, ListResponses.STREAM_CHUNK_SIZE),
+					group -> convert(Arrays.asList(group)).get(0));
+		} catch (IllegalArgumentException e) {
+			log(logger, e);
+			return Response.status(Response.Status.BAD_REQUEST).build();
 		} catch (Exception e) {
 			log(logger, e);
 			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -228,16 +245,10 @@ public class GroupWebResource extends BaseWebResource {
 		try {
 			Objects.requireNonNull(groupInum, "Group's inum should not be null");
 			Objects.requireNonNull(memberInum, "Member's inum should not be null");
-			GluuGroup group = groupService.getGroupByInum(groupInum);
+			String groupDn = groupService.getDnForGroup(groupInum);
 			GluuCustomPerson person = personService.getPersonByInum(memberInum);
-			if (group != null && person != null) {
-				List<String> members = new ArrayList<String>();
-				if (group.getMembers() != null) {
-					members = group.getMembers();
-				}
-				members.add(personService.getDnForPerson(person.getInum()));
-				group.setMembers(members);
-				groupService.updateGroup(group);
+			if (groupService.containsGroup(groupDn) && person != null) {
+				groupService.addMember(groupDn, personService.getDnForPerson(person.getInum()));
 				return Response.ok(Response.Status.OK).build();
 			} else {
 				return Response.status(Response.Status.NOT_FOUND).build();
@@ -260,13 +271,10 @@ public class GroupWebResource extends BaseWebResource {
 		try {
 			Objects.requireNonNull(groupInum, "Group's inum should not be null");
 			Objects.requireNonNull(memberInum, "Member's inum should not be null");
-			GluuGroup group = groupService.getGroupByInum(groupInum);
+			String groupDn = groupService.getDnForGroup(groupInum);
 			GluuCustomPerson person = personService.getPersonByInum(memberInum);
-			if (group != null && person != null) {
-				List<String> members = new ArrayList<String>(group.getMembers());
-				members.remove(personService.getDnForPerson(person.getInum()));
-				group.setMembers(members);
-				groupService.updateGroup(group);
+			if (groupService.containsGroup(groupDn) && person != null) {
+				groupService.removeMember(groupDn, personService.getDnForPerson(person.getInum()));
 				return Response.ok(Response.Status.OK).build();
 			} else {
 				return Response.status(Response.Status.NOT_FOUND).build();
@@ -317,8 +325,8 @@ public class GroupWebResource extends BaseWebResource {
 	private List<GluuPersonApi> computeMembers(List<String> membersDn) {
 		List<GluuPersonApi> gluuCustomPersons = new ArrayList<GluuPersonApi>();
 		if (membersDn != null && !membersDn.isEmpty()) {
-			membersDn.stream().forEach(e -> {
-				gluuCustomPersons.add(new GluuPersonApi(personService.getPersonByDn(e)));
+			personService.findPersonsByDns(membersDn, GluuPersonApi.RETURN_ATTRIBUTES).stream().forEach(e -> {
+				gluuCustomPersons.add(new GluuPersonApi(e));
 			});
 		}
 		return gluuCustomPersons;
@@ -1,28 +1,50 @@
 package org.gluu.oxtrust.api.server.api.impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.gluu.oxtrust.api.server.model.BulkPersonResultApi;
 import org.gluu.oxtrust.api.server.model.GluuPersonApi;
 import org.gluu.oxtrust.api.server.util.ApiConstants;
+import org.gluu.oxtrust.api.server.util.ListResponses;
+import org.gluu.oxtrust.api.server.util.ListResponses.Page;
 import org.gluu.oxtrust.service.PersonService;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.service.filter.ProtectedApi;
+import org.gluu.persist.exception.EntryPersistenceException;
+import org.gluu.persist.exception.operation.DuplicateEntryException;
 import org.gluu.util.StringHelper;
 import org.slf4j.Logger;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Path(ApiConstants.BASE_API_URL + ApiConstants.USERS)
 @Consumes(MediaType.APPLICATION_JSON)
@@ -30,26 +52,49 @@ import java.util.Objects;
 @ApplicationScoped
 public class PeopleWebResource extends BaseWebResource {
 
+	private static final String[] UID_OWNER_RETURN_ATTRIBUTES = { "inum", "uid" };
+	private static final int BULK_CHUNK_SIZE = 500;
+	private static final int BULK_WRITE_CONCURRENCY = 4;
+	private static final int BULK_MAX_PERSONS = 10000;
+
 	@Inject
 	private Logger logger;
 
 	@Inject
 	private PersonService personService;
 
+	// Shared by all bulk requests to limit number of concurrent DB writes
+	private ExecutorService bulkExecutorService;
+
 	public PeopleWebResource() {
 	}
 
+	@PostConstruct
+	public void init() {
+		this.bulkExecutorService = Executors.newFixedThreadPool(BULK_WRITE_CONCURRENCY);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		this.bulkExecutorService.shutdownNow();
+	}
+
 	@GET
-	@Operation(summary = "Get people", description = "Get people")
+	@Operation(summary = "Get people", description = "Get people. One page is returned if count or cursor is specified")
 	@ApiResponses(value = {
 			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = GluuPersonApi[].class)), description = "Success"),
+			@ApiResponse(responseCode = "400", description = "Invalid cursor"),
 			@ApiResponse(responseCode = "500", description = "Server error") })
 	@ProtectedApi(scopes = { READ_ACCESS })
-	public Response listPeople() {
+	public Response listPeople(@DefaultValue("0") @QueryParam(ApiConstants.START_INDEX) int startIndex,
+			@DefaultValue("0") @QueryParam(ApiConstants.COUNT) int count,
+			@QueryParam(ApiConstants.CURSOR) String cursor) {
 		try {
 			log(logger, "Get people");
-			List<GluuPersonApi> groups = convert(personService.findAllPersons(null));
-			return Response.ok(groups).build();
+			return findPersons(null, startIndex, count, cursor);
+		} catch (IllegalArgumentException e) {
+			log(logger, e);
+			return Response.status(Response.Status.BAD_REQUEST).build();
 		} catch (Exception e) {
 			log(logger, e);
 			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -58,16 +103,22 @@ public class PeopleWebResource extends BaseWebResource {
 
 	@GET
 	@Path(ApiConstants.SEARCH)
-	@Operation(summary = "Search person", description = "Search person")
+	@Operation(summary = "Search person", description = "Search person. One page is returned if count or cursor is specified")
 	@ApiResponses(value = {
 			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = GluuPersonApi[].class)), description = "Success"),
+			@ApiResponse(responseCode = "400", description = "Invalid cursor"),
 			@ApiResponse(responseCode = "500", description = "Server error") })
 	@ProtectedApi(scopes = { READ_ACCESS })
-	public Response searchPeople(@QueryParam(ApiConstants.SEARCH_PATTERN) @NotNull String pattern) {
+	public Response searchPeople(@QueryParam(ApiConstants.SEARCH_PATTERN) @NotNull String pattern,
+			@DefaultValue("0") @QueryParam(ApiConstants.START_INDEX) int startIndex,
+			@DefaultValue("0") @QueryParam(ApiConstants.COUNT) int count,
+			@QueryParam(ApiConstants.CURSOR) String cursor) {
 		try {
 			log(logger, "Search person with pattern= " + pattern);
-			List<GluuCustomPerson> groups = personService.searchPersons(pattern);
-			return Response.ok(convert(groups)).build();
+			return findPersons(pattern, startIndex, count, cursor);
+		} catch (IllegalArgumentException e) {
+			log(logger, e);
+			return Response.status(Response.Status.BAD_REQUEST).build();
 		} catch (Exception e) {
 			log(logger, e);
 			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -123,6 +174,63 @@ public class PeopleWebResource extends BaseWebResource {
 		}
 	}
 
+	@POST
+	@Path(ApiConstants.BULK)
+	@Consumes({ MediaType.APPLICATION_JSON, ApiConstants.NDJSON_MEDIA_TYPE })
+	@Operation(summary = "Add or update persons", description = "Add or update persons from JSON array or NDJSON. Person is updated if inum of existing person is specified. Records after first 10000 are rejected")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = BulkPersonResultApi[].class)), description = "Success"),
+			@ApiResponse(responseCode = "400", description = "Invalid request"),
+			@ApiResponse(responseCode = "500", description = "Server error") })
+	@ProtectedApi(scopes = { WRITE_ACCESS })
+	public Response bulkPersons(InputStream input) {
+		log(logger, "Add or update persons");
+		List<BulkPersonResultApi> results = new ArrayList<BulkPersonResultApi>();
+		// Records are read with same mapper as single person requests
+		ObjectReader personReader = ListResponses.getObjectMapper(providers, GluuPersonApi.class)
+				.readerFor(GluuPersonApi.class);
+		try (MappingIterator<GluuPersonApi> records = personReader.readValues(input)) {
+			List<GluuPersonApi> chunk = new ArrayList<GluuPersonApi>(BULK_CHUNK_SIZE);
+			try {
+				while (records.hasNext()) {
+					if (results.size() + chunk.size() >= BULK_MAX_PERSONS) {
+						results.addAll(processBulkChunk(bulkExecutorService, chunk, results.size()));
+						BulkPersonResultApi result = new BulkPersonResultApi(results.size(), null, null);
+						result.fail(Response.Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode(),
+								"Too many persons. Maximum is " + BULK_MAX_PERSONS);
+						results.add(result);
+
+						return Response.ok(results).build();
+					}
+
+					chunk.add(records.next());
+					if (chunk.size() == BULK_CHUNK_SIZE) {
+						results.addAll(processBulkChunk(bulkExecutorService, chunk, results.size()));
+						chunk.clear();
+					}
+				}
+			} catch (RuntimeJsonMappingException e) {
+				// Report records which were processed before invalid one
+				log(logger, e);
+				results.addAll(processBulkChunk(bulkExecutorService, chunk, results.size()));
+				BulkPersonResultApi result = new BulkPersonResultApi(results.size(), null, null);
+				result.fail(Response.Status.BAD_REQUEST.getStatusCode(), "Invalid record: " + e.getMessage());
+				results.add(result);
+
+				return Response.ok(results).build();
+			}
+			results.addAll(processBulkChunk(bulkExecutorService, chunk, results.size()));
+
+			return Response.ok(results).build();
+		} catch (JsonProcessingException e) {
+			log(logger, e);
+			return Response.status(Response.Status.BAD_REQUEST).build();
+		} catch (Exception e) {
+			log(logger, e);
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
 	@PUT
 	@Operation(summary = "Update person", description = "Update a person")
 	@ApiResponses(value = {
@@ -174,6 +282,143 @@ public class PeopleWebResource extends BaseWebResource {
 		}
 	}
 
+	private Response findPersons(String pattern, int startIndex, int count, String cursor) {
+		if (ListResponses.isPagedRequest(count, cursor)) {
+			Page page = ListResponses.getPage(startIndex, count, cursor);
+			return ListResponses.paged(page, personService.findPagedPersons(pattern, page.getStart(),
+					page.getCount(), GluuPersonApi.RETURN_ATTRIBUTES), GluuPersonApi::new);
+		}
+
+		return ListResponses.streamed(providers, GluuPersonApi.class,
+				batchOperation -> personService.processPersons(pattern, batchOperation,
+						ListResponses.STREAM_CHUNK_SIZE, GluuPersonApi.RETURN_ATTRIBUTES),
+				GluuPersonApi::new);
+	}
+
+	private List<BulkPersonResultApi> processBulkChunk(ExecutorService executorService, List<GluuPersonApi> records,
+			int firstIndex) throws Exception {
+		List<BulkPersonResultApi> results = new ArrayList<BulkPersonResultApi>(records.size());
+		if (records.isEmpty()) {
+			return results;
+		}
+
+		// Load persons to update and owners of user names for whole chunk
+		List<String> existingDns = new ArrayList<String>();
+		Set<String> userNames = new HashSet<String>();
+		for (GluuPersonApi record : records) {
+			if (record == null) {
+				continue;
+			}
+			if (StringHelper.isNotEmpty(record.getInum())) {
+				existingDns.add(personService.getDnForPerson(record.getInum()));
+			}
+			if (StringHelper.isNotEmpty(record.getUserName())) {
+				userNames.add(record.getUserName());
+			}
+		}
+
+		Map<String, GluuCustomPerson> existingPersons = new HashMap<String, GluuCustomPerson>();
+		for (GluuCustomPerson person : personService.findPersonsByDns(existingDns)) {
+			existingPersons.put(StringHelper.toLowerCase(person.getInum()), person);
+		}
+
+		Map<String, String> userNameOwners = new HashMap<String, String>();
+		for (GluuCustomPerson person : personService.findPersonsByUids(new ArrayList<String>(userNames),
+				UID_OWNER_RETURN_ATTRIBUTES)) {
+			userNameOwners.put(StringHelper.toLowerCase(person.getUid()), person.getInum());
+		}
+
+		Set<String> chunkUserNames = new HashSet<String>();
+		Set<String> chunkInums = new HashSet<String>();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(records.size());
+		for (int i = 0; i < records.size(); i++) {
+			GluuPersonApi record = records.get(i);
+			BulkPersonResultApi result = (record == null) ? new BulkPersonResultApi(firstIndex + i, null, null)
+					: new BulkPersonResultApi(firstIndex + i, record.getInum(), record.getUserName());
+			results.add(result);
+
+			String error = validateBulkRecord(record);
+			if (error != null) {
+				result.fail(Response.Status.BAD_REQUEST.getStatusCode(), error);
+				continue;
+			}
+
+			String userNameKey = StringHelper.toLowerCase(record.getUserName());
+			String inumKey = StringHelper.toLowerCase(record.getInum());
+			if (!chunkUserNames.add(userNameKey) || ((inumKey != null) && !chunkInums.add(inumKey))) {
+				result.fail(Response.Status.CONFLICT.getStatusCode(), "Person is specified more than once");
+				continue;
+			}
+
+			GluuCustomPerson existingPerson = (inumKey == null) ? null : existingPersons.get(inumKey);
+			String userNameOwner = userNameOwners.get(userNameKey);
+			if ((userNameOwner != null)
+					&& ((existingPerson == null) || !userNameOwner.equalsIgnoreCase(existingPerson.getInum()))) {
+				result.fail(Response.Status.CONFLICT.getStatusCode(), "Duplicate UID value: " + record.getUserName());
+				continue;
+			}
+
+			tasks.add(() -> {
+				savePerson(record, existingPerson, result);
+				return null;
+			});
+		}
+
+		for (Future<Void> future : executorService.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				// Task reports own failures in result
+				throw new EntryPersistenceException("Failed to save persons", e.getCause());
+			}
+		}
+
+		return results;
+	}
+
+	private String validateBulkRecord(GluuPersonApi record) {
+		if (record == null) {
+			return "Person is null";
+		}
+		if (StringHelper.isEmpty(record.getUserName())) {
+			return "userName is required";
+		}
+		if (record.getStatus() == null) {
+			return "status is required";
+		}
+
+		return null;
+	}
+
+	private void savePerson(GluuPersonApi record, GluuCustomPerson existingPerson, BulkPersonResultApi result) {
+		try {
+			if (existingPerson == null) {
+				GluuCustomPerson gluuPerson = copyAttributes(record);
+				String inum = record.getInum();
+				if (StringHelper.isEmpty(inum)) {
+					inum = personService.generateInumForNewPerson();
+				}
+				gluuPerson.setDn(personService.getDnForPerson(inum));
+				gluuPerson.setInum(inum);
+				personService.persistPerson(gluuPerson);
+				result.success(Response.Status.CREATED.getStatusCode(), inum);
+			} else {
+				String inum = existingPerson.getInum();
+				record.setInum(inum);
+				record.setPassword(existingPerson.getUserPassword());
+				GluuCustomPerson personToUpdate = updateValues(existingPerson, record);
+				personToUpdate.setDn(personService.getDnForPerson(inum));
+				personService.updatePerson(personToUpdate);
+				result.success(Response.Status.OK.getStatusCode(), inum);
+			}
+		} catch (DuplicateEntryException e) {
+			result.fail(Response.Status.CONFLICT.getStatusCode(), e.getMessage());
+		} catch (Exception e) {
+			log(logger, e);
+			result.fail(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), e.getMessage());
+		}
+	}
+
 	private List<GluuPersonApi> convert(List<GluuCustomPerson> persons) {
 		List<GluuPersonApi> result = new ArrayList<GluuPersonApi>();
 		for (GluuCustomPerson p : persons) {
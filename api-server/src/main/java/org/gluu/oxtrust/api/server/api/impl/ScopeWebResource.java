@@ -7,6 +7,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.gluu.model.GluuAttribute;
 import org.gluu.oxtrust.api.server.util.ApiConstants;
+import org.gluu.oxtrust.api.server.util.ListResponses;
+import org.gluu.oxtrust.api.server.util.ListResponses.Page;
 import org.gluu.oxtrust.service.AttributeService;
 import org.gluu.oxtrust.service.ScopeService;
 import org.gluu.oxtrust.service.filter.ProtectedApi;
@@ -23,6 +25,7 @@ import javax.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 @Path(ApiConstants.BASE_API_URL + ApiConstants.SCOPES)
 @Consumes(MediaType.APPLICATION_JSON)
@@ -45,12 +48,24 @@ public class ScopeWebResource extends BaseWebResource {
 	@Operation(summary = "Get all scopes", description = "Get all scopes")
 	@ApiResponses(value = {
 			@ApiResponse(responseCode = "200", content = @Content(schema = @Schema(implementation = Scope[].class)), description = "Success"),
+			@ApiResponse(responseCode = "400", description = "Invalid cursor"),
 			@ApiResponse(responseCode = "500", description = "Server error") })
 	@ProtectedApi(scopes = { READ_ACCESS })
-	public Response getAllScopes() {
+	public Response getAllScopes(@DefaultValue("0") @QueryParam(ApiConstants.START_INDEX) int startIndex,
+			@DefaultValue("0") @QueryParam(ApiConstants.COUNT) int count,
+			@QueryParam(ApiConstants.CURSOR) String cursor) {
 		log(logger, "List openid connect scopes ");
 		try {
-			return Response.ok(scopeService.searchScopes(null, 100)).build();
+			List<Scope> scopes = scopeService.getAllScopesList(0);
+			if (ListResponses.isPagedRequest(count, cursor)) {
+				Page page = ListResponses.getPage(startIndex, count, cursor);
+				return ListResponses.paged(page, scopes, Function.identity());
+			}
+
+			return Response.ok(scopes).build();
+		} catch (IllegalArgumentException e) {
+			log(logger, e);
+			return Response.status(Response.Status.BAD_REQUEST).build();
 		} catch (Exception e) {
 			log(logger, e);
 			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -8,6 +8,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.gluu.oxtrust.api.GluuServerStatus;
 import org.gluu.oxtrust.api.server.util.ApiConstants;
 import org.gluu.oxtrust.service.ConfigurationService;
+import org.gluu.oxtrust.service.EntryCountService;
 import org.gluu.oxtrust.model.GluuConfiguration;
 import org.gluu.oxtrust.model.GluuOxTrustStat;
 import org.gluu.oxtrust.service.filter.ProtectedApi;
@@ -32,6 +33,8 @@ public class ServerStatusWebResource extends BaseWebResource {
 	private Logger logger;
 	@Inject
 	private ConfigurationService configurationService;
+	@Inject
+	private EntryCountService entryCountService;
 
 	@GET
 	@Operation(summary = "Get server status", description = "Get server status")
@@ -59,8 +62,13 @@ public class ServerStatusWebResource extends BaseWebResource {
 		status.setHostname(conf.getHostname());
 		status.setIpAddress(configuration.getIpAddress());
 		status.setUptime(configuration.getSystemUptime());
-		status.setPersonCount(configuration.getPersonCount());
-		status.setGroupCount(configuration.getGroupCount());
+		if (entryCountService.isCounted()) {
+			status.setPersonCount(String.valueOf(entryCountService.getPersonCount()));
+			status.setGroupCount(String.valueOf(entryCountService.getGroupCount()));
+		} else {
+			status.setPersonCount(configuration.getPersonCount());
+			status.setGroupCount(configuration.getGroupCount());
+		}
 		status.setLastUpdate(conf.getLastUpdate());
 		status.setFreeMemory(configuration.getFreeMemory());
 		status.setFreeDiskSpace(configuration.getFreeDiskSpace());
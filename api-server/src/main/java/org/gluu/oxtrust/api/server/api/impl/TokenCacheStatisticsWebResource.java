@@ -0,0 +1,73 @@
+package org.gluu.oxtrust.api.server.api.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.gluu.oxtrust.api.server.util.ApiConstants;
+import org.gluu.oxtrust.api.server.util.Constants;
+import org.gluu.oxtrust.auth.TokenCache;
+import org.gluu.oxtrust.auth.oauth.TokenIntrospectionService;
+import org.gluu.oxtrust.auth.uma.UmaPermissionService;
+import org.gluu.oxtrust.service.filter.ProtectedApi;
+import org.slf4j.Logger;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+
+@Path(ApiConstants.BASE_API_URL + ApiConstants.CONFIGURATION + ApiConstants.TOKEN_CACHE + ApiConstants.STATISTICS)
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+@ApplicationScoped
+public class TokenCacheStatisticsWebResource extends BaseWebResource {
+
+	@Inject
+	private Logger logger;
+
+	@Inject
+	private TokenIntrospectionService tokenIntrospectionService;
+
+	@Inject
+	private UmaPermissionService umaPermissionService;
+
+	@GET
+	@Operation(summary = "Get token cache statistics", description = "Get hit, miss and eviction counters of enabled token introspection and RPT status caches")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", description = Constants.RESULT_SUCCESS),
+			@ApiResponse(responseCode = "404", description = "Not found"),
+			@ApiResponse(responseCode = "500", description = "Server error") })
+	@ProtectedApi(scopes = { READ_ACCESS })
+	public Response getStatistics() {
+		log(logger, "Get token cache statistics");
+		try {
+			Map<String, TokenCache.Statistics> statistics = new LinkedHashMap<String, TokenCache.Statistics>();
+			addStatistics(statistics, "introspection", tokenIntrospectionService.getCacheStatistics());
+			addStatistics(statistics, "rpt", umaPermissionService.getRptStatusCacheStatistics());
+			if (statistics.isEmpty()) {
+				return Response.status(Response.Status.NOT_FOUND).build();
+			}
+
+			return Response.ok(statistics).build();
+		} catch (Exception e) {
+			log(logger, e);
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	private void addStatistics(Map<String, TokenCache.Statistics> statistics, String name,
+			TokenCache.Statistics cacheStatistics) {
+		if (cacheStatistics != null) {
+			statistics.put(name, cacheStatistics);
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.gluu.oxtrust.api.server.api.impl;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.gluu.oxtrust.api.server.util.ApiConstants;
+import org.gluu.oxtrust.api.server.util.Constants;
+import org.gluu.oxtrust.auth.oauth.TokenIntrospectionService;
+import org.gluu.oxtrust.auth.uma.UmaPermissionService;
+import org.gluu.oxtrust.service.filter.ProtectedApi;
+import org.gluu.util.StringHelper;
+import org.slf4j.Logger;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+
+@Path(ApiConstants.BASE_API_URL + ApiConstants.CONFIGURATION + ApiConstants.TOKEN_CACHE)
+@Produces(MediaType.APPLICATION_JSON)
+@ApplicationScoped
+public class TokenCacheWebResource extends BaseWebResource {
+
+	@Inject
+	private Logger logger;
+
+	@Inject
+	private TokenIntrospectionService tokenIntrospectionService;
+
+	@Inject
+	private UmaPermissionService umaPermissionService;
+
+	@POST
+	@Path(ApiConstants.EVICT)
+	@Consumes(MediaType.TEXT_PLAIN)
+	@Operation(summary = "Evict token", description = "Remove cached status of token, e.g. after token revocation")
+	@ApiResponses(value = { @ApiResponse(responseCode = "200", description = Constants.RESULT_SUCCESS),
+			@ApiResponse(responseCode = "400", description = "Token is empty"),
+			@ApiResponse(responseCode = "500", description = "Server error") })
+	@ProtectedApi(scopes = { WRITE_ACCESS })
+	public Response evictToken(String token) {
+		log(logger, "Evict token from token caches");
+		try {
+			if (StringHelper.isEmpty(token)) {
+				return Response.status(Response.Status.BAD_REQUEST).build();
+			}
+
+			tokenIntrospectionService.evictToken(token.trim());
+			umaPermissionService.evictRptStatus(token.trim());
+
+			return Response.ok().build();
+		} catch (Exception e) {
+			log(logger, e);
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	@DELETE
+	@Operation(summary = "Clear token caches", description = "Remove all cached token statuses")
+	@ApiResponses(value = { @ApiResponse(responseCode = "200", description = Constants.RESULT_SUCCESS),
+			@ApiResponse(responseCode = "500", description = "Server error") })
+	@ProtectedApi(scopes = { WRITE_ACCESS })
+	public Response clearCaches() {
+		log(logger, "Clear token caches");
+		try {
+			tokenIntrospectionService.clearCache();
+			umaPermissionService.clearRptStatusCache();
+
+			return Response.ok().build();
+		} catch (Exception e) {
+			log(logger, e);
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+}
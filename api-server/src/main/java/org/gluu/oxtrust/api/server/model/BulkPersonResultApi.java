@@ -0,0 +1,84 @@
+package org.gluu.oxtrust.api.server.model;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Result of one record of bulk person request. Status is HTTP status which
+ * single person request would return
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "bulkpersonresult")
+public class BulkPersonResultApi implements Serializable {
+
+	private static final long serialVersionUID = -2306583958436460216L;
+
+	private int index;
+	private String inum;
+	private String userName;
+	private int status;
+	private String error;
+
+	public BulkPersonResultApi() {
+	}
+
+	public BulkPersonResultApi(int index, String inum, String userName) {
+		this.index = index;
+		this.inum = inum;
+		this.userName = userName;
+	}
+
+	public void success(int status, String inum) {
+		this.status = status;
+		this.inum = inum;
+	}
+
+	public void fail(int status, String error) {
+		this.status = status;
+		this.error = error;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
+	public String getInum() {
+		return inum;
+	}
+
+	public void setInum(String inum) {
+		this.inum = inum;
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public void setUserName(String userName) {
+		this.userName = userName;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+}
@@ -18,6 +18,11 @@ public class GluuPersonApi implements Serializable {
 	 * 
 	 */
 	private static final long serialVersionUID = -4216836182127315394L;
+
+	// Attributes which are used in GluuPersonApi
+	public static final String[] RETURN_ATTRIBUTES = { "inum", "uid", "displayName", "givenName", "sn", "mail",
+			"gluuStatus", "oxCreationTimestamp" };
+
 	private String inum;
 	private String surName;
 	private String givenName;
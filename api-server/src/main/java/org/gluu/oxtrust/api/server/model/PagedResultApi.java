@@ -0,0 +1,77 @@
+package org.gluu.oxtrust.api.server.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * One page of list endpoint results. Next page can be requested with
+ * nextCursor, it's null on last page
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "pagedresult")
+public class PagedResultApi<T> implements Serializable {
+
+	private static final long serialVersionUID = 2812795094765307141L;
+
+	private int startIndex;
+	private int count;
+	private int totalResults;
+	private String nextCursor;
+	private List<T> entries;
+
+	public PagedResultApi() {
+	}
+
+	public PagedResultApi(int startIndex, int totalResults, String nextCursor, List<T> entries) {
+		this.startIndex = startIndex;
+		this.count = entries.size();
+		this.totalResults = totalResults;
+		this.nextCursor = nextCursor;
+		this.entries = entries;
+	}
+
+	public int getStartIndex() {
+		return startIndex;
+	}
+
+	public void setStartIndex(int startIndex) {
+		this.startIndex = startIndex;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+	}
+
+	public int getTotalResults() {
+		return totalResults;
+	}
+
+	public void setTotalResults(int totalResults) {
+		this.totalResults = totalResults;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	public List<T> getEntries() {
+		return entries;
+	}
+
+	public void setEntries(List<T> entries) {
+		this.entries = entries;
+	}
+
+}
@@ -30,10 +30,16 @@ public final class ApiConstants {
 	public static final String RECAPCTHA = "/recaptcha";
 	public static final String TRUSTS = "/trusts";
 	public static final String SEARCH = "/search";
+	public static final String BULK = "/bulk";
 	public static final String ACTIVE = "/active";
 	public static final String INACTIVE = "/inactive";
 	public static final String CONFIGURATION = "/configuration";
 	public static final String STATUS = "/status";
+	public static final String CACHE_REFRESH = "/cacherefresh";
+	public static final String STATISTICS = "/statistics";
+	public static final String TOKEN_CACHE = "/tokencache";
+	public static final String EVICT = "/evict";
+	public static final String CURRENT = "/current";
 	public static final String TEST = "/test";
 	public static final String STRATEGIES = "/strategies";
 	public static final String OXTRUST_SETTINGS = "/settings";
@@ -58,6 +64,10 @@ public final class ApiConstants {
 	public static final String ID = "id";
 	public static final String DISPLAY_NAME = "displayName";
 	public static final String SEARCH_PATTERN = "pattern";
+	public static final String START_INDEX = "startIndex";
+	public static final String COUNT = "count";
+	public static final String CURSOR = "cursor";
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
 	public static final String SCOPE_INUM_PARAM_PATH = "/{sinum}";
 
 }
@@ -0,0 +1,215 @@
+package org.gluu.oxtrust.api.server.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
+
+import org.gluu.oxtrust.api.server.model.PagedResultApi;
+import org.gluu.persist.model.BatchOperation;
+import org.gluu.persist.model.PagedResult;
+import org.gluu.persist.model.ProcessBatchOperation;
+import org.gluu.util.StringHelper;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+
+/**
+ * Builds responses of list endpoints. Requests with count or cursor get one
+ * page of entries. Other requests get all entries as JSON array which is
+ * written while entries are read from DB. Streamed entries are serialized with
+ * same object mapper as JAX-RS JSON provider uses
+ */
+public final class ListResponses {
+
+	public static final int MAX_PAGE_SIZE = 500;
+	public static final int STREAM_CHUNK_SIZE = 100;
+
+	// Same annotations as default mapper of RESTEasy Jackson provider
+	private static final ObjectMapper DEFAULT_OBJECT_MAPPER = new ObjectMapper();
+
+	static {
+		DEFAULT_OBJECT_MAPPER.setAnnotationIntrospector(AnnotationIntrospector.pair(new JacksonAnnotationIntrospector(),
+				new JaxbAnnotationIntrospector(DEFAULT_OBJECT_MAPPER.getTypeFactory())));
+	}
+
+	private ListResponses() {
+	}
+
+	public static boolean isPagedRequest(int count, String cursor) {
+		return (count > 0) || StringHelper.isNotEmpty(cursor);
+	}
+
+	/**
+	 * Get page requested by start index and count or by cursor of previous page
+	 *
+	 * @throws IllegalArgumentException
+	 *             if cursor is invalid
+	 */
+	public static Page getPage(int startIndex, int count, String cursor) {
+		int start = Math.max(0, startIndex);
+		int size = count;
+		if (StringHelper.isNotEmpty(cursor)) {
+			String[] cursorParts;
+			try {
+				cursorParts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+			} catch (IllegalArgumentException ex) {
+				throw new IllegalArgumentException("Invalid cursor", ex);
+			}
+			if (cursorParts.length != 2) {
+				throw new IllegalArgumentException("Invalid cursor");
+			}
+
+			start = Math.max(0, parseCursorPart(cursorParts[0]));
+			if (size <= 0) {
+				size = parseCursorPart(cursorParts[1]);
+			}
+		}
+
+		return new Page(start, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+	}
+
+	/**
+	 * Build page response from DB paged search result
+	 */
+	public static <T, R> Response paged(Page page, PagedResult<T> pagedResult, Function<T, R> converter) {
+		List<R> entries = convert(pagedResult.getEntries(), converter);
+		int totalResults = pagedResult.getTotalEntriesCount();
+		int nextStart = page.getStart() + entries.size();
+
+		boolean hasNext;
+		if (totalResults > 0) {
+			hasNext = nextStart < totalResults;
+		} else {
+			hasNext = entries.size() >= page.getCount();
+		}
+
+		return Response.ok(new PagedResultApi<R>(page.getStart(), totalResults,
+				hasNext ? encodeCursor(nextStart, page.getCount()) : null, entries)).build();
+	}
+
+	/**
+	 * Build page response from entries which are already loaded
+	 */
+	public static <T, R> Response paged(Page page, List<T> allEntries, Function<T, R> converter) {
+		int fromIndex = Math.min(page.getStart(), allEntries.size());
+		int toIndex = Math.min(fromIndex + page.getCount(), allEntries.size());
+		List<R> entries = convert(allEntries.subList(fromIndex, toIndex), converter);
+
+		return Response.ok(new PagedResultApi<R>(fromIndex, allEntries.size(),
+				toIndex < allEntries.size() ? encodeCursor(toIndex, page.getCount()) : null, entries)).build();
+	}
+
+	/**
+	 * Build response which writes entries passed by search to batch operation
+	 * without collecting them in memory
+	 */
+	public static <T, R> Response streamed(Providers providers, Class<R> entryType, Consumer<BatchOperation<T>> search,
+			Function<T, R> converter) {
+		final ObjectMapper objectMapper = getObjectMapper(providers, entryType);
+		StreamingOutput streamingOutput = new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException {
+				JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+				generator.writeStartArray();
+				try {
+					search.accept(new ProcessBatchOperation<T>() {
+						@Override
+						public void performAction(List<T> entries) {
+							try {
+								for (T entry : entries) {
+									objectMapper.writeValue(generator, converter.apply(entry));
+								}
+								generator.flush();
+							} catch (IOException ex) {
+								throw new UncheckedIOException(ex);
+							}
+						}
+					});
+				} catch (UncheckedIOException ex) {
+					throw ex.getCause();
+				}
+				generator.writeEndArray();
+				generator.close();
+			}
+		};
+
+		return Response.ok(streamingOutput, MediaType.APPLICATION_JSON).build();
+	}
+
+	/**
+	 * Get object mapper which is provided to JAX-RS JSON provider by context
+	 * resolver or mapper with same settings as default one of provider
+	 */
+	public static ObjectMapper getObjectMapper(Providers providers, Class<?> entryType) {
+		if (providers != null) {
+			ContextResolver<ObjectMapper> resolver = providers.getContextResolver(ObjectMapper.class,
+					MediaType.APPLICATION_JSON_TYPE);
+			if (resolver != null) {
+				ObjectMapper objectMapper = resolver.getContext(entryType);
+				if (objectMapper != null) {
+					return objectMapper;
+				}
+			}
+		}
+
+		return DEFAULT_OBJECT_MAPPER;
+	}
+
+	private static <T, R> List<R> convert(List<T> entries, Function<T, R> converter) {
+		List<R> result = new ArrayList<R>(entries.size());
+		for (T entry : entries) {
+			result.add(converter.apply(entry));
+		}
+
+		return result;
+	}
+
+	private static String encodeCursor(int start, int count) {
+		String cursor = start + ":" + count;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static int parseCursorPart(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Invalid cursor", ex);
+		}
+	}
+
+	public static class Page {
+
+		private final int start;
+		private final int count;
+
+		public Page(int start, int count) {
+			this.start = start;
+			this.count = count;
+		}
+
+		public int getStart() {
+			return start;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+	}
+
+}
@@ -0,0 +1,216 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import org.gluu.model.GluuStatus;
+import org.gluu.persist.model.base.Entry;
+import org.gluu.persist.annotation.AttributeName;
+import org.gluu.persist.annotation.AttributesList;
+import org.gluu.persist.annotation.DataEntry;
+import org.gluu.persist.annotation.ObjectClass;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Group attributes without members. It allows to update group without loading
+ * and sending member values
+ */
+@DataEntry(sortBy = { "displayName" })
+@ObjectClass(value = "gluuGroup")
+@JsonInclude(Include.NON_NULL)
+public class GluuBaseGroup extends Entry implements Serializable {
+
+	private static final long serialVersionUID = 5484366328624367418L;
+
+	@AttributeName(ignoreDuringUpdate = true)
+	private String inum;
+
+	@NotNull
+	@Size(min = 0, max = 60, message = "Length of the Display Name should not exceed 60")
+	@AttributeName
+	private String displayName;
+
+	@Size(min = 0, max = 4000, message = "Length of the Description should not exceed 4000")
+	@AttributeName
+	private String description;
+
+	@NotNull
+	@AttributeName
+	private String owner;
+
+	@AttributeName(name = "c")
+	private String countryName;
+
+	@AttributeName(name = "o")
+	private String organization;
+
+	@AttributeName
+	private String seeAlso;
+
+	@AttributeName(name = "gluuStatus")
+	private GluuStatus status;
+
+	@AttributeName(name = "gluuGroupVisibility")
+	private GluuGroupVisibility visibility;
+
+	@AttributesList(name = "name", value = "values", sortByName = true, attributesConfiguration = {
+			@AttributeName(name = "inum", ignoreDuringUpdate = true) })
+	private List<GluuCustomAttribute> customAttributes = new ArrayList<GluuCustomAttribute>();
+
+	public GluuBaseGroup() {
+	}
+
+	/**
+	 * Copy attributes of group except members
+	 */
+	public GluuBaseGroup(GluuBaseGroup group) {
+		setDn(group.getDn());
+		this.inum = group.getInum();
+		this.displayName = group.getDisplayName();
+		this.description = group.getDescription();
+		this.owner = group.getOwner();
+		this.countryName = group.getCountryName();
+		this.organization = group.getOrganization();
+		this.seeAlso = group.getSeeAlso();
+		this.status = group.getStatus();
+		this.visibility = group.getVisibility();
+		if (group.getCustomAttributes() != null) {
+			this.customAttributes = group.getCustomAttributes();
+		}
+	}
+
+	public String getInum() {
+		return inum;
+	}
+
+	public void setInum(String inum) {
+		this.inum = inum;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	public void setDisplayName(String displayName) {
+		this.displayName = displayName;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+
+	public String getCountryName() {
+		return countryName;
+	}
+
+	public void setCountryName(String countryName) {
+		this.countryName = countryName;
+	}
+
+	public String getOrganization() {
+		return organization;
+	}
+
+	public void setOrganization(String organization) {
+		this.organization = organization;
+	}
+
+	public String getSeeAlso() {
+		return seeAlso;
+	}
+
+	public void setSeeAlso(String seeAlso) {
+		this.seeAlso = seeAlso;
+	}
+
+	public GluuStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(GluuStatus status) {
+		this.status = status;
+	}
+
+	public GluuGroupVisibility getVisibility() {
+		return visibility;
+	}
+
+	public void setVisibility(GluuGroupVisibility visibility) {
+		this.visibility = visibility;
+	}
+
+	public List<GluuCustomAttribute> getCustomAttributes() {
+		return customAttributes;
+	}
+
+	public void setCustomAttributes(List<GluuCustomAttribute> customAttributes) {
+		this.customAttributes = customAttributes;
+	}
+
+	public String getAttribute(String attributeName) {
+		String value = null;
+		for (GluuCustomAttribute attribute : customAttributes) {
+			if (attribute.getName().equalsIgnoreCase(attributeName)) {
+				value = attribute.getValue();
+				break;
+			}
+		}
+		return value;
+	}
+
+	public String[] getAttributeArray(String attributeName) {
+		GluuCustomAttribute gluuCustomAttribute = getGluuCustomAttribute(attributeName);
+		if (gluuCustomAttribute == null) {
+			return null;
+		} else {
+			return gluuCustomAttribute.getValues();
+		}
+	}
+
+	public GluuCustomAttribute getGluuCustomAttribute(String attributeName) {
+		for (GluuCustomAttribute gluuCustomAttribute : customAttributes) {
+			if (gluuCustomAttribute.getName().equalsIgnoreCase(attributeName)) {
+				return gluuCustomAttribute;
+			}
+		}
+
+		return null;
+	}
+
+	public void setAttribute(String attributeName, String attributeValue) {
+		GluuCustomAttribute attribute = new GluuCustomAttribute(attributeName, attributeValue);
+		customAttributes.remove(attribute);
+		customAttributes.add(attribute);
+	}
+
+	public void setAttribute(String attributeName, String[] attributeValue) {
+		GluuCustomAttribute attribute = new GluuCustomAttribute(attributeName, attributeValue);
+		customAttributes.remove(attribute);
+		customAttributes.add(attribute);
+	}
+
+}
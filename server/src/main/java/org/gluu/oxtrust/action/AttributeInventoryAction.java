@@ -203,7 +203,10 @@ public class AttributeInventoryAction implements Serializable {
 		response.setContentType("text/plain");
 		response.addHeader("Content-disposition", "attachment; filename=\"attributes.ldif\"");
 		try (ServletOutputStream os = response.getOutputStream()) {
-			ldifService.exportLDIFFile(checkedItems, os);
+			List<String> failedDns = ldifService.exportLDIFFile(checkedItems, os);
+			if (!failedDns.isEmpty()) {
+				log.error("Failed to export attributes: {}", failedDns);
+			}
 			os.flush();
 			facesContext.responseComplete();
 		} catch (Exception e) {
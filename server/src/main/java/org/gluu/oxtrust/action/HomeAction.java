@@ -17,6 +17,7 @@ import org.gluu.oxtrust.model.AuthenticationChartDto;
 import org.gluu.oxtrust.model.GluuConfiguration;
 import org.gluu.oxtrust.model.GluuOxTrustStat;
 import org.gluu.oxtrust.service.ConfigurationService;
+import org.gluu.oxtrust.service.EntryCountService;
 import org.gluu.oxtrust.service.JsonConfigurationService;
 import org.gluu.oxtrust.service.MetricService;
 import org.gluu.oxtrust.service.PermissionService;
@@ -63,6 +64,9 @@ public class HomeAction implements Serializable {
 	@Inject
 	private JsonConfigurationService jsonConfigurationService;
 
+	@Inject
+	private EntryCountService entryCountService;
+
     @Inject
     private LocalCacheService localCacheService;
 
@@ -117,7 +121,14 @@ public class HomeAction implements Serializable {
 	}
 	
 	public GluuOxTrustStat  getServerStat() {
-		return configurationService.getOxtrustStat();
+		GluuOxTrustStat oxTrustStat = configurationService.getOxtrustStat();
+		// Show current counts instead of counts from last status update
+		if (entryCountService.isCounted()) {
+			oxTrustStat.setPersonCount(String.valueOf(entryCountService.getPersonCount()));
+			oxTrustStat.setGroupCount(String.valueOf(entryCountService.getGroupCount()));
+		}
+
+		return oxTrustStat;
 	}
 	
 	public GluuConfiguration  getConfiguration() {
@@ -9,6 +9,7 @@ package org.gluu.oxtrust.action;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,6 +17,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ConversationScoped;
@@ -28,30 +30,30 @@ import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.RandomStringUtils;
 import org.gluu.config.oxtrust.AppConfiguration;
+import org.gluu.jsf2.io.ResponseHelper;
 import org.gluu.jsf2.message.FacesMessages;
 import org.gluu.jsf2.service.ConversationService;
 import org.gluu.model.GluuAttribute;
-import org.gluu.model.GluuUserRole;
 import org.gluu.model.attribute.AttributeDataType;
 import org.gluu.oxtrust.ldap.load.conf.ImportPersonConfiguration;
-import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuCustomPerson;
-import org.gluu.oxtrust.model.table.Table;
 import org.gluu.oxtrust.security.Identity;
-import org.gluu.oxtrust.service.AttributeService;
 import org.gluu.oxtrust.service.ExcelService;
 import org.gluu.oxtrust.service.OrganizationService;
 import org.gluu.oxtrust.service.OxTrustAuditService;
+import org.gluu.oxtrust.service.PersonImportJob;
+import org.gluu.oxtrust.service.PersonImportService;
+import org.gluu.oxtrust.service.PersonImportService.PersonBatchHandler;
+import org.gluu.oxtrust.service.PersonImportService.PersonSource;
 import org.gluu.oxtrust.service.PersonService;
-import org.gluu.oxtrust.service.external.ExternalUpdateUserService;
 import org.gluu.oxtrust.util.OxTrustConstants;
-import org.gluu.persist.exception.EntryPersistenceException;
 import org.gluu.persist.model.AttributeData;
 import org.gluu.service.security.Secure;
 import org.gluu.util.StringHelper;
 import org.primefaces.event.FileUploadEvent;
 import org.primefaces.model.file.UploadedFile;
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Action class for load persons from Excel file
@@ -63,16 +65,19 @@ import org.slf4j.Logger;
 @Secure("#{permissionService.hasPermission('person', 'import')}")
 public class PersonImportAction implements Serializable {
 
-	private String UID = "uid";
+	private static final String UID = "uid";
 
-	private String USER_PASSWORD = "userPassword";
+	private static final String USER_PASSWORD = "userPassword";
 
-	private String SEPARATOR = ";";
+	private static final String MAIL = "mail";
+
+	private static final String SEPARATOR = ";";
 
 	private static final long serialVersionUID = -1270460481895022468L;
 
-	private String[] PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES = { UID, "displayName", "mail" };
-	private String PERSON_PASSWORD_ATTRIBUTE = USER_PASSWORD;
+	private static final int PERSONS_BATCH_SIZE = 100;
+
+	private static final String PERSON_PASSWORD_ATTRIBUTE = USER_PASSWORD;
 
 	@Inject
 	private Logger log;
@@ -84,14 +89,11 @@ public class PersonImportAction implements Serializable {
 	private PersonService personService;
 
 	@Inject
-	private AttributeService attributeService;
+	private PersonImportService personImportService;
 
 	@Inject
 	private AppConfiguration appConfiguration;
 
-	@Inject
-	private ExternalUpdateUserService externalUpdateUserService;
-
 	@Inject
 	private ExcelService excelService;
 
@@ -104,9 +106,6 @@ public class PersonImportAction implements Serializable {
 	@Inject
 	private transient ImportPersonConfiguration importPersonConfiguration;
 
-	@Inject
-	private CustomAttributeAction customAttributeAction;
-
 	@Inject
 	private Identity identity;
 
@@ -119,8 +118,7 @@ public class PersonImportAction implements Serializable {
 	private byte[] fileData;
 
 	private boolean isInitialized;
-	private GluuCustomPerson person;
-	private String inum;
+	private String importJobId;
 
 	public String init() {
 		if (this.isInitialized) {
@@ -138,34 +136,90 @@ public class PersonImportAction implements Serializable {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR, "File to import is invalid");
 			return OxTrustConstants.RESULT_FAILURE;
 		}
-		log.debug("Attempting to add {} persons", fileDataToImport.getPersons().size());
-		try {
-			for (GluuCustomPerson person : fileDataToImport.getPersons()) {
-				this.person = person;
-				String result = initializePerson();
-				if (result.equals(OxTrustConstants.RESULT_SUCCESS)) {
-					result = save();
-				}
-				if (result.equals(OxTrustConstants.RESULT_SUCCESS)) {
-					log.debug("Added new person: {}", person.getUid());
-				} else {
-					log.debug("Failed to add new person: {}", person.getUid());
-					facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to add new person: '%s'", person.getUid());
-				}
-			}
-		} catch (EntryPersistenceException ex) {
-			log.error("Failed to add new person", ex);
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to import users");
+		if (!organizationService.isAllowPersonModification()) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Person modification is not allowed");
 			return OxTrustConstants.RESULT_FAILURE;
 		}
-		log.debug("All {} persons added successfully", fileDataToImport.getPersons().size());
-		oxTrustAuditService.audit(fileDataToImport.getPersons().size() + " USERS IMPORTED ", identity.getUser(),
+		if (getImportJob() != null) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import is already in progress");
+			return OxTrustConstants.RESULT_FAILURE;
+		}
+
+		log.debug("Attempting to add {} persons", fileDataToImport.getCountPersons());
+		// Import is audited when it finishes, page might be already closed at that time
+		String clientAddress = oxTrustAuditService.getClientAddress(
 				(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
-		facesMessages.add(FacesMessage.SEVERITY_INFO, "Users successfully imported");
+		PersonImportJob job;
+		try {
+			job = personImportService.startImport(createFilePersonSource(fileDataToImport.getFileName(),
+					fileDataToImport.getImportAttributes(), null), fileDataToImport.getCountPersons(),
+					identity.getUser(), clientAddress);
+		} catch (RejectedExecutionException ex) {
+			log.error("Failed to start import of persons", ex);
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Too many imports are in progress. Please try later");
+			return OxTrustConstants.RESULT_FAILURE;
+		}
+		this.importJobId = job.getId();
 		removeFileToImport();
+
 		return OxTrustConstants.RESULT_SUCCESS;
 	}
 
+	public PersonImportJob getImportJob() {
+		return personImportService.getJob(this.importJobId);
+	}
+
+	/**
+	 * Called by page poll to report import result once it's finished
+	 */
+	public void checkImportStatus() {
+		PersonImportJob job = getImportJob();
+		if ((job == null) || job.isRunning() || job.isReported()) {
+			return;
+		}
+
+		job.setReported(true);
+		if (job.getFailed() == 0) {
+			log.debug("All {} persons added successfully", job.getAdded());
+			facesMessages.add(FacesMessage.SEVERITY_INFO, "Users successfully imported");
+		} else {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to add %s persons. Download report to see errors",
+					job.getFailed());
+		}
+	}
+
+	public void cancelImport() {
+		PersonImportJob job = getImportJob();
+		if ((job != null) && job.isRunning()) {
+			job.cancel();
+			facesMessages.add(FacesMessage.SEVERITY_INFO, "Import will be cancelled after current batch");
+		}
+	}
+
+	public String downloadImportReport() {
+		PersonImportJob job = getImportJob();
+		if (job == null) {
+			return OxTrustConstants.RESULT_FAILURE;
+		}
+
+		FacesContext facesContext = FacesContext.getCurrentInstance();
+		boolean result = ResponseHelper.downloadFile("import_report.csv", OxTrustConstants.CONTENT_TYPE_TEXT_PLAIN,
+				job.getErrorsReport().getBytes(StandardCharsets.UTF_8), facesContext);
+
+		return result ? OxTrustConstants.RESULT_SUCCESS : OxTrustConstants.RESULT_FAILURE;
+	}
+
+	/**
+	 * Forget finished import to allow import of another file
+	 */
+	public void closeImport() {
+		PersonImportJob job = getImportJob();
+		if ((job != null) && !job.isRunning()) {
+			personImportService.removeJob(this.importJobId);
+			this.importJobId = null;
+		}
+	}
+
 	public String validateFileToImport() {
 		try {
 			removeFileDataToImport();
@@ -176,20 +230,15 @@ public class PersonImportAction implements Serializable {
 				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Bad file.");
 				return OxTrustConstants.RESULT_FAILURE;
 			}
-			Table table;
-			try (InputStream is = new ByteArrayInputStream(this.fileData);) {
-				table = excelService.read(is);
-			} catch (Exception e) {
-				return null;
-			}
-			this.fileDataToImport.setTable(table);
-			if (table != null) {
-				this.fileDataToImport.setFileName(FilenameUtils.getName(file.getFileName()));
-				this.fileDataToImport.setImportAttributes(getAttributesForImport(table));
+			String fileName = FilenameUtils.getName(file.getFileName());
+			List<String> header = readHeader(fileName);
+			if (header != null) {
+				this.fileDataToImport.setFileName(fileName);
+				this.fileDataToImport.setImportAttributes(getAttributesForImport(header));
 				this.fileDataToImport.setReady(true);
 			}
 			if (this.fileDataToImport.isReady()) {
-				boolean valid = prepareAndValidateImportData(this.fileDataToImport.getTable(),
+				boolean valid = prepareAndValidateImportData(this.fileDataToImport.getFileName(),
 						this.fileDataToImport.getImportAttributes());
 				this.fileDataToImport.setReady(valid);
 				if (!valid) {
@@ -218,10 +267,15 @@ public class PersonImportAction implements Serializable {
 		return OxTrustConstants.RESULT_SUCCESS;
 	}
 
+	/**
+	 * Running import continues in background. It's removed by import service
+	 * some time after it finishes
+	 */
 	@PreDestroy
 	public void destroy() {
 		removeFileDataToImport();
 		removeFileToImport();
+		this.importJobId = null;
 	}
 
 	public FileDataToImport getFileDataToImport() {
@@ -246,9 +300,28 @@ public class PersonImportAction implements Serializable {
 		removeFileDataToImport();
 	}
 
-	private boolean prepareAndValidateImportData(Table table, List<ImportAttribute> importAttributes) throws Exception {
+	private List<String> readHeader(String fileName) throws Exception {
+		final List<List<String>> header = new ArrayList<List<String>>(1);
+		try (InputStream is = new ByteArrayInputStream(this.fileData)) {
+			excelService.read(is, fileName, new ExcelService.RowHandler() {
+				@Override
+				public void handleRow(int row, List<String> values) {
+					header.add(values);
+					// There is no need to parse rest of file
+					throw new HeaderReadException();
+				}
+			});
+		} catch (HeaderReadException ex) {
+			return header.get(0);
+		}
+
+		return null;
+	}
+
+	private boolean prepareAndValidateImportData(String fileName, List<ImportAttribute> importAttributes)
+			throws Exception {
 		String attributesString = getAttributesString(this.attributes);
-		if ((table == null) || (importAttributes == null)) {
+		if (importAttributes == null) {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Missing columns: %s", attributesString);
 			return false;
 		}
@@ -260,34 +333,40 @@ public class PersonImportAction implements Serializable {
 			return false;
 		}
 
-		if (table.getCountRows() < 1) {
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. No data found");
+		// Convert rows to GluuCustomPersons batch by batch. Keep only values
+		// which are needed for validation
+		List<String> errors = new ArrayList<String>();
+		PersonsValidator personsValidator = new PersonsValidator();
+		createFilePersonSource(fileName, importAttributes, errors).read(personsValidator);
+		if (!errors.isEmpty()) {
+			for (String error : errors) {
+				facesMessages.add(FacesMessage.SEVERITY_ERROR, "%s", error);
+			}
 			return false;
 		}
 
-		// Convert Excel table to GluuCustomPersons
-		List<GluuCustomPerson> persons = convertTableToPersons(table, importAttributes);
-		if (persons == null) {
+		if (personsValidator.getCount() < 1) {
+			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. No data found");
 			return false;
 		}
 
 		// Check if person already exist
-		if (!validatePersons(persons)) {
-			return false;
-		}
-
-		// Fill persons with default values
-		if (!setDefaultPersonAttributes(persons, importAttributes)) {
+		if (!validatePersons(personsValidator)) {
 			return false;
 		}
 
-		// Store persons
-		log.info("Prepared {} persons for creation", persons.size());
-		this.fileDataToImport.setPersons(persons);
+		log.info("Prepared {} persons for creation", personsValidator.getCount());
+		this.fileDataToImport.setCountPersons(personsValidator.getCount());
 
 		return true;
 	}
 
+	private FilePersonSource createFilePersonSource(String fileName, List<ImportAttribute> importAttributes,
+			List<String> errors) {
+		return new FilePersonSource(excelService, personService, appConfiguration.getSupportedUserStatus().get(1),
+				this.fileData, fileName, importAttributes, errors);
+	}
+
 	private List<ImportAttribute> getMandatoryImportAttributes(List<ImportAttribute> importAttributes) {
 		List<ImportAttribute> result = new ArrayList<ImportAttribute>();
 		for (ImportAttribute importAttribute : importAttributes) {
@@ -310,64 +389,29 @@ public class PersonImportAction implements Serializable {
 		return result;
 	}
 
-	private boolean setDefaultPersonAttributes(List<GluuCustomPerson> persons, List<ImportAttribute> importAttributes)
-			throws Exception {
-		boolean isGeneratePassword = false;
-		for (ImportAttribute importAttribute : importAttributes) {
-			if (importAttribute.getAttribute().getName().equalsIgnoreCase(PERSON_PASSWORD_ATTRIBUTE)
-					&& !importAttribute.getAttribute().isRequred()) {
-				isGeneratePassword = true;
-				break;
-			}
-		}
-
-		for (GluuCustomPerson person : persons) {
-			if (StringHelper.isEmpty(person.getCommonName())) {
-				person.setCommonName(person.getGivenName() + " " + person.getSurname());
-			} else {
-				person.setCommonName(person.getCommonName() + " " + person.getGivenName() + " " + person.getSurname());
-			}
-			person.setDisplayName(person.getCommonName());
-
-			if (isGeneratePassword && StringHelper.isEmpty(person.getUserPassword())) {
-				person.setUserPassword(RandomStringUtils.randomAlphanumeric(16));
-			}
-
-		}
-
-		return true;
-	}
-
-	private boolean validatePersons(List<GluuCustomPerson> persons) throws Exception {
-		Set<String> uids = new HashSet<String>();
-		Set<String> mails = new HashSet<String>();
-		for (GluuCustomPerson person : persons) {
-			uids.add(person.getUid());
-			mails.add(person.getMail());
-		}
-
-		if (uids.size() != persons.size()) {
+	private boolean validatePersons(PersonsValidator personsValidator) throws Exception {
+		if (personsValidator.isDuplicateUid()) {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR,
 					"Import failed. There are persons with simular uid(s) in input file");
 			return false;
 		}
 
-		if (mails.size() != persons.size()) {
+		if (personsValidator.isDuplicateMail()) {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR,
 					"Import failed. There are persons with simular mail(s) in input file");
 			return false;
 		}
 
-		List<GluuCustomPerson> existPersons = personService.findPersonsByUids(new ArrayList<String>(uids),
-				PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES);
+		List<GluuCustomPerson> existPersons = personImportService.findExistingPersons(UID,
+				personsValidator.getUids());
 		if (existPersons.size() > 0) {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. There are persons with existing uid(s): %s",
 					personService.getPersonUids(existPersons));
 			return false;
 		}
 
-		List<GluuCustomPerson> existEmailPersons = personService.findPersonsByMailids(new ArrayList<String>(mails),
-				PERSON_IMPORT_PERSON_LOCKUP_RETURN_ATTRIBUTES);
+		List<GluuCustomPerson> existEmailPersons = personImportService.findExistingPersons(MAIL,
+				personsValidator.getMails());
 		if (existEmailPersons.size() > 0) {
 			facesMessages.add(FacesMessage.SEVERITY_ERROR,
 					"Import failed. There are persons with existing mailid(s): %s",
@@ -378,90 +422,6 @@ public class PersonImportAction implements Serializable {
 		return true;
 	}
 
-	protected List<GluuCustomPerson> convertTableToPersons(Table table, List<ImportAttribute> importAttributes)
-			throws Exception {
-		Map<String, List<AttributeData>> entriesAttributes = new HashMap<String, List<AttributeData>>();
-		Map<String, String> uidPAsswords = new HashMap<String, String>();
-		int rows = table.getCountRows();
-		boolean validTable = true;
-		for (int i = 1; i <= rows; i++) {
-			List<AttributeData> attributeDataList = new ArrayList<AttributeData>();
-			String uid = null;
-			String password = null;
-			for (ImportAttribute importAttribute : importAttributes) {
-				if (importAttribute.getCol() == -1) {
-					continue;
-				}
-				GluuAttribute attribute = importAttribute.getAttribute();
-				String cellValue = table.getCellValue(importAttribute.getCol(), i);
-				boolean isMultiValue = attribute.getOxMultiValuedAttribute();
-				if (StringHelper.isEmpty(cellValue)) {
-					if (attribute.isRequred()) {
-						facesMessages.add(FacesMessage.SEVERITY_ERROR, "Import failed. Empty '%s' not allowed",
-								attribute.getDisplayName());
-						validTable = false;
-					}
-					continue;
-				}
-				String ldapValue = getTypedValue(attribute, cellValue);
-				if (StringHelper.isEmpty(ldapValue)) {
-					facesMessages.add(FacesMessage.SEVERITY_ERROR,
-							"Invalid value '%s' in column '%s' at row %s were specified", cellValue,
-							attribute.getDisplayName(), i + 1);
-					validTable = false;
-					continue;
-				}
-				if (attribute.getName().equalsIgnoreCase(UID)) {
-					uid = ldapValue;
-				}
-				if (attribute.getName().equalsIgnoreCase(USER_PASSWORD)) {
-					password = ldapValue;
-				}
-				if (isMultiValue) {
-					AttributeData attributeData = new AttributeData(attribute.getName(), ldapValue.split(SEPARATOR));
-					attributeDataList.add(attributeData);
-				} else {
-					AttributeData attributeData = new AttributeData(attribute.getName(), ldapValue);
-					attributeDataList.add(attributeData);
-				}
-			}
-			entriesAttributes.put(Integer.toString(i), attributeDataList);
-			uidPAsswords.put(uid, password);
-		}
-		if (!validTable) {
-			return null;
-		}
-		List<GluuCustomPerson> persons = personService.createEntities(entriesAttributes);
-		log.trace("Found {} persons in input Excel file", persons.size());
-		for (GluuCustomPerson person : persons) {
-			if (person.getStatus() == null) {
-				person.setStatus(appConfiguration.getSupportedUserStatus().get(1));
-			}
-			if (uidPAsswords.containsKey(person.getUid())) {
-				String password = uidPAsswords.get(person.getUid());
-				if (password != null) {
-					person.setUserPassword(uidPAsswords.get(person.getUid().trim().toString()));
-				} else {
-					person.setUserPassword(person.getUid());
-				}
-			}
-		}
-		return persons;
-	}
-
-	private String getTypedValue(GluuAttribute attribute, String value) {
-		if (AttributeDataType.STRING.equals(attribute.getDataType())
-				|| attribute.getName().equalsIgnoreCase("gluuStatus")) {
-			return value;
-		} else if (AttributeDataType.BOOLEAN.equals(attribute.getDataType())) {
-			Boolean gluuBoolean = Boolean.valueOf(value);
-			if (gluuBoolean != null) {
-				return gluuBoolean.toString();
-			}
-		}
-		return null;
-	}
-
 	private String getAttributesString(List<GluuAttribute> attributes) {
 		StringBuilder sb = new StringBuilder();
 
@@ -480,16 +440,15 @@ public class PersonImportAction implements Serializable {
 		return sb.toString();
 	}
 
-	private List<ImportAttribute> getAttributesForImport(Table table) {
+	private List<ImportAttribute> getAttributesForImport(List<String> header) {
 		List<ImportAttribute> importAttributes = new ArrayList<ImportAttribute>();
-		if ((table == null) || (table.getCountCols() < 1) || (table.getCountRows() < 1)) {
+		if (header.isEmpty()) {
 			return importAttributes;
 		}
 
-		int cols = table.getCountCols();
 		List<String> addedAttributes = new ArrayList<String>(this.attributes.size());
-		for (int i = 0; i <= cols; i++) {
-			String cellValue = table.getCellValue(i, 0);
+		for (int i = 0; i < header.size(); i++) {
+			String cellValue = header.get(i);
 			if (StringHelper.isEmpty(cellValue)) {
 				continue;
 			}
@@ -519,80 +478,244 @@ public class PersonImportAction implements Serializable {
 		return result;
 	}
 
-	private void initAttributes() {
-		List<GluuAttribute> attributes = attributeService.getAllPersonAttributes(GluuUserRole.ADMIN);
-		List<String> origins = attributeService.getAllAttributeOrigins(attributes);
-		List<GluuCustomAttribute> customAttributes = this.person.getCustomAttributes();
-		boolean newPerson = (customAttributes == null) || customAttributes.isEmpty();
-		if (newPerson) {
-			customAttributes = new ArrayList<GluuCustomAttribute>();
-			this.person.setCustomAttributes(customAttributes);
+	public org.primefaces.model.file.UploadedFile getFile() {
+		return file;
+	}
+
+	public void setFile(org.primefaces.model.file.UploadedFile file) {
+		this.file = file;
+	}
+
+	/**
+	 * Reads persons from uploaded file batch by batch. It's used to validate
+	 * file and later to import it in background, so it doesn't refer to
+	 * conversation scoped action
+	 */
+	private static class FilePersonSource implements PersonSource {
+
+		private static final Logger log = LoggerFactory.getLogger(FilePersonSource.class);
+
+		private final ExcelService excelService;
+		private final PersonService personService;
+		private final String defaultStatus;
+		private final byte[] fileData;
+		private final String fileName;
+		private final List<ImportAttribute> importAttributes;
+		private final List<String> errors;
+
+		public FilePersonSource(ExcelService excelService, PersonService personService, String defaultStatus,
+				byte[] fileData, String fileName, List<ImportAttribute> importAttributes, List<String> errors) {
+			this.excelService = excelService;
+			this.personService = personService;
+			this.defaultStatus = defaultStatus;
+			this.fileData = fileData;
+			this.fileName = fileName;
+			this.importAttributes = importAttributes;
+			this.errors = (errors == null) ? new ArrayList<String>() : errors;
+		}
+
+		@Override
+		public void read(final PersonBatchHandler handler) throws Exception {
+			final boolean isGeneratePassword = isGeneratePassword(importAttributes);
+			final Map<String, List<AttributeData>> entriesAttributes = new HashMap<String, List<AttributeData>>();
+			final Map<String, String> uidPasswords = new HashMap<String, String>();
+			try (InputStream is = new ByteArrayInputStream(this.fileData)) {
+				excelService.read(is, fileName, new ExcelService.RowHandler() {
+					private boolean header = true;
+
+					@Override
+					public void handleRow(int row, List<String> values) throws Exception {
+						if (header) {
+							header = false;
+							return;
+						}
+
+						List<AttributeData> attributeDataList = convertRowToAttributes(importAttributes, row, values,
+								uidPasswords, errors);
+						if (attributeDataList == null) {
+							return;
+						}
+
+						entriesAttributes.put(Integer.toString(row), attributeDataList);
+						if (entriesAttributes.size() >= PERSONS_BATCH_SIZE) {
+							handler.handle(createPersons(entriesAttributes, uidPasswords, isGeneratePassword));
+							entriesAttributes.clear();
+							uidPasswords.clear();
+						}
+					}
+				});
+			}
+
+			if (!entriesAttributes.isEmpty()) {
+				handler.handle(createPersons(entriesAttributes, uidPasswords, isGeneratePassword));
+			}
 		}
-		customAttributeAction.initCustomAttributes(attributes, customAttributes, origins,
-				appConfiguration.getPersonObjectClassTypes(), appConfiguration.getPersonObjectClassDisplayNames());
-		if (newPerson) {
-			customAttributeAction.addCustomAttributes(personService.getMandatoryAtributes());
+
+		private boolean isGeneratePassword(List<ImportAttribute> importAttributes) {
+			for (ImportAttribute importAttribute : importAttributes) {
+				if (importAttribute.getAttribute().getName().equalsIgnoreCase(PERSON_PASSWORD_ATTRIBUTE)
+						&& !importAttribute.getAttribute().isRequred()) {
+					return true;
+				}
+			}
+
+			return false;
 		}
-	}
 
-	public String save() {
-		if (!organizationService.isAllowPersonModification()) {
-			return OxTrustConstants.RESULT_FAILURE;
+		private void setDefaultPersonAttributes(List<GluuCustomPerson> persons, boolean isGeneratePassword) {
+			for (GluuCustomPerson person : persons) {
+				if (StringHelper.isEmpty(person.getCommonName())) {
+					person.setCommonName(person.getGivenName() + " " + person.getSurname());
+				} else {
+					person.setCommonName(person.getCommonName() + " " + person.getGivenName() + " " + person.getSurname());
+				}
+				person.setDisplayName(person.getCommonName());
+
+				if (isGeneratePassword && StringHelper.isEmpty(person.getUserPassword())) {
+					person.setUserPassword(RandomStringUtils.randomAlphanumeric(16));
+				}
+
+			}
 		}
-		personService.addCustomObjectClass(this.person);
-		if (personService.getPersonByUid(this.person.getUid()) != null) {
-			return OxTrustConstants.RESULT_DUPLICATE;
-		}
-		this.inum = personService.generateInumForNewPerson();
-		String dn = personService.getDnForPerson(this.inum);
-		// Save person
-		this.person.setDn(dn);
-		this.person.setInum(this.inum);
-		List<GluuCustomAttribute> personAttributes = this.person.getCustomAttributes();
-		if (!personAttributes.contains(new GluuCustomAttribute("cn", ""))) {
-			List<GluuCustomAttribute> changedAttributes = new ArrayList<GluuCustomAttribute>();
-			changedAttributes.addAll(personAttributes);
-			changedAttributes.add(
-					new GluuCustomAttribute("cn", this.person.getGivenName() + " " + this.person.getDisplayName()));
-			this.person.setCustomAttributes(changedAttributes);
-		} else {
-			this.person.setCommonName(this.person.getCommonName() + " " + this.person.getGivenName());
+
+		private List<AttributeData> convertRowToAttributes(List<ImportAttribute> importAttributes, int row,
+				List<String> values, Map<String, String> uidPasswords, List<String> errors) {
+			List<AttributeData> attributeDataList = new ArrayList<AttributeData>();
+			String uid = null;
+			String password = null;
+			boolean validRow = true;
+			for (ImportAttribute importAttribute : importAttributes) {
+				int col = importAttribute.getCol();
+				if (col == -1) {
+					continue;
+				}
+				GluuAttribute attribute = importAttribute.getAttribute();
+				String cellValue = (col < values.size()) ? values.get(col) : "";
+				boolean isMultiValue = attribute.getOxMultiValuedAttribute();
+				if (StringHelper.isEmpty(cellValue)) {
+					if (attribute.isRequred()) {
+						errors.add(String.format("Import failed. Empty '%s' not allowed", attribute.getDisplayName()));
+						validRow = false;
+					}
+					continue;
+				}
+				String ldapValue = getTypedValue(attribute, cellValue);
+				if (StringHelper.isEmpty(ldapValue)) {
+					errors.add(String.format("Invalid value '%s' in column '%s' at row %s were specified", cellValue,
+							attribute.getDisplayName(), row + 1));
+					validRow = false;
+					continue;
+				}
+				if (attribute.getName().equalsIgnoreCase(UID)) {
+					uid = ldapValue;
+				}
+				if (attribute.getName().equalsIgnoreCase(USER_PASSWORD)) {
+					password = ldapValue;
+				}
+				if (isMultiValue) {
+					AttributeData attributeData = new AttributeData(attribute.getName(), ldapValue.split(SEPARATOR));
+					attributeDataList.add(attributeData);
+				} else {
+					AttributeData attributeData = new AttributeData(attribute.getName(), ldapValue);
+					attributeDataList.add(attributeData);
+				}
+			}
+			if (!validRow) {
+				return null;
+			}
+			uidPasswords.put(uid, password);
+
+			return attributeDataList;
 		}
-		try {
-			boolean runScript = externalUpdateUserService.isEnabled();
-			if (runScript) {
-				externalUpdateUserService.executeExternalAddUserMethods(this.person);
+
+		private List<GluuCustomPerson> createPersons(Map<String, List<AttributeData>> entriesAttributes,
+				Map<String, String> uidPAsswords, boolean isGeneratePassword) throws Exception {
+			List<GluuCustomPerson> persons = personService.createEntities(entriesAttributes);
+			log.trace("Found {} persons in input file batch", persons.size());
+			for (GluuCustomPerson person : persons) {
+				if (person.getStatus() == null) {
+					person.setStatus(defaultStatus);
+				}
+				if (uidPAsswords.containsKey(person.getUid())) {
+					String password = uidPAsswords.get(person.getUid());
+					if (password != null) {
+						person.setUserPassword(uidPAsswords.get(person.getUid().trim().toString()));
+					} else {
+						person.setUserPassword(person.getUid());
+					}
+				}
 			}
-			personService.addPerson(this.person);
-			if (runScript) {
-				externalUpdateUserService.executeExternalPostAddUserMethods(this.person);
+
+			// Fill persons with default values
+			setDefaultPersonAttributes(persons, isGeneratePassword);
+
+			return persons;
+		}
+
+		private String getTypedValue(GluuAttribute attribute, String value) {
+			if (AttributeDataType.STRING.equals(attribute.getDataType())
+					|| attribute.getName().equalsIgnoreCase("gluuStatus")) {
+				return value;
+			} else if (AttributeDataType.BOOLEAN.equals(attribute.getDataType())) {
+				Boolean gluuBoolean = Boolean.valueOf(value);
+				if (gluuBoolean != null) {
+					return gluuBoolean.toString();
+				}
 			}
-		} catch (Exception ex) {
-			log.error("Failed to add new person {}", this.person.getInum(), ex);
-			return OxTrustConstants.RESULT_FAILURE;
+			return null;
 		}
-		return OxTrustConstants.RESULT_SUCCESS;
+
 	}
 
-	public String initializePerson() {
-		if (!organizationService.isAllowPersonModification()) {
-			return OxTrustConstants.RESULT_FAILURE;
+	/**
+	 * Collects uids and mails of persons from file to find duplicates
+	 */
+	private static class PersonsValidator implements PersonBatchHandler {
+
+		private final Set<String> uids = new HashSet<String>();
+		private final Set<String> mails = new HashSet<String>();
+		private int count;
+		private boolean duplicateUid;
+		private boolean duplicateMail;
+
+		@Override
+		public void handle(List<GluuCustomPerson> persons) {
+			for (GluuCustomPerson person : persons) {
+				duplicateUid |= !uids.add(person.getUid());
+				duplicateMail |= !mails.add(person.getMail());
+			}
+			count += persons.size();
 		}
 
-		if (this.person != null) {
-			return OxTrustConstants.RESULT_SUCCESS;
+		public Set<String> getUids() {
+			return uids;
+		}
+
+		public Set<String> getMails() {
+			return mails;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public boolean isDuplicateUid() {
+			return duplicateUid;
+		}
+
+		public boolean isDuplicateMail() {
+			return duplicateMail;
 		}
-		this.person = new GluuCustomPerson();
-		initAttributes();
-		return OxTrustConstants.RESULT_SUCCESS;
-	}
 
-	public org.primefaces.model.file.UploadedFile getFile() {
-		return file;
 	}
 
-	public void setFile(org.primefaces.model.file.UploadedFile file) {
-		this.file = file;
+	/**
+	 * Stops file reading after header row
+	 */
+	private static class HeaderReadException extends RuntimeException {
+
+		private static final long serialVersionUID = -3187209744592633870L;
+
 	}
 
 	public static class FileDataToImport implements Serializable {
@@ -600,18 +723,13 @@ public class PersonImportAction implements Serializable {
 		private static final long serialVersionUID = 7334362213305310293L;
 
 		private String fileName;
-		private Table table;
 		private List<ImportAttribute> importAttributes;
-		private List<GluuCustomPerson> persons;
+		private int countPersons;
 		private boolean ready;
 
 		public FileDataToImport() {
 		}
 
-		public FileDataToImport(Table table) {
-			this.table = table;
-		}
-
 		public List<ImportAttribute> getImportAttributes() {
 			return importAttributes;
 		}
@@ -620,14 +738,6 @@ public class PersonImportAction implements Serializable {
 			this.importAttributes = importAttributes;
 		}
 
-		public Table getTable() {
-			return table;
-		}
-
-		public void setTable(Table table) {
-			this.table = table;
-		}
-
 		public String getFileName() {
 			return fileName;
 		}
@@ -636,12 +746,12 @@ public class PersonImportAction implements Serializable {
 			this.fileName = fileName;
 		}
 
-		public List<GluuCustomPerson> getPersons() {
-			return persons;
+		public int getCountPersons() {
+			return countPersons;
 		}
 
-		public void setPersons(List<GluuCustomPerson> persons) {
-			this.persons = persons;
+		public void setCountPersons(int countPersons) {
+			this.countPersons = countPersons;
 		}
 
 		public boolean isReady() {
@@ -654,9 +764,8 @@ public class PersonImportAction implements Serializable {
 
 		public void reset() {
 			this.fileName = null;
-			this.table = null;
 			this.importAttributes = null;
-			this.persons = null;
+			this.countPersons = 0;
 			this.ready = false;
 		}
 	}
@@ -164,22 +164,20 @@ public class UpdateGroupAction implements Serializable {
 	}
 
 	public String save() throws Exception {
-		List<DisplayNameEntry> oldMembers = null;
-		try {
-			oldMembers = getMemberDisplayNameEntiries();
-		} catch (BasePersistenceException ex) {
-			log.error("Failed to load person display names", ex);
-			facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to update group");
-			return OxTrustConstants.RESULT_FAILURE;
+		List<String> oldMemberDns = new ArrayList<String>();
+		if (update && (this.group.getMembers() != null)) {
+			oldMemberDns.addAll(this.group.getMembers());
 		}
 		updateMembers();
+		// Members are changed with separate add and delete value modifications
+		List<String> newMemberDns = this.group.getMembers();
 		if (update) {
 			try {
-				groupService.updateGroup(this.group);
+				groupService.updateGroupAttributes(this.group);
 				oxTrustAuditService.audit("GROUP " + this.group.getInum() + " **"+this.group.getDisplayName()+ "** UPDATED",
 						identity.getUser(),
 						(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
-				updatePersons(oldMembers, this.members);
+				updatePersons(oldMemberDns, newMemberDns);
 			} catch (BasePersistenceException ex) {
 				log.error("Failed to update group {}", this.inum, ex);
 				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to update group '#{updateGroupAction.group.displayName}'");
@@ -195,11 +193,12 @@ public class UpdateGroupAction implements Serializable {
 			this.group.setDn(groupService.getDnForGroup(this.inum));
 			this.group.setInum(this.inum);
 			try {
+				this.group.setMembers(null);
 				groupService.addGroup(this.group);
 				oxTrustAuditService.audit("GROUP " + this.group.getInum() + " "+this.group.getDisplayName()+ " ADDED",
 						identity.getUser(),
 						(HttpServletRequest) FacesContext.getCurrentInstance().getExternalContext().getRequest());
-				updatePersons(oldMembers, this.members);
+				updatePersons(oldMemberDns, newMemberDns);
 			} catch (BasePersistenceException ex) {
 				log.error("Failed to add new group {}", this.group.getInum(), ex);
 				facesMessages.add(FacesMessage.SEVERITY_ERROR, "Failed to add new group");
@@ -208,6 +207,8 @@ public class UpdateGroupAction implements Serializable {
 			catch (DuplicateEntryException ex) {
 				facesMessages.add(FacesMessage.SEVERITY_ERROR, "A group with the same name already exist.");
 				return OxTrustConstants.RESULT_FAILURE;
+			} finally {
+				this.group.setMembers(newMemberDns);
 			}
 			facesMessages.add(FacesMessage.SEVERITY_INFO, "New group '#{updateGroupAction.group.displayName}' added successfully");
 			conversationService.endConversation();
@@ -335,12 +336,10 @@ public class UpdateGroupAction implements Serializable {
 		this.group.setMembers(tmpMembers);
 	}
 
-	private void updatePersons(List<DisplayNameEntry> oldMembers, List<DisplayNameEntry> newMembers) throws Exception {
+	private void updatePersons(List<String> oldMembers, List<String> newMembers) throws Exception {
 		log.debug("Old members: {}", oldMembers);
 		log.debug("New members: {}", newMembers);
 		String groupDn = this.group.getDn();
-		GluuOrganization organization = organizationService.getOrganization();
-		String organizationGroups[] = { organization.getManagerGroup() };
 		// Convert members to array of DNs
 		String[] oldMemberDns = convertToDNsArray(oldMembers);
 		String[] newMemberDns = convertToDNsArray(newMembers);
@@ -373,64 +372,57 @@ public class UpdateGroupAction implements Serializable {
 			}
 		}
 
-		for (String dn : addedMembers) {
-			GluuCustomPerson person = personService.getPersonByDn(dn);
-			log.debug("Adding group {} to person {} memberOf", groupDn, person.getDisplayName());
-
-			if (appConfiguration.isUpdateStatus()) {
-				Boolean slaManager = isSLAManager(organizationGroups, person);
-				person.setSLAManager(slaManager);
-			}
-
-			List<String> personMemberOf = new ArrayList<String>(person.getMemberOf());
-			personMemberOf.add(groupDn);
-			person.setMemberOf(personMemberOf);
-
-			personService.updatePerson(person);
-		}
-
-		for (String dn : removedMembers) {
-			GluuCustomPerson person = personService.getPersonByDn(dn);
-			log.debug("Removing group {} from person {} memberOf", groupDn, person.getDisplayName());
-			if (appConfiguration.isUpdateStatus()) {
-				Boolean slaManager = isSLAManager(organizationGroups, person);
-				person.setSLAManager(slaManager);
-			}
-			List<String> personMemberOf = new ArrayList<String>(person.getMemberOf());
-			personMemberOf.remove(groupDn);
-			person.setMemberOf(personMemberOf);
-			personService.updatePerson(person);
-		}
+		// Send only changed member and memberOf values
+		log.debug("Adding {} members and removing {} members of group {}", addedMembers.size(), removedMembers.size(), groupDn);
+		groupService.removeMembers(groupDn, removedMembers);
+		groupService.addMembers(groupDn, addedMembers);
 
 		if (appConfiguration.isUpdateStatus()) {
-			// Update existing members if needed
-			for (String dn : existingMembers) {
-				GluuCustomPerson person = personService.getPersonByDn(dn);
-				log.debug("Updating group {} to person {} memberOf", groupDn, person.getDisplayName());
-
-				Boolean slaManager = isSLAManager(organizationGroups, person);
+			GluuOrganization organization = organizationService.getOrganization();
+			Set<String> managerDns = getMemberAndOwnerDns(organization.getManagerGroup());
+
+			// Update members if needed. Persons are loaded in batches
+			List<String> updateStatusMembers = new ArrayList<String>(addedMembers);
+			updateStatusMembers.addAll(removedMembers);
+			updateStatusMembers.addAll(existingMembers);
+			for (GluuCustomPerson person : personService.findPersonsByDns(updateStatusMembers)) {
+				Boolean slaManager = managerDns.contains(StringHelper.toLowerCase(person.getDn()));
 				if (slaManager.equals(person.getSLAManager())) {
 					continue;
 				}
-	
+
+				log.debug("Updating SLA manager flag of person {}", person.getDisplayName());
 				person.setSLAManager(slaManager);
 				personService.updatePerson(person);
 			}
 		}
 	}
 
-	private Boolean isSLAManager(String[] organizationGroups, GluuCustomPerson person) throws Exception {
-		return groupService.isMemberOrOwner(organizationGroups, person.getDn());
+	private Set<String> getMemberAndOwnerDns(String groupDn) {
+		Set<String> result = new HashSet<String>();
+		if (StringHelper.isEmpty(groupDn) || !groupService.containsGroup(groupDn)) {
+			return result;
+		}
+
+		GluuGroup group = groupService.getGroupByDn(groupDn);
+		if (group.getMembers() != null) {
+			for (String memberDn : group.getMembers()) {
+				result.add(StringHelper.toLowerCase(memberDn));
+			}
+		}
+		if (StringHelper.isNotEmpty(group.getOwner())) {
+			result.add(StringHelper.toLowerCase(group.getOwner()));
+		}
+
+		return result;
 	}
 
-	private String[] convertToDNsArray(List<DisplayNameEntry> members) {
-		String[] memberDns = new String[members.size()];
-		int i = 0;
-		for (DisplayNameEntry member : members) {
-			memberDns[i++] = member.getDn();
+	private String[] convertToDNsArray(List<String> members) {
+		if (members == null) {
+			return new String[0];
 		}
 
-		return memberDns;
+		return members.toArray(new String[members.size()]);
 	}
 	
 	public GluuGroupVisibility[] getVisibilityTypes(){
@@ -0,0 +1,241 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.conf;
+
+import java.io.File;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.service.config.ConfigurationFactory;
+import org.gluu.util.StringHelper;
+import org.gluu.util.properties.FileConfiguration;
+import org.slf4j.Logger;
+
+/**
+ * Cache Refresh performance settings which are not part of the Cache Refresh
+ * configuration stored in DB. Values are loaded from
+ * oxTrustCacheRefresh.properties and reloaded when file changes
+ */
+@ApplicationScoped
+@Named
+public class CacheRefreshTuningConfiguration {
+
+	public static final String SOURCE_LOAD_CONCURRENCY = "sourceLoadConcurrency";
+	public static final String SOURCE_LOAD_STREAMING = "sourceLoadStreaming";
+	public static final String SOURCE_LOAD_PAGE_SIZE = "sourceLoadPageSize";
+	public static final String INCREMENTAL_MODE = "incrementalMode";
+	public static final String INCREMENTAL_CHANGE_ATTRIBUTE = "incrementalChangeAttribute";
+	public static final String FULL_RECONCILIATION_INTERVAL = "fullReconciliationInterval";
+	public static final String BINARY_SNAPSHOTS = "binarySnapshots";
+	public static final String INUM_MAP_BATCH_SIZE = "inumMapBatchSize";
+	public static final String INUM_MAP_WRITE_CONCURRENCY = "inumMapWriteConcurrency";
+	public static final String TARGET_UPDATE_CONCURRENCY = "targetUpdateConcurrency";
+	public static final String TARGET_UPDATE_RETRIES = "targetUpdateRetries";
+	public static final String TARGET_UPDATE_RETRY_DELAY = "targetUpdateRetryDelay";
+	public static final String TARGET_UPDATE_SCRIPTS_THREAD_SAFE = "targetUpdateScriptsThreadSafe";
+	public static final String ADAPTIVE_SEARCH_PARTITIONING = "adaptiveSearchPartitioning";
+	public static final String OFF_HEAP_SNAPSHOTS = "offHeapSnapshots";
+
+	public static final int DEFAULT_SOURCE_LOAD_CONCURRENCY = 1;
+	public static final int DEFAULT_SOURCE_LOAD_PAGE_SIZE = 0;
+	public static final String DEFAULT_INCREMENTAL_CHANGE_ATTRIBUTE = "modifyTimestamp";
+	public static final int DEFAULT_FULL_RECONCILIATION_INTERVAL = 10;
+	public static final int DEFAULT_INUM_MAP_BATCH_SIZE = 100;
+	public static final int DEFAULT_INUM_MAP_WRITE_CONCURRENCY = 1;
+	public static final int DEFAULT_TARGET_UPDATE_CONCURRENCY = 1;
+	public static final int DEFAULT_TARGET_UPDATE_RETRIES = 0;
+	public static final long DEFAULT_TARGET_UPDATE_RETRY_DELAY = 1000;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private ConfigurationFactory configurationFactory;
+
+	private FileConfiguration tuningConfiguration;
+	private long tuningConfigurationLastModifiedTime = -1;
+
+	/**
+	 * Maximum number of source server searches which can be executed at the same
+	 * time during loading entries from source servers
+	 */
+	public int getSourceLoadConcurrency() {
+		return Math.max(1, getInt(SOURCE_LOAD_CONCURRENCY, DEFAULT_SOURCE_LOAD_CONCURRENCY));
+	}
+
+	/**
+	 * Process source entries page by page and keep only keys and hash codes in
+	 * memory instead of loading all source entries at once
+	 */
+	public boolean isSourceLoadStreaming() {
+		return getBoolean(SOURCE_LOAD_STREAMING, false);
+	}
+
+	/**
+	 * Page size of source server searches in streaming mode. Cache Refresh
+	 * search size limit is used if it's not specified
+	 */
+	public int getSourceLoadPageSize() {
+		return getInt(SOURCE_LOAD_PAGE_SIZE, DEFAULT_SOURCE_LOAD_PAGE_SIZE);
+	}
+
+	/**
+	 * Load only source entries which were changed after last run. Full
+	 * reconciliation runs periodically to detect removed entries
+	 */
+	public boolean isIncrementalMode() {
+		return getBoolean(INCREMENTAL_MODE, false);
+	}
+
+	/**
+	 * Source entry attribute which is used as high-water mark in incremental mode,
+	 * e.g. modifyTimestamp or uSNChanged in AD
+	 */
+	public String getIncrementalChangeAttribute() {
+		String changeAttribute = getString(INCREMENTAL_CHANGE_ATTRIBUTE, null);
+		if (StringHelper.isEmpty(changeAttribute)) {
+			return DEFAULT_INCREMENTAL_CHANGE_ATTRIBUTE;
+		}
+
+		return changeAttribute;
+	}
+
+	/**
+	 * Number of incremental runs between two full reconciliations
+	 */
+	public int getFullReconciliationInterval() {
+		return getInt(FULL_RECONCILIATION_INTERVAL, DEFAULT_FULL_RECONCILIATION_INTERVAL);
+	}
+
+	/**
+	 * Store snapshots in sorted binary format which can be memory mapped during
+	 * comparison instead of loading text snapshot into map
+	 */
+	public boolean isBinarySnapshots() {
+		return getBoolean(BINARY_SNAPSHOTS, false);
+	}
+
+	/**
+	 * Number of new inum entries which get inums generated and checked for
+	 * uniqueness together
+	 */
+	public int getInumMapBatchSize() {
+		return Math.max(1, getInt(INUM_MAP_BATCH_SIZE, DEFAULT_INUM_MAP_BATCH_SIZE));
+	}
+
+	/**
+	 * Maximum number of new inum entries which can be written to inum server at
+	 * the same time
+	 */
+	public int getInumMapWriteConcurrency() {
+		return Math.max(1, getInt(INUM_MAP_WRITE_CONCURRENCY, DEFAULT_INUM_MAP_WRITE_CONCURRENCY));
+	}
+
+	/**
+	 * Maximum number of target server entries which can be updated at the same
+	 * time
+	 */
+	public int getTargetUpdateConcurrency() {
+		return Math.max(1, getInt(TARGET_UPDATE_CONCURRENCY, DEFAULT_TARGET_UPDATE_CONCURRENCY));
+	}
+
+	/**
+	 * Number of additional attempts to update target server entry after failure
+	 */
+	public int getTargetUpdateRetries() {
+		return Math.max(0, getInt(TARGET_UPDATE_RETRIES, DEFAULT_TARGET_UPDATE_RETRIES));
+	}
+
+	/**
+	 * Delay in milliseconds before first retry of target server entry update.
+	 * Delay is doubled before every next retry
+	 */
+	public long getTargetUpdateRetryDelay() {
+		return Math.max(0, getLong(TARGET_UPDATE_RETRY_DELAY, DEFAULT_TARGET_UPDATE_RETRY_DELAY));
+	}
+
+	/**
+	 * Allow concurrent target server updates when Cache Refresh scripts are
+	 * enabled. Scripts should not share state between calls in this case
+	 */
+	public boolean isTargetUpdateScriptsThreadSafe() {
+		return getBoolean(TARGET_UPDATE_SCRIPTS_THREAD_SAFE, false);
+	}
+
+	/**
+	 * Split key attribute prefixes only when search reaches size limit instead of
+	 * using fixed two letters prefixes. Used when search limit is enabled
+	 */
+	public boolean isAdaptiveSearchPartitioning() {
+		return getBoolean(ADAPTIVE_SEARCH_PARTITIONING, false);
+	}
+
+	/**
+	 * Keep current snapshot of inums and entry hash codes in direct memory
+	 * instead of Java heap during comparison with previous snapshot
+	 */
+	public boolean isOffHeapSnapshots() {
+		return getBoolean(OFF_HEAP_SNAPSHOTS, false);
+	}
+
+	protected String getString(String key, String defaultValue) {
+		FileConfiguration configuration = getTuningConfiguration();
+		if (configuration == null) {
+			return defaultValue;
+		}
+
+		return configuration.getString(key, defaultValue);
+	}
+
+	protected int getInt(String key, int defaultValue) {
+		FileConfiguration configuration = getTuningConfiguration();
+		if (configuration == null) {
+			return defaultValue;
+		}
+
+		return configuration.getInt(key, defaultValue);
+	}
+
+	protected long getLong(String key, long defaultValue) {
+		FileConfiguration configuration = getTuningConfiguration();
+		if (configuration == null) {
+			return defaultValue;
+		}
+
+		return configuration.getLong(key, defaultValue);
+	}
+
+	protected boolean getBoolean(String key, boolean defaultValue) {
+		FileConfiguration configuration = getTuningConfiguration();
+		if (configuration == null) {
+			return defaultValue;
+		}
+
+		return configuration.getBoolean(key, defaultValue);
+	}
+
+	private synchronized FileConfiguration getTuningConfiguration() {
+		File tuningConfigurationFile = new File(configurationFactory.confDir(), ConfigurationFactory.CACHE_PROPERTIES_FILE);
+		if (!tuningConfigurationFile.exists()) {
+			this.tuningConfiguration = null;
+			this.tuningConfigurationLastModifiedTime = -1;
+			return null;
+		}
+
+		long lastModified = tuningConfigurationFile.lastModified();
+		if (lastModified > this.tuningConfigurationLastModifiedTime) {
+			log.info("Loading Cache Refresh tuning configuration from '{}'", tuningConfigurationFile);
+			this.tuningConfiguration = new FileConfiguration(tuningConfigurationFile.getAbsolutePath());
+			this.tuningConfigurationLastModifiedTime = lastModified;
+		}
+
+		return this.tuningConfiguration;
+	}
+
+}
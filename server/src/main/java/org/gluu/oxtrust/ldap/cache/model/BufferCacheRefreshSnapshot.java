@@ -0,0 +1,63 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sorted snapshot which is stored in binary snapshot format in byte buffer.
+ * Inums are decoded only on access
+ */
+public abstract class BufferCacheRefreshSnapshot extends CacheRefreshSnapshot {
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final int stringsOffset;
+
+	protected BufferCacheRefreshSnapshot(ByteBuffer buffer, int size) {
+		this.buffer = buffer;
+		this.size = size;
+		this.stringsOffset = HEADER_SIZE + size * RECORD_SIZE;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Size of snapshot data in bytes
+	 */
+	public int getBufferSize() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public long getKeyHash(int index) {
+		return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+	}
+
+	@Override
+	public String getInum(int index) {
+		int offset = stringsOffset + buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 12);
+		int length = buffer.getShort(offset) & 0xFFFF;
+
+		byte[] inumBytes = new byte[length];
+		ByteBuffer inumBuffer = buffer.duplicate();
+		inumBuffer.position(offset + 2);
+		inumBuffer.get(inumBytes);
+
+		return new String(inumBytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public int getEntryHashCode(int index) {
+		return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 8);
+	}
+
+}
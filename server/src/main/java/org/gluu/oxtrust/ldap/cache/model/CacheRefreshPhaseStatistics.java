@@ -0,0 +1,88 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+
+/**
+ * Duration and throughput of single Cache Refresh phase
+ */
+public class CacheRefreshPhaseStatistics implements Serializable {
+
+	private static final long serialVersionUID = 4620364383364557018L;
+
+	private String name;
+	private long durationMillis;
+	private long entries;
+	private long bytesRead;
+	private long heapHighWaterBytes;
+
+	public CacheRefreshPhaseStatistics() {
+	}
+
+	public CacheRefreshPhaseStatistics(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	public long getEntries() {
+		return entries;
+	}
+
+	public void setEntries(long entries) {
+		this.entries = entries;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public void setBytesRead(long bytesRead) {
+		this.bytesRead = bytesRead;
+	}
+
+	public long getHeapHighWaterBytes() {
+		return heapHighWaterBytes;
+	}
+
+	public void setHeapHighWaterBytes(long heapHighWaterBytes) {
+		this.heapHighWaterBytes = heapHighWaterBytes;
+	}
+
+	public double getEntriesPerSecond() {
+		if (durationMillis <= 0) {
+			return entries;
+		}
+
+		return entries * 1000.0 / durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("CacheRefreshPhaseStatistics [name=").append(name).append(", durationMillis=").append(durationMillis)
+				.append(", entries=").append(entries).append(", bytesRead=").append(bytesRead)
+				.append(", heapHighWaterBytes=").append(heapHighWaterBytes).append("]");
+		return builder.toString();
+	}
+
+}
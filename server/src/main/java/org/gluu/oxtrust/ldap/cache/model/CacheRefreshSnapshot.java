@@ -0,0 +1,338 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot of inum to entry hash code pairs sorted by inum hash. Sorted
+ * snapshots can be compared in single pass without building maps
+ *
+ * Binary file format: header (magic, version, entries count, strings size,
+ * CRC32 of records and strings), fixed width records (inum hash, entry hash
+ * code, inum offset) and inum strings
+ */
+public abstract class CacheRefreshSnapshot {
+
+	public static final int MAGIC = 0x47534E50;
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 32;
+	public static final int RECORD_SIZE = 16;
+
+	public abstract int size();
+
+	public abstract long getKeyHash(int index);
+
+	public abstract String getInum(int index);
+
+	public abstract int getEntryHashCode(int index);
+
+	public Integer get(String inum) {
+		long keyHash = keyHash(inum);
+
+		int low = 0;
+		int high = size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(keyHash, inum, mid);
+			if (cmp > 0) {
+				low = mid + 1;
+			} else if (cmp < 0) {
+				high = mid - 1;
+			} else {
+				return getEntryHashCode(mid);
+			}
+		}
+
+		return null;
+	}
+
+	public boolean containsKey(String inum) {
+		return get(inum) != null;
+	}
+
+	public Map<String, Integer> toMap() {
+		Map<String, Integer> result = new HashMap<String, Integer>(size());
+		for (int i = 0; i < size(); i++) {
+			result.put(getInum(i), getEntryHashCode(i));
+		}
+
+		return result;
+	}
+
+	public void write(File file) throws IOException {
+		CRC32 checksum = new CRC32();
+		int stringsSize = 0;
+
+		File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			output.write(new byte[HEADER_SIZE]);
+
+			// Records
+			byte[] record = new byte[RECORD_SIZE];
+			for (int i = 0; i < size(); i++) {
+				putLong(record, 0, getKeyHash(i));
+				putInt(record, 8, getEntryHashCode(i));
+				putInt(record, 12, stringsSize);
+				checksum.update(record);
+				output.write(record);
+
+				stringsSize += 2 + getInum(i).getBytes(StandardCharsets.UTF_8).length;
+			}
+
+			// Inums
+			byte[] length = new byte[2];
+			for (int i = 0; i < size(); i++) {
+				byte[] inumBytes = getInum(i).getBytes(StandardCharsets.UTF_8);
+				length[0] = (byte) (inumBytes.length >>> 8);
+				length[1] = (byte) inumBytes.length;
+				checksum.update(length);
+				checksum.update(inumBytes);
+				output.write(length);
+				output.write(inumBytes);
+			}
+		}
+
+		try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(size());
+			raf.writeInt(stringsSize);
+			raf.writeLong(checksum.getValue());
+			raf.writeLong(0);
+		}
+
+		if (file.exists() && !file.delete()) {
+			throw new IOException(String.format("Failed to replace snapshot file '%s'", file.getAbsolutePath()));
+		}
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException(String.format("Failed to rename snapshot file '%s'", tmpFile.getAbsolutePath()));
+		}
+	}
+
+	protected int compare(long keyHash, String inum, int index) {
+		int cmp = Long.compare(keyHash, getKeyHash(index));
+		if (cmp != 0) {
+			return cmp;
+		}
+
+		return inum.compareTo(getInum(index));
+	}
+
+	protected static int compare(CacheRefreshSnapshot snapshot1, int index1, CacheRefreshSnapshot snapshot2, int index2) {
+		int cmp = Long.compare(snapshot1.getKeyHash(index1), snapshot2.getKeyHash(index2));
+		if (cmp != 0) {
+			return cmp;
+		}
+
+		// Load inums only in case of hash collision
+		return snapshot1.getInum(index1).compareTo(snapshot2.getInum(index2));
+	}
+
+	/**
+	 * Compare two snapshots in single pass
+	 */
+	public static Diff diff(CacheRefreshSnapshot prevSnapshot, CacheRefreshSnapshot currSnapshot) {
+		IndexList changedIndexes = new IndexList();
+		IndexList removedIndexes = new IndexList();
+
+		int prevIndex = 0, currIndex = 0;
+		int prevSize = prevSnapshot.size(), currSize = currSnapshot.size();
+		while ((prevIndex < prevSize) || (currIndex < currSize)) {
+			int cmp;
+			if (prevIndex >= prevSize) {
+				cmp = 1;
+			} else if (currIndex >= currSize) {
+				cmp = -1;
+			} else {
+				cmp = compare(prevSnapshot, prevIndex, currSnapshot, currIndex);
+			}
+
+			if (cmp < 0) {
+				removedIndexes.add(prevIndex++);
+			} else if (cmp > 0) {
+				changedIndexes.add(currIndex++);
+			} else {
+				if (prevSnapshot.getEntryHashCode(prevIndex) != currSnapshot.getEntryHashCode(currIndex)) {
+					changedIndexes.add(currIndex);
+				}
+				prevIndex++;
+				currIndex++;
+			}
+		}
+
+		return new Diff(new InumList(currSnapshot, changedIndexes), new InumList(prevSnapshot, removedIndexes));
+	}
+
+	/**
+	 * Create snapshot which contains entries from both snapshots. Entries from
+	 * second snapshot replace entries with same inum from first one
+	 */
+	public static CacheRefreshSnapshot merge(CacheRefreshSnapshot baseSnapshot, CacheRefreshSnapshot changesSnapshot) {
+		int baseSize = baseSnapshot.size(), changesSize = changesSnapshot.size();
+
+		long[] keyHashes = new long[baseSize + changesSize];
+		String[] inums = new String[baseSize + changesSize];
+		int[] entryHashCodes = new int[baseSize + changesSize];
+
+		int baseIndex = 0, changesIndex = 0, count = 0;
+		while ((baseIndex < baseSize) || (changesIndex < changesSize)) {
+			int cmp;
+			if (baseIndex >= baseSize) {
+				cmp = 1;
+			} else if (changesIndex >= changesSize) {
+				cmp = -1;
+			} else {
+				cmp = compare(baseSnapshot, baseIndex, changesSnapshot, changesIndex);
+			}
+
+			CacheRefreshSnapshot source;
+			int index;
+			if (cmp < 0) {
+				source = baseSnapshot;
+				index = baseIndex++;
+			} else {
+				source = changesSnapshot;
+				index = changesIndex++;
+				if (cmp == 0) {
+					baseIndex++;
+				}
+			}
+
+			keyHashes[count] = source.getKeyHash(index);
+			inums[count] = source.getInum(index);
+			entryHashCodes[count] = source.getEntryHashCode(index);
+			count++;
+		}
+
+		return new MemoryCacheRefreshSnapshot(keyHashes, inums, entryHashCodes, count);
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of inum with final avalanche step
+	 */
+	public static long keyHash(String inum) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < inum.length(); i++) {
+			hash ^= inum.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+
+		return hash;
+	}
+
+	private static void putLong(byte[] buffer, int offset, long value) {
+		for (int i = 7; i >= 0; i--) {
+			buffer[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value) {
+		for (int i = 3; i >= 0; i--) {
+			buffer[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	/**
+	 * Growable list of snapshot indexes without boxing
+	 */
+	private static class IndexList {
+
+		private int[] indexes = new int[16];
+		private int size;
+
+		public void add(int index) {
+			if (size == indexes.length) {
+				indexes = Arrays.copyOf(indexes, size + (size >> 1));
+			}
+			indexes[size++] = index;
+		}
+
+	}
+
+	/**
+	 * Read-only view of snapshot inums at specified indexes
+	 */
+	private static class InumList extends AbstractList<String> implements RandomAccess {
+
+		private final CacheRefreshSnapshot snapshot;
+		private final int[] indexes;
+		private final int size;
+
+		public InumList(CacheRefreshSnapshot snapshot, IndexList indexList) {
+			this.snapshot = snapshot;
+			this.indexes = indexList.indexes;
+			this.size = indexList.size;
+		}
+
+		@Override
+		public String get(int index) {
+			if ((index < 0) || (index >= size)) {
+				throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+			}
+
+			return snapshot.getInum(indexes[index]);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+	}
+
+	/**
+	 * Result of snapshots comparison
+	 */
+	public static class Diff {
+
+		private final List<String> changedInums;
+		private final List<String> removedInums;
+
+		public Diff(List<String> changedInums, List<String> removedInums) {
+			this.changedInums = changedInums;
+			this.removedInums = removedInums;
+		}
+
+		/**
+		 * New and modified entries
+		 */
+		public List<String> getChangedInums() {
+			return changedInums;
+		}
+
+		/**
+		 * Entries which exist only in previous snapshot
+		 */
+		public List<String> getRemovedInums() {
+			return removedInums;
+		}
+
+	}
+
+}
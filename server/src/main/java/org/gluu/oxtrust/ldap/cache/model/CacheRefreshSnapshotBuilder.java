@@ -0,0 +1,186 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.util.Arrays;
+
+/**
+ * Collects inum to entry hash code pairs into primitive arrays and sorts them
+ * without boxing
+ */
+public class CacheRefreshSnapshotBuilder {
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private long[] keyHashes;
+	private String[] inums;
+	private int[] entryHashCodes;
+	private int size;
+
+	public CacheRefreshSnapshotBuilder() {
+		this(1024);
+	}
+
+	public CacheRefreshSnapshotBuilder(int expectedSize) {
+		int capacity = Math.max(16, expectedSize);
+		this.keyHashes = new long[capacity];
+		this.inums = new String[capacity];
+		this.entryHashCodes = new int[capacity];
+	}
+
+	public CacheRefreshSnapshotBuilder add(String inum, int entryHashCode) {
+		if (size == keyHashes.length) {
+			int capacity = keyHashes.length + (keyHashes.length >> 1);
+			keyHashes = Arrays.copyOf(keyHashes, capacity);
+			inums = Arrays.copyOf(inums, capacity);
+			entryHashCodes = Arrays.copyOf(entryHashCodes, capacity);
+		}
+
+		keyHashes[size] = CacheRefreshSnapshot.keyHash(inum);
+		inums[size] = inum;
+		entryHashCodes[size] = entryHashCode;
+		size++;
+
+		return this;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sort collected entries and create snapshot. Builder shouldn't be used after
+	 * this call
+	 */
+	public MemoryCacheRefreshSnapshot build() {
+		int count = sortAndRemoveDuplicates();
+
+		if (count < keyHashes.length) {
+			keyHashes = Arrays.copyOf(keyHashes, count);
+			inums = Arrays.copyOf(inums, count);
+			entryHashCodes = Arrays.copyOf(entryHashCodes, count);
+		}
+
+		MemoryCacheRefreshSnapshot result = new MemoryCacheRefreshSnapshot(keyHashes, inums, entryHashCodes, count);
+		reset();
+
+		return result;
+	}
+
+	/**
+	 * Sort collected entries and write them directly into off-heap snapshot
+	 * without creating trimmed on-heap copy. Builder shouldn't be used after this
+	 * call
+	 */
+	public OffHeapCacheRefreshSnapshot buildOffHeap() {
+		int count = sortAndRemoveDuplicates();
+
+		OffHeapCacheRefreshSnapshot result = OffHeapCacheRefreshSnapshot
+				.copyOf(new MemoryCacheRefreshSnapshot(keyHashes, inums, entryHashCodes, count));
+		reset();
+
+		return result;
+	}
+
+	private int sortAndRemoveDuplicates() {
+		sort(0, size - 1);
+
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if ((count > 0) && (keyHashes[count - 1] == keyHashes[i]) && inums[count - 1].equals(inums[i])) {
+				count--;
+			}
+			keyHashes[count] = keyHashes[i];
+			inums[count] = inums[i];
+			entryHashCodes[count] = entryHashCodes[i];
+			count++;
+		}
+
+		return count;
+	}
+
+	private void reset() {
+		this.keyHashes = null;
+		this.inums = null;
+		this.entryHashCodes = null;
+		this.size = 0;
+	}
+
+	private void sort(int low, int high) {
+		while (high - low > INSERTION_SORT_THRESHOLD) {
+			int pivot = medianOfThree(low, (low + high) >>> 1, high);
+			long pivotKeyHash = keyHashes[pivot];
+			String pivotInum = inums[pivot];
+
+			int i = low, j = high;
+			while (i <= j) {
+				while (compare(i, pivotKeyHash, pivotInum) < 0) {
+					i++;
+				}
+				while (compare(j, pivotKeyHash, pivotInum) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+
+			// Recurse into smaller part to limit stack depth
+			if (j - low < high - i) {
+				sort(low, j);
+				low = i;
+			} else {
+				sort(i, high);
+				high = j;
+			}
+		}
+
+		for (int i = low + 1; i <= high; i++) {
+			for (int j = i; (j > low) && (compare(j - 1, keyHashes[j], inums[j]) > 0); j--) {
+				swap(j, j - 1);
+			}
+		}
+	}
+
+	private int medianOfThree(int a, int b, int c) {
+		if (compare(a, keyHashes[b], inums[b]) < 0) {
+			if (compare(b, keyHashes[c], inums[c]) < 0) {
+				return b;
+			}
+			return compare(a, keyHashes[c], inums[c]) < 0 ? c : a;
+		}
+
+		if (compare(a, keyHashes[c], inums[c]) < 0) {
+			return a;
+		}
+		return compare(b, keyHashes[c], inums[c]) < 0 ? c : b;
+	}
+
+	private int compare(int index, long keyHash, String inum) {
+		int cmp = Long.compare(keyHashes[index], keyHash);
+		if (cmp != 0) {
+			return cmp;
+		}
+
+		return inums[index].compareTo(inum);
+	}
+
+	private void swap(int i, int j) {
+		long keyHash = keyHashes[i];
+		keyHashes[i] = keyHashes[j];
+		keyHashes[j] = keyHash;
+
+		String inum = inums[i];
+		inums[i] = inums[j];
+		inums[j] = inum;
+
+		int entryHashCode = entryHashCodes[i];
+		entryHashCodes[i] = entryHashCodes[j];
+		entryHashCodes[j] = entryHashCode;
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Statistics of single Cache Refresh run
+ */
+public class CacheRefreshStatistics implements Serializable {
+
+	private static final long serialVersionUID = -1733476582137766092L;
+
+	private Date startDate;
+	private long durationMillis;
+	private boolean finished;
+	private boolean success;
+	private long heapHighWaterBytes;
+	private List<CacheRefreshPhaseStatistics> phases = new ArrayList<CacheRefreshPhaseStatistics>();
+
+	public CacheRefreshStatistics() {
+	}
+
+	public CacheRefreshStatistics(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	public void setFinished(boolean finished) {
+		this.finished = finished;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public void setSuccess(boolean success) {
+		this.success = success;
+	}
+
+	public long getHeapHighWaterBytes() {
+		return heapHighWaterBytes;
+	}
+
+	public void setHeapHighWaterBytes(long heapHighWaterBytes) {
+		this.heapHighWaterBytes = heapHighWaterBytes;
+	}
+
+	public List<CacheRefreshPhaseStatistics> getPhases() {
+		return phases;
+	}
+
+	public void setPhases(List<CacheRefreshPhaseStatistics> phases) {
+		this.phases = phases;
+	}
+
+	public CacheRefreshPhaseStatistics getPhase(String name) {
+		for (CacheRefreshPhaseStatistics phase : phases) {
+			if (phase.getName().equals(name)) {
+				return phase;
+			}
+		}
+
+		return null;
+	}
+
+}
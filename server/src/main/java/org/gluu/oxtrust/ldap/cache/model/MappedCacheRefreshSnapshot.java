@@ -0,0 +1,67 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Sorted snapshot which is read from memory-mapped binary snapshot file
+ */
+public class MappedCacheRefreshSnapshot extends BufferCacheRefreshSnapshot {
+
+	private MappedCacheRefreshSnapshot(MappedByteBuffer buffer, int size) {
+		super(buffer, size);
+	}
+
+	/**
+	 * Map snapshot file into memory and validate it
+	 * 
+	 * @throws IOException
+	 *             if file is corrupted or has unsupported format
+	 */
+	public static MappedCacheRefreshSnapshot open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if ((fileSize < HEADER_SIZE) || (fileSize > Integer.MAX_VALUE)) {
+				throw new IOException(String.format("Snapshot file '%s' has invalid size: %d", file, fileSize));
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+			int magic = buffer.getInt(0);
+			int version = buffer.getInt(4);
+			int size = buffer.getInt(8);
+			int stringsSize = buffer.getInt(12);
+			long checksum = buffer.getLong(16);
+
+			if ((magic != MAGIC) || (version != VERSION)) {
+				throw new IOException(String.format("Snapshot file '%s' has unsupported format", file));
+			}
+
+			if ((size < 0) || (stringsSize < 0)
+					|| ((long) HEADER_SIZE + (long) size * RECORD_SIZE + stringsSize != fileSize)) {
+				throw new IOException(String.format("Snapshot file '%s' is truncated", file));
+			}
+
+			ByteBuffer body = buffer.duplicate();
+			body.position(HEADER_SIZE);
+			CRC32 crc32 = new CRC32();
+			crc32.update(body);
+			if (crc32.getValue() != checksum) {
+				throw new IOException(String.format("Snapshot file '%s' has invalid checksum", file));
+			}
+
+			return new MappedCacheRefreshSnapshot(buffer, size);
+		}
+	}
+
+}
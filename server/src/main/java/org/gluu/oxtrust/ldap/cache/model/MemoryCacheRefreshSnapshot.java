@@ -0,0 +1,58 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Sorted snapshot which is stored in memory
+ */
+public class MemoryCacheRefreshSnapshot extends CacheRefreshSnapshot {
+
+	private final long[] keyHashes;
+	private final String[] inums;
+	private final int[] entryHashCodes;
+	private final int size;
+
+	protected MemoryCacheRefreshSnapshot(long[] keyHashes, String[] inums, int[] entryHashCodes, int size) {
+		this.keyHashes = keyHashes;
+		this.inums = inums;
+		this.entryHashCodes = entryHashCodes;
+		this.size = size;
+	}
+
+	public static MemoryCacheRefreshSnapshot create(Map<String, Integer> inumWithEntryHashCodeMap) {
+		CacheRefreshSnapshotBuilder builder = new CacheRefreshSnapshotBuilder(inumWithEntryHashCodeMap.size());
+		for (Entry<String, Integer> entry : inumWithEntryHashCodeMap.entrySet()) {
+			builder.add(entry.getKey(), entry.getValue());
+		}
+
+		return builder.build();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long getKeyHash(int index) {
+		return keyHashes[index];
+	}
+
+	@Override
+	public String getInum(int index) {
+		return inums[index];
+	}
+
+	@Override
+	public int getEntryHashCode(int index) {
+		return entryHashCodes[index];
+	}
+
+}
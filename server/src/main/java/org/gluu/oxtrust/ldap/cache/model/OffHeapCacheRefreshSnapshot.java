@@ -0,0 +1,157 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sorted snapshot which is stored outside of Java heap in direct byte buffer
+ */
+public class OffHeapCacheRefreshSnapshot extends BufferCacheRefreshSnapshot {
+
+	private OffHeapCacheRefreshSnapshot(ByteBuffer buffer, int size) {
+		super(buffer, size);
+	}
+
+	public static OffHeapCacheRefreshSnapshot copyOf(CacheRefreshSnapshot snapshot) {
+		int size = snapshot.size();
+
+		long stringsSize = 0;
+		for (int i = 0; i < size; i++) {
+			stringsSize += 2 + encodedLength(snapshot.getInum(i));
+		}
+
+		long bufferSize = HEADER_SIZE + (long) size * RECORD_SIZE + stringsSize;
+		if (bufferSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Snapshot is too big: %d bytes", bufferSize));
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) bufferSize);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, size);
+		buffer.putInt(12, (int) stringsSize);
+
+		int recordOffset = HEADER_SIZE;
+		int stringsOffset = HEADER_SIZE + size * RECORD_SIZE;
+		int stringOffset = 0;
+		for (int i = 0; i < size; i++) {
+			buffer.putLong(recordOffset, snapshot.getKeyHash(i));
+			buffer.putInt(recordOffset + 8, snapshot.getEntryHashCode(i));
+			buffer.putInt(recordOffset + 12, stringOffset);
+			recordOffset += RECORD_SIZE;
+
+			byte[] inumBytes = snapshot.getInum(i).getBytes(StandardCharsets.UTF_8);
+			buffer.putShort(stringsOffset + stringOffset, (short) inumBytes.length);
+			buffer.position(stringsOffset + stringOffset + 2);
+			buffer.put(inumBytes);
+			stringOffset += 2 + inumBytes.length;
+		}
+		buffer.clear();
+
+		return new OffHeapCacheRefreshSnapshot(buffer, size);
+	}
+
+	/**
+	 * Create off-heap snapshot which contains entries from both snapshots. Entries
+	 * from second snapshot replace entries with same inum from first one. Only
+	 * merged indexes are kept on heap
+	 */
+	public static OffHeapCacheRefreshSnapshot merge(CacheRefreshSnapshot baseSnapshot,
+			CacheRefreshSnapshot changesSnapshot) {
+		int baseSize = baseSnapshot.size(), changesSize = changesSnapshot.size();
+
+		// Non-negative values are indexes in base snapshot, negative ones are
+		// complemented indexes in changes snapshot
+		int[] indexes = new int[baseSize + changesSize];
+
+		int baseIndex = 0, changesIndex = 0, count = 0;
+		while ((baseIndex < baseSize) || (changesIndex < changesSize)) {
+			int cmp;
+			if (baseIndex >= baseSize) {
+				cmp = 1;
+			} else if (changesIndex >= changesSize) {
+				cmp = -1;
+			} else {
+				cmp = compare(baseSnapshot, baseIndex, changesSnapshot, changesIndex);
+			}
+
+			if (cmp < 0) {
+				indexes[count++] = baseIndex++;
+			} else {
+				indexes[count++] = ~changesIndex++;
+				if (cmp == 0) {
+					baseIndex++;
+				}
+			}
+		}
+
+		return copyOf(new MergedSnapshot(baseSnapshot, changesSnapshot, indexes, count));
+	}
+
+	private static int encodedLength(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch < 0x80) {
+				length++;
+			} else if (ch < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(ch)) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+
+		return length;
+	}
+
+	private static class MergedSnapshot extends CacheRefreshSnapshot {
+
+		private final CacheRefreshSnapshot baseSnapshot;
+		private final CacheRefreshSnapshot changesSnapshot;
+		private final int[] indexes;
+		private final int size;
+
+		MergedSnapshot(CacheRefreshSnapshot baseSnapshot, CacheRefreshSnapshot changesSnapshot, int[] indexes,
+				int size) {
+			this.baseSnapshot = baseSnapshot;
+			this.changesSnapshot = changesSnapshot;
+			this.indexes = indexes;
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public long getKeyHash(int index) {
+			int sourceIndex = indexes[index];
+			return sourceIndex >= 0 ? baseSnapshot.getKeyHash(sourceIndex) : changesSnapshot.getKeyHash(~sourceIndex);
+		}
+
+		@Override
+		public String getInum(int index) {
+			int sourceIndex = indexes[index];
+			return sourceIndex >= 0 ? baseSnapshot.getInum(sourceIndex) : changesSnapshot.getInum(~sourceIndex);
+		}
+
+		@Override
+		public int getEntryHashCode(int index) {
+			int sourceIndex = indexes[index];
+			return sourceIndex >= 0 ? baseSnapshot.getEntryHashCode(sourceIndex)
+					: changesSnapshot.getEntryHashCode(~sourceIndex);
+		}
+
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshPhaseStatistics;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshStatistics;
+import org.gluu.oxtrust.service.MetricService;
+import org.slf4j.Logger;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Collects duration, throughput and memory usage of Cache Refresh phases
+ */
+@ApplicationScoped
+@Named("cacheRefreshMetricsService")
+public class CacheRefreshMetricsService {
+
+	public static final String PHASE_SOURCE_LOAD = "sourceLoad";
+	public static final String PHASE_INUM_MAP_LOAD = "inumMapLoad";
+	public static final String PHASE_INUM_MAP_UPDATE = "inumMapUpdate";
+	public static final String PHASE_HASHING = "hashing";
+	public static final String PHASE_SNAPSHOT_DIFF = "snapshotDiff";
+	public static final String PHASE_TARGET_UPDATE = "targetUpdate";
+	public static final String PHASE_TARGET_REMOVAL = "targetRemoval";
+
+	private static final String METRIC_NAME_PREFIX = "cacheRefresh";
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private MetricService metricService;
+
+	private CacheRefreshStatistics currentStatistics;
+	private CacheRefreshStatistics lastStatistics;
+	private long currentStartTime;
+
+	public synchronized void startCycle() {
+		this.currentStatistics = new CacheRefreshStatistics(new Date());
+		this.currentStartTime = System.nanoTime();
+		resetHeapPeakUsage();
+	}
+
+	public synchronized void finishCycle(boolean success) {
+		if (this.currentStatistics == null) {
+			return;
+		}
+
+		this.currentStatistics.setDurationMillis(getDurationMillis(this.currentStartTime));
+		this.currentStatistics.setFinished(true);
+		this.currentStatistics.setSuccess(success);
+
+		log.info("Cache Refresh statistics: duration '{}' ms, phases: {}", this.currentStatistics.getDurationMillis(),
+				this.currentStatistics.getPhases());
+		updateMetric(METRIC_NAME_PREFIX, this.currentStatistics.getDurationMillis(), 0, 0);
+
+		this.lastStatistics = this.currentStatistics;
+		this.currentStatistics = null;
+	}
+
+	/**
+	 * Start measurement of sequential phase. Heap high-water mark is measured
+	 * from phase start
+	 */
+	public long startPhase() {
+		resetHeapPeakUsage();
+
+		return System.nanoTime();
+	}
+
+	public void finishPhase(String name, long startTime, long entries, long bytesRead) {
+		addPhase(name, System.nanoTime() - startTime, entries, bytesRead);
+	}
+
+	/**
+	 * Add measurement to phase statistics. Measurements of phases with same name
+	 * are summed up
+	 */
+	public synchronized void addPhase(String name, long durationNanos, long entries, long bytesRead) {
+		long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		long heapHighWaterBytes = getHeapPeakUsage();
+
+		updateMetric(METRIC_NAME_PREFIX + "." + name, durationMillis, entries, bytesRead);
+
+		if (this.currentStatistics == null) {
+			return;
+		}
+
+		CacheRefreshPhaseStatistics phase = this.currentStatistics.getPhase(name);
+		if (phase == null) {
+			phase = new CacheRefreshPhaseStatistics(name);
+			this.currentStatistics.getPhases().add(phase);
+		}
+
+		phase.setDurationMillis(phase.getDurationMillis() + durationMillis);
+		phase.setEntries(phase.getEntries() + entries);
+		phase.setBytesRead(phase.getBytesRead() + bytesRead);
+		phase.setHeapHighWaterBytes(Math.max(phase.getHeapHighWaterBytes(), heapHighWaterBytes));
+
+		this.currentStatistics
+				.setHeapHighWaterBytes(Math.max(this.currentStatistics.getHeapHighWaterBytes(), heapHighWaterBytes));
+	}
+
+	/**
+	 * Statistics of running Cache Refresh process or null
+	 */
+	public synchronized CacheRefreshStatistics getCurrentStatistics() {
+		return copy(this.currentStatistics);
+	}
+
+	/**
+	 * Statistics of last finished Cache Refresh process or null
+	 */
+	public synchronized CacheRefreshStatistics getLastStatistics() {
+		return copy(this.lastStatistics);
+	}
+
+	private void updateMetric(String name, long durationMillis, long entries, long bytesRead) {
+		if (!metricService.isMetricReporterEnabled()) {
+			return;
+		}
+
+		MetricRegistry metricRegistry = metricService.getMetricRegistry();
+		if (metricRegistry == null) {
+			return;
+		}
+
+		try {
+			metricRegistry.timer(name).update(durationMillis, TimeUnit.MILLISECONDS);
+			metricRegistry.histogram(name + ".entries").update(entries);
+			metricRegistry.counter(name + ".bytesRead").inc(bytesRead);
+		} catch (IllegalArgumentException ex) {
+			log.error("Failed to update metric '{}'", name, ex);
+		}
+	}
+
+	private CacheRefreshStatistics copy(CacheRefreshStatistics statistics) {
+		if (statistics == null) {
+			return null;
+		}
+
+		CacheRefreshStatistics result = new CacheRefreshStatistics(statistics.getStartDate());
+		result.setDurationMillis(statistics.isFinished() ? statistics.getDurationMillis()
+				: getDurationMillis(this.currentStartTime));
+		result.setFinished(statistics.isFinished());
+		result.setSuccess(statistics.isSuccess());
+		result.setHeapHighWaterBytes(statistics.getHeapHighWaterBytes());
+
+		List<CacheRefreshPhaseStatistics> phases = new ArrayList<CacheRefreshPhaseStatistics>();
+		for (CacheRefreshPhaseStatistics phase : statistics.getPhases()) {
+			CacheRefreshPhaseStatistics phaseCopy = new CacheRefreshPhaseStatistics(phase.getName());
+			phaseCopy.setDurationMillis(phase.getDurationMillis());
+			phaseCopy.setEntries(phase.getEntries());
+			phaseCopy.setBytesRead(phase.getBytesRead());
+			phaseCopy.setHeapHighWaterBytes(phase.getHeapHighWaterBytes());
+			phases.add(phaseCopy);
+		}
+		result.setPhases(phases);
+
+		return result;
+	}
+
+	private long getDurationMillis(long startTime) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+	}
+
+	private void resetHeapPeakUsage() {
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (MemoryType.HEAP.equals(memoryPool.getType())) {
+				memoryPool.resetPeakUsage();
+			}
+		}
+	}
+
+	private long getHeapPeakUsage() {
+		long result = 0;
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (MemoryType.HEAP.equals(memoryPool.getType())) {
+				MemoryUsage peakUsage = memoryPool.getPeakUsage();
+				if (peakUsage != null) {
+					result += peakUsage.getUsed();
+				}
+			}
+		}
+
+		return result;
+	}
+
+}
@@ -10,6 +10,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -123,6 +124,47 @@ public class CacheRefreshService implements Serializable {
 		return newInum;
 	}
 
+	/**
+	 * Generate specified number of unique inums. Uniqueness of generated inums is
+	 * checked with single search request per batch
+	 */
+	public List<String> generateInumsForNewInumMaps(String inumbBaseDn, PersistenceEntryManager ldapEntryManager,
+			int count) {
+		Set<String> result = new LinkedHashSet<String>(count);
+		while (result.size() < count) {
+			Set<String> newInums = new HashSet<String>();
+			while (newInums.size() < count - result.size()) {
+				String newInum = generateInumForNewInumMapImpl();
+				if (!result.contains(newInum)) {
+					newInums.add(newInum);
+				}
+			}
+
+			newInums.removeAll(findExistingInumMapInums(inumbBaseDn, ldapEntryManager, newInums));
+			result.addAll(newInums);
+		}
+
+		return new ArrayList<String>(result);
+	}
+
+	private Set<String> findExistingInumMapInums(String inumbBaseDn, PersistenceEntryManager ldapEntryManager,
+			Set<String> inums) {
+		List<Filter> inumFilters = new ArrayList<Filter>(inums.size());
+		for (String inum : inums) {
+			inumFilters.add(Filter.createEqualityFilter(OxTrustConstants.inum, inum));
+		}
+
+		List<GluuInumMap> existingInumMaps = ldapEntryManager.findEntries(inumbBaseDn, GluuInumMap.class,
+				Filter.createORFilter(inumFilters), new String[] { OxTrustConstants.inum });
+
+		Set<String> result = new HashSet<String>();
+		for (GluuInumMap existingInumMap : existingInumMaps) {
+			result.add(existingInumMap.getInum());
+		}
+
+		return result;
+	}
+
 	public String getDnForInum(String baseDn, String inum) {
 		return String.format("inum=%s,%s", inum, baseDn);
 	}
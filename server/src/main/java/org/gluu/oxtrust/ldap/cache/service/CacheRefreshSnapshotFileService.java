@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -28,8 +29,12 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.gluu.config.oxtrust.CacheRefreshConfiguration;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshSnapshot;
+import org.gluu.oxtrust.ldap.cache.model.MappedCacheRefreshSnapshot;
+import org.gluu.oxtrust.ldap.cache.model.MemoryCacheRefreshSnapshot;
 import org.gluu.util.ArrayHelper;
 import org.slf4j.Logger;
 
@@ -46,7 +51,10 @@ public class CacheRefreshSnapshotFileService {
 	private Logger log;
 
 	private static final String SNAPSHOT_FILE_NAME_PATTERN = "inum-snapshot-%s.txt";
+	private static final String BINARY_SNAPSHOT_FILE_NAME_PATTERN = "inum-snapshot-%s.bin";
 	private static final String PROBLEM_LIST_FILE_NAME = "problem-inum-list.txt";
+	private static final String INCREMENTAL_STATE_FILE_NAME = "inum-snapshot-state.properties";
+	private static final String SEARCH_PARTITIONS_FILE_NAME = "inum-search-partitions.properties";
 	private static final String SNAPSHOT_FILE_NAME_DATE_PATTERN = "yyyy-MM-dd-HH-mm";
 
 	public boolean prepareSnapshotsFolder(CacheRefreshConfiguration cacheRefreshConfiguration) {
@@ -84,6 +92,37 @@ public class CacheRefreshSnapshotFileService {
 		return true;
 	}
 
+	public boolean createSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration, CacheRefreshSnapshot snapshot,
+			boolean binary) {
+		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return false;
+		}
+		DateFormat fileNameDateFormat = new SimpleDateFormat(SNAPSHOT_FILE_NAME_DATE_PATTERN);
+		String snapshotFileName = String.format(binary ? BINARY_SNAPSHOT_FILE_NAME_PATTERN : SNAPSHOT_FILE_NAME_PATTERN,
+				fileNameDateFormat.format(new Date()));
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + snapshotFileName);
+		if (binary) {
+			try {
+				snapshot.write(file);
+			} catch (IOException ex) {
+				log.error("Failed to create snapshot file '{}'", file.getAbsolutePath(), ex);
+				return false;
+			}
+			return true;
+		}
+
+		try(BufferedWriter bos = new BufferedWriter(new FileWriter(file))) {
+			for (int i = 0; i < snapshot.size(); i++) {
+				bos.write(String.format("%s:%d\n", snapshot.getInum(i), snapshot.getEntryHashCode(i)));
+			}
+			bos.flush();
+		} catch (IOException ex) {
+			log.error("Failed to create snapshot file '{}'", file.getAbsolutePath(), ex);
+			return false;
+		} 
+		return true;
+	}
+
 	public Map<String, Integer> readSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration, String snapshotFileName) {
 		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
 			return null;
@@ -93,6 +132,12 @@ public class CacheRefreshSnapshotFileService {
 		if (!file.exists()) {
 			return null;
 		}
+
+		if (isBinarySnapshot(snapshotFileName)) {
+			CacheRefreshSnapshot snapshot = readBinarySnapshot(file);
+			return snapshot == null ? null : snapshot.toMap();
+		}
+
 		Map<String, Integer> result = new HashMap<String, Integer>();
 		try(BufferedReader bis = new BufferedReader(new FileReader(file))) {
 			String line;
@@ -130,9 +175,51 @@ public class CacheRefreshSnapshotFileService {
 		return readSnapshot(cacheRefreshConfiguration, snapshots[snapshots.length - 1]);
 	}
 
+	/**
+	 * Read last snapshot in text or binary format as sorted snapshot. Binary
+	 * snapshot is mapped into memory instead of loading
+	 */
+	public CacheRefreshSnapshot readLastSortedSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return null;
+		}
+
+		String[] snapshots = getSnapshotsList(cacheRefreshConfiguration);
+		if (ArrayHelper.isEmpty(snapshots)) {
+			return null;
+		}
+
+		String snapshotFileName = snapshots[snapshots.length - 1];
+		if (isBinarySnapshot(snapshotFileName)) {
+			File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + snapshotFileName);
+			return readBinarySnapshot(file);
+		}
+
+		Map<String, Integer> snapshot = readSnapshot(cacheRefreshConfiguration, snapshotFileName);
+		if (snapshot == null) {
+			return null;
+		}
+
+		return MemoryCacheRefreshSnapshot.create(snapshot);
+	}
+
+	private CacheRefreshSnapshot readBinarySnapshot(File file) {
+		try {
+			return MappedCacheRefreshSnapshot.open(file);
+		} catch (IOException ex) {
+			log.error("Failed to load snapshot file '{}'", file.getAbsolutePath(), ex);
+			return null;
+		}
+	}
+
+	private boolean isBinarySnapshot(String snapshotFileName) {
+		return FilenameUtils.isExtension(snapshotFileName, "bin");
+	}
+
 	private String[] getSnapshotsList(CacheRefreshConfiguration cacheRefreshConfiguration) {
 		File file = new File(cacheRefreshConfiguration.getSnapshotFolder());
-		String[] files = file.list(new WildcardFileFilter(String.format(SNAPSHOT_FILE_NAME_PATTERN, "*")));
+		String[] files = file.list(new WildcardFileFilter(Arrays.asList(String.format(SNAPSHOT_FILE_NAME_PATTERN, "*"),
+				String.format(BINARY_SNAPSHOT_FILE_NAME_PATTERN, "*"))));
 		Arrays.sort(files);
 
 		return files;
@@ -196,4 +283,80 @@ public class CacheRefreshSnapshotFileService {
 		return true;
 	}
 
+	public Map<String, String> readIncrementalState(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		return readProperties(cacheRefreshConfiguration, INCREMENTAL_STATE_FILE_NAME, "incremental state");
+	}
+
+	public boolean writeIncrementalState(CacheRefreshConfiguration cacheRefreshConfiguration, Map<String, String> incrementalState) {
+		return writeProperties(cacheRefreshConfiguration, INCREMENTAL_STATE_FILE_NAME, "incremental state",
+				incrementalState);
+	}
+
+	public boolean removeIncrementalState(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + INCREMENTAL_STATE_FILE_NAME);
+		if (file.exists() && !file.delete()) {
+			log.error("Failed to remove incremental state file '{}'", file.getAbsolutePath());
+			return false;
+		}
+
+		return true;
+	}
+
+	public Map<String, String> readSearchPartitions(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		return readProperties(cacheRefreshConfiguration, SEARCH_PARTITIONS_FILE_NAME, "search partitions");
+	}
+
+	public boolean writeSearchPartitions(CacheRefreshConfiguration cacheRefreshConfiguration, Map<String, String> searchPartitions) {
+		return writeProperties(cacheRefreshConfiguration, SEARCH_PARTITIONS_FILE_NAME, "search partitions",
+				searchPartitions);
+	}
+
+	private Map<String, String> readProperties(CacheRefreshConfiguration cacheRefreshConfiguration, String fileName,
+			String description) {
+		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return null;
+		}
+
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + fileName);
+		if (!file.exists()) {
+			return null;
+		}
+
+		Properties properties = new Properties();
+		try (BufferedReader bis = new BufferedReader(new FileReader(file))) {
+			properties.load(bis);
+		} catch (IOException ex) {
+			log.error("Failed to load {} from file '{}'", description, file.getAbsolutePath(), ex);
+			return null;
+		}
+
+		Map<String, String> result = new HashMap<String, String>();
+		for (String key : properties.stringPropertyNames()) {
+			result.put(key, properties.getProperty(key));
+		}
+
+		return result;
+	}
+
+	private boolean writeProperties(CacheRefreshConfiguration cacheRefreshConfiguration, String fileName,
+			String description, Map<String, String> values) {
+		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return false;
+		}
+
+		Properties properties = new Properties();
+		properties.putAll(values);
+
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + fileName);
+		try (BufferedWriter bos = new BufferedWriter(new FileWriter(file))) {
+			properties.store(bos, "Cache Refresh " + description);
+			bos.flush();
+		} catch (IOException ex) {
+			log.error("Failed to write {} to file '{}'", description, file.getAbsolutePath(), ex);
+			return false;
+		}
+
+		return true;
+	}
+
 }
@@ -6,23 +6,36 @@
 
 package org.gluu.oxtrust.ldap.cache.service;
 
+import java.io.File;
+import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
@@ -40,9 +53,13 @@ import org.gluu.model.SchemaEntry;
 import org.gluu.model.custom.script.model.bind.BindCredentials;
 import org.gluu.model.ldap.GluuLdapConfiguration;
 import org.gluu.oxtrust.service.config.ConfigurationFactory;
+import org.gluu.oxtrust.ldap.cache.conf.CacheRefreshTuningConfiguration;
 import org.gluu.oxtrust.ldap.cache.model.CacheCompoundKey;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshSnapshot;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshSnapshotBuilder;
 import org.gluu.oxtrust.ldap.cache.model.GluuInumMap;
 import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+import org.gluu.oxtrust.ldap.cache.model.OffHeapCacheRefreshSnapshot;
 import org.gluu.oxtrust.model.GluuConfiguration;
 import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuCustomPerson;
@@ -64,6 +81,8 @@ import org.gluu.persist.exception.operation.SearchException;
 import org.gluu.persist.ldap.impl.LdapEntryManager;
 import org.gluu.persist.ldap.impl.LdapEntryManagerFactory;
 import org.gluu.persist.ldap.operation.LdapOperationService;
+import org.gluu.persist.model.BatchOperation;
+import org.gluu.persist.model.ProcessBatchOperation;
 import org.gluu.persist.model.SearchScope;
 import org.gluu.persist.model.base.DummyEntry;
 import org.gluu.persist.operation.PersistenceOperationService;
@@ -96,6 +115,15 @@ public class CacheRefreshTimer {
 
 	private static final int DEFAULT_INTERVAL = 60;
 
+	private static final String INCREMENTAL_STATE_CHANGE_ATTRIBUTE = "changeAttribute";
+	private static final String INCREMENTAL_STATE_RUNS = "incrementalRuns";
+	private static final String INCREMENTAL_STATE_HIGH_WATER_MARK_PREFIX = "highWaterMark.";
+	private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
+
+	private static final int MAX_SEARCH_PREFIX_LENGTH = 6;
+
+	private static final long MAX_TARGET_UPDATE_RETRY_DELAY = 60 * 1000;
+
 	@Inject
 	private Logger log;
 
@@ -144,6 +172,15 @@ public class CacheRefreshTimer {
 	@Inject
 	private ObjectSerializationService objectSerializationService;
 
+	@Inject
+	private InumMapCacheFileService inumMapCacheFileService;
+
+	@Inject
+	private CacheRefreshMetricsService cacheRefreshMetricsService;
+
+	@Inject
+	private CacheRefreshTuningConfiguration cacheRefreshTuningConfiguration;
+
 	private AtomicBoolean isActive;
 	private long lastFinishedTime;
 
@@ -157,7 +194,10 @@ public class CacheRefreshTimer {
 			String snapshotFolder = cacheRefreshConfiguration.getSnapshotFolder();
 			if (StringHelper.isNotEmpty(snapshotFolder)) {
 				String inumCachePath = getInumCachePath(cacheRefreshConfiguration);
-				objectSerializationService.cleanup(inumCachePath);
+				inumMapCacheFileService.cleanup(inumCachePath);
+
+				// Remove cache file in old Java serialization format
+				objectSerializationService.cleanup(getLegacyInumCachePath(cacheRefreshConfiguration));
 			}
 		}
 
@@ -298,8 +338,14 @@ public class CacheRefreshTimer {
 					|| (isVdsUpdate && (targetServerConnection == null))) {
 				log.error("Skipping cache refresh due to invalid server configuration");
 			} else {
-				detectChangedEntries(cacheRefreshConfiguration, currentConfiguration, sourceServerConnections,
-						inumDbServerConnection, targetServerConnection, updateMethod);
+				boolean result = false;
+				cacheRefreshMetricsService.startCycle();
+				try {
+					result = detectChangedEntries(cacheRefreshConfiguration, currentConfiguration,
+							sourceServerConnections, inumDbServerConnection, targetServerConnection, updateMethod);
+				} finally {
+					cacheRefreshMetricsService.finishCycle(result);
+				}
 			}
 		} finally {
 			// Close connections to LDAP servers
@@ -328,65 +374,138 @@ public class CacheRefreshTimer {
 		return;
 	}
 
-	@SuppressWarnings("unchecked")
 	private boolean detectChangedEntries(CacheRefreshConfiguration cacheRefreshConfiguration,
 			GluuConfiguration currentConfiguration, LdapServerConnection[] sourceServerConnections,
 			LdapServerConnection inumDbServerConnection, LdapServerConnection targetServerConnection,
 			CacheRefreshUpdateMethod updateMethod) throws SearchException {
 		boolean isVDSMode = CacheRefreshUpdateMethod.VDS.equals(updateMethod);
 
-		// Load all entries from Source servers
-		log.info("Attempting to load entries from source server");
-		List<GluuSimplePerson> sourcePersons;
+		// Track source entries changes if incremental mode is enabled
+		Map<String, SourceChangeTracker> sourceChangeTrackers = null;
+		Map<String, String> incrementalState = null;
+		boolean isIncrementalRun = false;
+		if (cacheRefreshTuningConfiguration.isIncrementalMode()) {
+			String changeAttribute = cacheRefreshTuningConfiguration.getIncrementalChangeAttribute();
+			sourceChangeTrackers = prepareSourceChangeTrackers(sourceServerConnections, changeAttribute);
 
-		if (cacheRefreshConfiguration.isUseSearchLimit()) {
-			sourcePersons = loadSourceServerEntries(cacheRefreshConfiguration, sourceServerConnections);
-		} else {
-			sourcePersons = loadSourceServerEntriesWithoutLimits(cacheRefreshConfiguration, sourceServerConnections);
+			incrementalState = cacheRefreshSnapshotFileService.readIncrementalState(cacheRefreshConfiguration);
+			isIncrementalRun = isIncrementalRun(sourceServerConnections, changeAttribute, incrementalState);
 		}
 
-		log.info("Found '{}' entries in source server", sourcePersons.size());
+		// Load all entries from Source servers
+		long phaseStartTime = cacheRefreshMetricsService.startPhase();
+		List<SourceSearchTask> searchTasks;
+		Map<String, SourceSearchPartitions> searchPartitions = null;
+		if (isIncrementalRun) {
+			log.info("Attempting to load changed entries from source server");
+			searchTasks = prepareIncrementalSourceSearchTasks(cacheRefreshConfiguration, sourceServerConnections,
+					sourceChangeTrackers, incrementalState);
+		} else if (cacheRefreshConfiguration.isUseSearchLimit()) {
+			log.info("Attempting to load entries from source server");
+			if (cacheRefreshTuningConfiguration.isAdaptiveSearchPartitioning()) {
+				searchPartitions = new HashMap<String, SourceSearchPartitions>();
+				searchTasks = prepareAdaptiveSourceSearchTasks(cacheRefreshConfiguration, sourceServerConnections,
+						sourceChangeTrackers, searchPartitions);
+			} else {
+				searchTasks = prepareSourceSearchTasks(cacheRefreshConfiguration, sourceServerConnections,
+						sourceChangeTrackers);
+			}
+		} else {
+			log.info("Attempting to load entries from source server");
+			searchTasks = prepareSourceSearchTasksWithoutLimits(cacheRefreshConfiguration, sourceServerConnections,
+					sourceChangeTrackers);
+		}
+
+		boolean streamSourceEntries = cacheRefreshTuningConfiguration.isSourceLoadStreaming();
+		Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap;
+		Map<CacheCompoundKey, Integer> sourcePersonCacheCompoundKeyHashCodeMap = null;
+		if (streamSourceEntries) {
+			// Keep only keys and hash codes of source entries in memory
+			Pair<Map<CacheCompoundKey, GluuSimplePerson>, Map<CacheCompoundKey, Integer>> sourcePersonDigests = streamSourceSearchTasks(
+					cacheRefreshConfiguration, inumDbServerConnection, searchTasks);
+			sourcePersonCacheCompoundKeyMap = sourcePersonDigests.getFirst();
+			sourcePersonCacheCompoundKeyHashCodeMap = sourcePersonDigests.getSecond();
+		} else {
+			List<GluuSimplePerson> sourcePersons = executeSourceSearchTasks(searchTasks);
+			log.info("Found '{}' entries in source server", sourcePersons.size());
 
-		Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap = getSourcePersonCompoundKeyMap(
-				cacheRefreshConfiguration, sourcePersons);
+			sourcePersonCacheCompoundKeyMap = getSourcePersonCompoundKeyMap(cacheRefreshConfiguration, sourcePersons);
+		}
 		log.info("Found '{}' unique entries in source server", sourcePersonCacheCompoundKeyMap.size());
+		cacheRefreshMetricsService.finishPhase(CacheRefreshMetricsService.PHASE_SOURCE_LOAD, phaseStartTime,
+				sourcePersonCacheCompoundKeyMap.size(), getBytesRead(searchTasks));
+
+		if (searchPartitions != null) {
+			// Next run will start from partitions which fit into search size limit
+			cacheRefreshSnapshotFileService.writeSearchPartitions(cacheRefreshConfiguration,
+					prepareSearchPartitionsState(searchPartitions));
+		}
 
 		// Load all inum entries
-		List<GluuInumMap> inumMaps = null;
+		phaseStartTime = cacheRefreshMetricsService.startPhase();
+		HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap = null;
+		int countInumCacheRecords = 0;
+		long inumMapsBytesRead = 0;
 
 		// Load all inum entries from local disk cache
 		String inumCachePath = getInumCachePath(cacheRefreshConfiguration);
-		Object loadedObject = objectSerializationService.loadObject(inumCachePath);
-		if (loadedObject != null) {
-			try {
-				inumMaps = (List<GluuInumMap>) loadedObject;
-				log.debug("Found '{}' entries in inum objects disk cache", inumMaps.size());
-			} catch (Exception ex) {
-				log.error("Failed to convert to GluuInumMap list", ex);
-				objectSerializationService.cleanup(inumCachePath);
-			}
+		File inumCacheFile = new File(inumCachePath);
+		if (inumCacheFile.exists()) {
+			inumMapsBytesRead = inumCacheFile.length();
+		}
+		Pair<HashMap<CacheCompoundKey, GluuInumMap>, Integer> loadedInumMaps = inumMapCacheFileService
+				.loadInumMaps(inumCachePath);
+		if (loadedInumMaps != null) {
+			primaryKeyAttrValueInumMap = loadedInumMaps.getFirst();
+			countInumCacheRecords = loadedInumMaps.getSecond();
+			log.debug("Found '{}' entries in inum objects disk cache", primaryKeyAttrValueInumMap.size());
 		}
 
-		if (inumMaps == null) {
+		boolean rebuildInumCache = primaryKeyAttrValueInumMap == null;
+		if (rebuildInumCache) {
 			// Load all inum entries from LDAP
-			inumMaps = loadInumServerEntries(cacheRefreshConfiguration, inumDbServerConnection);
+			List<GluuInumMap> inumMaps = loadInumServerEntries(cacheRefreshConfiguration, inumDbServerConnection);
 			log.info("Found '{}' entries in inum server", inumMaps.size());
-		}
 
-		HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap = getPrimaryKeyAttrValueInumMap(inumMaps);
+			primaryKeyAttrValueInumMap = getPrimaryKeyAttrValueInumMap(inumMaps);
+			inumMapsBytesRead = 0;
+		}
+		cacheRefreshMetricsService.finishPhase(CacheRefreshMetricsService.PHASE_INUM_MAP_LOAD, phaseStartTime,
+				primaryKeyAttrValueInumMap.size(), inumMapsBytesRead);
 
 		// Go through Source entries and create new InumMap entries if needed
-		HashMap<CacheCompoundKey, GluuInumMap> addedPrimaryKeyAttrValueInumMap = addNewInumServerEntries(
+		phaseStartTime = cacheRefreshMetricsService.startPhase();
+		Pair<HashMap<CacheCompoundKey, GluuInumMap>, List<CacheCompoundKey>> addNewInumServerEntriesResult = addNewInumServerEntries(
 				cacheRefreshConfiguration, inumDbServerConnection, sourcePersonCacheCompoundKeyMap,
 				primaryKeyAttrValueInumMap);
+		HashMap<CacheCompoundKey, GluuInumMap> addedPrimaryKeyAttrValueInumMap = addNewInumServerEntriesResult.getFirst();
+
+		// Source entries without inum entries will be processed in next run
+		List<CacheCompoundKey> failedCacheCompoundKeys = addNewInumServerEntriesResult.getSecond();
+		for (CacheCompoundKey failedCacheCompoundKey : failedCacheCompoundKeys) {
+			sourcePersonCacheCompoundKeyMap.remove(failedCacheCompoundKey);
+		}
+		if (failedCacheCompoundKeys.size() > 0) {
+			log.error("Failed to add '{}' new inum entries", failedCacheCompoundKeys.size());
+		}
+		cacheRefreshMetricsService.finishPhase(CacheRefreshMetricsService.PHASE_INUM_MAP_UPDATE, phaseStartTime,
+				addedPrimaryKeyAttrValueInumMap.size() + failedCacheCompoundKeys.size(), 0);
 
 		HashMap<CacheCompoundKey, GluuInumMap> allPrimaryKeyAttrValueInumMap = getAllInumServerEntries(
 				primaryKeyAttrValueInumMap, addedPrimaryKeyAttrValueInumMap);
 		log.debug("Count actual inum entries '{}' after updating inum server", allPrimaryKeyAttrValueInumMap.size());
 
-		HashMap<String, Integer> currInumWithEntryHashCodeMap = getSourcePersonsHashCodesMap(inumDbServerConnection,
-				sourcePersonCacheCompoundKeyMap, allPrimaryKeyAttrValueInumMap);
-		log.debug("Count actual source entries '{}' after calculating hash code", currInumWithEntryHashCodeMap.size());
+		// Current snapshot is used till the end of cycle. Keep it out of heap if needed
+		boolean offHeapSnapshots = cacheRefreshTuningConfiguration.isOffHeapSnapshots();
+
+		phaseStartTime = cacheRefreshMetricsService.startPhase();
+		// Sorted snapshots can be compared without building maps
+		CacheRefreshSnapshot currSnapshot = getSourcePersonsHashCodesSnapshot(inumDbServerConnection,
+				sourcePersonCacheCompoundKeyMap, allPrimaryKeyAttrValueInumMap, sourcePersonCacheCompoundKeyHashCodeMap,
+				offHeapSnapshots && !isIncrementalRun);
+		log.debug("Count actual source entries '{}' after calculating hash code", currSnapshot.size());
+		cacheRefreshMetricsService.finishPhase(CacheRefreshMetricsService.PHASE_HASHING, phaseStartTime,
+				currSnapshot.size(), 0);
 
 		// Create snapshots cache folder if needed
 		boolean result = cacheRefreshSnapshotFileService.prepareSnapshotsFolder(cacheRefreshConfiguration);
@@ -394,14 +513,36 @@ public class CacheRefreshTimer {
 			return false;
 		}
 
-		// Load last snapshot into memory
-		Map<String, Integer> prevInumWithEntryHashCodeMap = cacheRefreshSnapshotFileService
-				.readLastSnapshot(cacheRefreshConfiguration);
+		// Load last snapshot
+		phaseStartTime = cacheRefreshMetricsService.startPhase();
+		CacheRefreshSnapshot prevSnapshot = cacheRefreshSnapshotFileService
+				.readLastSortedSnapshot(cacheRefreshConfiguration);
+
+		if (isIncrementalRun) {
+			if (prevSnapshot == null) {
+				log.error("Failed to load last snapshot. Skipping incremental cache refresh");
+				cacheRefreshSnapshotFileService.removeIncrementalState(cacheRefreshConfiguration);
+				return false;
+			}
+
+			// Unchanged entries keep hash codes from last snapshot
+			if (offHeapSnapshots) {
+				currSnapshot = OffHeapCacheRefreshSnapshot.merge(prevSnapshot, currSnapshot);
+			} else {
+				currSnapshot = CacheRefreshSnapshot.merge(prevSnapshot, currSnapshot);
+			}
+		}
 
 		// Compare 2 snapshot and invoke update if needed
-		Set<String> changedInums = getChangedInums(currInumWithEntryHashCodeMap, prevInumWithEntryHashCodeMap,
-				isVDSMode);
+		CacheRefreshSnapshot.Diff snapshotDiff = null;
+		if (prevSnapshot != null) {
+			snapshotDiff = CacheRefreshSnapshot.diff(prevSnapshot, currSnapshot);
+		}
+
+		Set<String> changedInums = getChangedInums(currSnapshot, snapshotDiff, isVDSMode);
 		log.info("Found '{}' changed entries", changedInums.size());
+		cacheRefreshMetricsService.finishPhase(CacheRefreshMetricsService.PHASE_SNAPSHOT_DIFF, phaseStartTime,
+				currSnapshot.size() + (prevSnapshot == null ? 0 : prevSnapshot.size()), 0);
 
 		// Load problem list from disk and add to changedInums
 		List<String> problemInums = cacheRefreshSnapshotFileService.readProblemList(cacheRefreshConfiguration);
@@ -411,22 +552,25 @@ public class CacheRefreshTimer {
 			changedInums.addAll(problemInums);
 		}
 
+		phaseStartTime = cacheRefreshMetricsService.startPhase();
 		List<String> updatedInums = null;
 		if (isVDSMode) {
 			// Update request to VDS to update entries on target server
 			updatedInums = updateTargetEntriesViaVDS(cacheRefreshConfiguration, targetServerConnection, changedInums);
 		} else {
 			updatedInums = updateTargetEntriesViaCopy(cacheRefreshConfiguration, sourcePersonCacheCompoundKeyMap,
-					allPrimaryKeyAttrValueInumMap, changedInums);
+					allPrimaryKeyAttrValueInumMap, changedInums, streamSourceEntries ? sourceServerConnections : null);
 		}
 
 		log.info("Updated '{}' entries", updatedInums.size());
+		cacheRefreshMetricsService.finishPhase(CacheRefreshMetricsService.PHASE_TARGET_UPDATE, phaseStartTime,
+				changedInums.size(), 0);
 		changedInums.removeAll(updatedInums);
 		log.info("Failed to update '{}' entries", changedInums.size());
 
 		// Persist snapshot to cache folder
-		result = cacheRefreshSnapshotFileService.createSnapshot(cacheRefreshConfiguration,
-				currInumWithEntryHashCodeMap);
+		result = cacheRefreshSnapshotFileService.createSnapshot(cacheRefreshConfiguration, currSnapshot,
+				cacheRefreshTuningConfiguration.isBinarySnapshots());
 		if (!result) {
 			return false;
 		}
@@ -435,18 +579,33 @@ public class CacheRefreshTimer {
 		cacheRefreshSnapshotFileService.retainSnapshots(cacheRefreshConfiguration,
 				cacheRefreshConfiguration.getSnapshotMaxCount());
 
+		if (sourceChangeTrackers != null) {
+			cacheRefreshSnapshotFileService.writeIncrementalState(cacheRefreshConfiguration,
+					prepareIncrementalState(sourceChangeTrackers, incrementalState, isIncrementalRun));
+		}
+
 		// Save changedInums as problem list to disk
-		currentConfiguration.setVdsCacheRefreshProblemCount(String.valueOf(changedInums.size()));
+		currentConfiguration
+				.setVdsCacheRefreshProblemCount(String.valueOf(changedInums.size() + failedCacheCompoundKeys.size()));
 		cacheRefreshSnapshotFileService.writeProblemList(cacheRefreshConfiguration, changedInums);
 
 		// Prepare list of persons for removal
+		phaseStartTime = cacheRefreshMetricsService.startPhase();
 		List<GluuSimplePerson> personsForRemoval = null;
 
 		boolean keepExternalPerson = cacheRefreshConfiguration.isKeepExternalPerson();
 		log.debug("Keep external persons: '{}'", keepExternalPerson);
-		if (keepExternalPerson) {
+		if (isIncrementalRun) {
+			// Removed entries will be detected during next full reconciliation
+			personsForRemoval = new ArrayList<GluuSimplePerson>(0);
+		} else if (isSearchTruncated(searchPartitions)) {
+			// Entries which weren't loaded would be treated as removed
+			log.warn("Some source entries weren't loaded because of search size limit. "
+					+ "Skipping removal of entries from target server");
+			personsForRemoval = new ArrayList<GluuSimplePerson>(0);
+		} else if (keepExternalPerson) {
 			// Determine entries which need to remove
-			personsForRemoval = getRemovedPersons(currInumWithEntryHashCodeMap, prevInumWithEntryHashCodeMap);
+			personsForRemoval = getRemovedPersons(snapshotDiff);
 		} else {
 			// Process entries which don't exist in source server
 
@@ -455,24 +614,33 @@ public class CacheRefreshTimer {
 			log.info("Found '{}' entries in target server", targetPersons.size());
 
 			// Detect entries which need to remove
-			personsForRemoval = processTargetPersons(targetPersons, currInumWithEntryHashCodeMap);
+			personsForRemoval = processTargetPersons(targetPersons, currSnapshot);
 		}
 		log.debug("Count entries '{}' for removal from target server", personsForRemoval.size());
 
 		// Remove entries from target server
-		HashMap<String, GluuInumMap> inumInumMap = getInumInumMap(inumMaps);
+		HashMap<String, GluuInumMap> inumInumMap = getInumInumMap(primaryKeyAttrValueInumMap.values());
 		Pair<List<String>, List<String>> removeTargetEntriesResult = removeTargetEntries(inumDbServerConnection,
 				ldapEntryManager, personsForRemoval, inumInumMap);
 		List<String> removedPersonInums = removeTargetEntriesResult.getFirst();
 		List<String> removedGluuInumMaps = removeTargetEntriesResult.getSecond();
 		log.info("Removed '{}' persons from target server", removedPersonInums.size());
+		cacheRefreshMetricsService.finishPhase(CacheRefreshMetricsService.PHASE_TARGET_REMOVAL, phaseStartTime,
+				personsForRemoval.size(), 0);
 
 		// Prepare list of inum for serialization
 		ArrayList<GluuInumMap> currentInumMaps = applyChangesToInumMap(inumInumMap, addedPrimaryKeyAttrValueInumMap,
 				removedGluuInumMaps);
 
-		// Strore all inum entries into local disk cache
-		objectSerializationService.saveObject(inumCachePath, currentInumMaps);
+		// Strore inum entries changes into local disk cache
+		countInumCacheRecords += addedPrimaryKeyAttrValueInumMap.size() + removedGluuInumMaps.size();
+		if (rebuildInumCache
+				|| inumMapCacheFileService.isCompactionNeeded(countInumCacheRecords, currentInumMaps.size())) {
+			inumMapCacheFileService.writeInumMaps(inumCachePath, currentInumMaps);
+		} else {
+			inumMapCacheFileService.appendInumMaps(inumCachePath, addedPrimaryKeyAttrValueInumMap.values(),
+					removedGluuInumMaps);
+		}
 
 		currentConfiguration
 				.setVdsCacheRefreshLastUpdateCount(String.valueOf(updatedInums.size() + removedPersonInums.size()));
@@ -496,52 +664,38 @@ public class CacheRefreshTimer {
 		return currentInumMaps;
 	}
 
-	private Set<String> getChangedInums(HashMap<String, Integer> currInumWithEntryHashCodeMap,
-			Map<String, Integer> prevInumWithEntryHashCodeMap, boolean includeDeleted) {
+	private Set<String> getChangedInums(CacheRefreshSnapshot currSnapshot, CacheRefreshSnapshot.Diff snapshotDiff,
+			boolean includeDeleted) {
 		// Find chaged inums
 		Set<String> changedInums = null;
 		// First time run
-		if (prevInumWithEntryHashCodeMap == null) {
-			changedInums = new HashSet<String>(currInumWithEntryHashCodeMap.keySet());
+		if (snapshotDiff == null) {
+			changedInums = new HashSet<String>(currSnapshot.size());
+			for (int i = 0; i < currSnapshot.size(); i++) {
+				changedInums.add(currSnapshot.getInum(i));
+			}
 		} else {
 			changedInums = new HashSet<String>();
 
 			// Add all inums which not exist in new snapshot
 			if (includeDeleted) {
-				for (String prevInumKey : prevInumWithEntryHashCodeMap.keySet()) {
-					if (!currInumWithEntryHashCodeMap.containsKey(prevInumKey)) {
-						changedInums.add(prevInumKey);
-					}
-				}
+				changedInums.addAll(snapshotDiff.getRemovedInums());
 			}
 
 			// Add all new inums and changed inums
-			for (Entry<String, Integer> currEntry : currInumWithEntryHashCodeMap.entrySet()) {
-				String currInumKey = currEntry.getKey();
-				Integer prevHashCode = prevInumWithEntryHashCodeMap.get(currInumKey);
-				if ((prevHashCode == null)
-						|| ((prevHashCode != null) && !(prevHashCode.equals(currEntry.getValue())))) {
-					changedInums.add(currInumKey);
-				}
-			}
+			changedInums.addAll(snapshotDiff.getChangedInums());
 		}
 		return changedInums;
 	}
 
-	private List<GluuSimplePerson> getRemovedPersons(HashMap<String, Integer> currInumWithEntryHashCodeMap,
-			Map<String, Integer> prevInumWithEntryHashCodeMap) {
+	private List<GluuSimplePerson> getRemovedPersons(CacheRefreshSnapshot.Diff snapshotDiff) {
 		// First time run
-		if (prevInumWithEntryHashCodeMap == null) {
+		if (snapshotDiff == null) {
 			return new ArrayList<GluuSimplePerson>(0);
 		}
 
-		// Add all inums which not exist in new snapshot
-		Set<String> deletedInums = new HashSet<String>();
-		for (String prevInumKey : prevInumWithEntryHashCodeMap.keySet()) {
-			if (!currInumWithEntryHashCodeMap.containsKey(prevInumKey)) {
-				deletedInums.add(prevInumKey);
-			}
-		}
+		// Add all inums which not exist in new snapshot. Inums in snapshot are unique
+		List<String> deletedInums = snapshotDiff.getRemovedInums();
 
 		List<GluuSimplePerson> deletedPersons = new ArrayList<GluuSimplePerson>(deletedInums.size());
 		for (String deletedInum : deletedInums) {
@@ -582,7 +736,8 @@ public class CacheRefreshTimer {
 
 	private List<String> updateTargetEntriesViaCopy(CacheRefreshConfiguration cacheRefreshConfiguration,
 			Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
-			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap, Set<String> changedInums) {
+			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap, Set<String> changedInums,
+			LdapServerConnection[] reloadSourceServerConnections) {
 		HashMap<String, CacheCompoundKey> inumCacheCompoundKeyMap = getInumCacheCompoundKeyMap(
 				primaryKeyAttrValueInumMap);
 		Map<String, String> targetServerAttributesMapping = getTargetServerAttributesMapping(cacheRefreshConfiguration);
@@ -595,6 +750,7 @@ public class CacheRefreshTimer {
 			return result;
 		}
 
+		List<TargetUpdateTask> updateTasks = new ArrayList<TargetUpdateTask>();
 		for (String targetInum : changedInums) {
 			CacheCompoundKey compoundKey = inumCacheCompoundKeyMap.get(targetInum);
 			if (compoundKey == null) {
@@ -606,15 +762,91 @@ public class CacheRefreshTimer {
 				continue;
 			}
 
-			if (updateTargetEntryViaCopy(sourcePerson, targetInum, customObjectClasses,
-					targetServerAttributesMapping)) {
-				result.add(targetInum);
+			updateTasks.add(new TargetUpdateTask(cacheRefreshConfiguration, reloadSourceServerConnections, sourcePerson,
+					targetInum, customObjectClasses, targetServerAttributesMapping));
+		}
+
+		int concurrency = Math.min(getTargetUpdateConcurrency(), updateTasks.size());
+		if (concurrency <= 1) {
+			for (TargetUpdateTask updateTask : updateTasks) {
+				if (updateTask.call()) {
+					result.add(updateTask.getTargetInum());
+				}
+			}
+
+			return result;
+		}
+
+		log.debug("Updating entries on target server using '{}' concurrent updates", concurrency);
+		ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+		try {
+			List<Future<Boolean>> updateResults = new ArrayList<Future<Boolean>>(updateTasks.size());
+			for (TargetUpdateTask updateTask : updateTasks) {
+				updateResults.add(executorService.submit(updateTask));
+			}
+
+			for (int i = 0; i < updateResults.size(); i++) {
+				String targetInum = updateTasks.get(i).getTargetInum();
+				try {
+					if (updateResults.get(i).get()) {
+						result.add(targetInum);
+					}
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					log.error("Interrupted while updating person '{}'", targetInum, ex);
+					break;
+				} catch (ExecutionException ex) {
+					log.error("Failed to update person '{}'", targetInum, ex.getCause());
+				}
 			}
+		} finally {
+			executorService.shutdownNow();
 		}
 
 		return result;
 	}
 
+	private int getTargetUpdateConcurrency() {
+		int concurrency = cacheRefreshTuningConfiguration.getTargetUpdateConcurrency();
+		if ((concurrency > 1) && externalCacheRefreshService.isEnabled()
+				&& !cacheRefreshTuningConfiguration.isTargetUpdateScriptsThreadSafe()) {
+			log.debug("Cache Refresh scripts are not marked as thread-safe. Updating entries on target server serially");
+			return 1;
+		}
+
+		return concurrency;
+	}
+
+	private GluuSimplePerson reloadSourcePerson(CacheRefreshConfiguration cacheRefreshConfiguration,
+			LdapServerConnection[] sourceServerConnections, GluuSimplePerson sourcePersonDigest) {
+		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
+		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
+		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
+
+		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+			if (!StringHelper.equals(sourceServerConnection.getSourceServerName(),
+					sourcePersonDigest.getSourceServerName())) {
+				continue;
+			}
+
+			try {
+				GluuSimplePerson sourcePerson = sourceServerConnection.getPersistenceEntryManager()
+						.find(sourcePersonDigest.getDn(), GluuSimplePerson.class, returnAttributes);
+				sourcePerson.setSourceServerName(sourceServerConnection.getSourceServerName());
+
+				return sourcePerson;
+			} catch (BasePersistenceException ex) {
+				log.error("Failed to load source entry with DN: {}", sourcePersonDigest.getDn(), ex);
+				return null;
+			}
+		}
+
+		log.error("Failed to find source server '{}' of entry with DN: {}", sourcePersonDigest.getSourceServerName(),
+				sourcePersonDigest.getDn());
+
+		return null;
+	}
+
 	private boolean validateTargetServerSchema(CacheRefreshConfiguration cacheRefreshConfiguration,
 			Map<String, String> targetServerAttributesMapping, String[] customObjectClasses) {
 		// Get list of return attributes
@@ -688,26 +920,39 @@ public class CacheRefreshTimer {
 		return false;
 	}
 
-	private boolean updateTargetEntryViaCopy(GluuSimplePerson sourcePerson, String targetInum,
-			String[] targetCustomObjectClasses, Map<String, String> targetServerAttributesMapping) {
+	/**
+	 * Load existing target server entry
+	 * 
+	 * @return Target server entry or null if there is no entry with this inum
+	 * @throws BasePersistenceException
+	 *             if target server entry can't be loaded
+	 */
+	private GluuCustomPerson findTargetEntry(String targetInum) {
 		String targetPersonDn = personService.getDnForPerson(targetInum);
-		GluuCustomPerson targetPerson = null;
-		boolean updatePerson;
-		if (personService.contains(targetPersonDn)) {
-			try {
-				targetPerson = personService.findPersonByDn(targetPersonDn);
-				log.debug("Found person by inum '{}'", targetInum);
-			} catch (EntryPersistenceException ex) {
-				log.error("Failed to find person '{}'", targetInum, ex);
-				return false;
-			}
-			updatePerson = true;
-		} else {
+		if (!personService.contains(targetPersonDn)) {
+			return null;
+		}
+
+		GluuCustomPerson targetPerson = personService.findPersonByDn(targetPersonDn);
+		log.debug("Found person by inum '{}'", targetInum);
+
+		return targetPerson;
+	}
+
+	/**
+	 * Copy source entry to existing or new target server entry and execute Cache
+	 * Refresh scripts
+	 * 
+	 * @return Target server entry or null if Cache Refresh scripts rejected entry
+	 */
+	private GluuCustomPerson prepareTargetEntry(GluuSimplePerson sourcePerson, GluuCustomPerson existingPerson,
+			String targetInum, String[] targetCustomObjectClasses, Map<String, String> targetServerAttributesMapping) {
+		GluuCustomPerson targetPerson = existingPerson;
+		if (targetPerson == null) {
 			targetPerson = new GluuCustomPerson();
-			targetPerson.setDn(targetPersonDn);
+			targetPerson.setDn(personService.getDnForPerson(targetInum));
 			targetPerson.setInum(targetInum);
 			targetPerson.setStatus(appConfiguration.getSupportedUserStatus().get(0));
-			updatePerson = false;
 		}
 		targetPerson.setCustomObjectClasses(targetCustomObjectClasses);
 
@@ -720,23 +965,26 @@ public class CacheRefreshTimer {
 		boolean executionResult = externalCacheRefreshService.executeExternalUpdateUserMethods(targetPerson);
 		if (!executionResult) {
 			log.error("Failed to execute Cache Refresh scripts for person '{}'", targetInum);
-			return false;
+			return null;
 		}
 
-		try {
-			if (updatePerson) {
-				personService.updatePerson(targetPerson);
-				log.debug("Updated person '{}'", targetInum);
-			} else {
-				personService.addPerson(targetPerson);
-				log.debug("Added new person '{}'", targetInum);
-			}
-		} catch (Exception ex) {
-			log.error("Failed to '{}' person '{}'", updatePerson ? "update" : "add", targetInum, ex);
-			return false;
-		}
+		return targetPerson;
+	}
 
-		return true;
+	/**
+	 * Save prepared target server entry
+	 * 
+	 * @throws BasePersistenceException
+	 *             if target server entry can't be saved
+	 */
+	private void saveTargetEntry(GluuCustomPerson targetPerson, boolean updatePerson) {
+		if (updatePerson) {
+			personService.updatePerson(targetPerson);
+			log.debug("Updated person '{}'", targetPerson.getInum());
+		} else {
+			personService.addPerson(targetPerson);
+			log.debug("Added new person '{}'", targetPerson.getInum());
+		}
 	}
 
 	private HashMap<String, CacheCompoundKey> getInumCacheCompoundKeyMap(
@@ -853,24 +1101,20 @@ public class CacheRefreshTimer {
 				null, 0, 0, cacheRefreshConfiguration.getLdapSearchSizeLimit());
 	}
 
-	private List<GluuSimplePerson> loadSourceServerEntriesWithoutLimits(
-			CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection[] sourceServerConnections)
-			throws SearchException {
+	private List<SourceSearchTask> prepareSourceSearchTasksWithoutLimits(
+			CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection[] sourceServerConnections,
+			Map<String, SourceChangeTracker> sourceChangeTrackers) throws SearchException {
 		Filter customFilter = cacheRefreshService.createFilter(cacheRefreshConfiguration.getCustomLdapFilter());
 		String[] keyAttributes = getCompoundKeyAttributes(cacheRefreshConfiguration);
 		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
 		String[] keyObjectClasses = getCompoundKeyObjectClasses(cacheRefreshConfiguration);
 		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
 
-		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
-
-		Set<String> addedDns = new HashSet<String>();
+		String[] returnAttributes = getSourceReturnAttributes(keyAttributesWithoutValues, sourceAttributes,
+				sourceChangeTrackers);
 
-		List<GluuSimplePerson> sourcePersons = new ArrayList<GluuSimplePerson>();
+		List<SourceSearchTask> searchTasks = new ArrayList<SourceSearchTask>();
 		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
-			String sourceServerName = sourceServerConnection.getSourceServerName();
-
-			PersistenceEntryManager sourcePersistenceEntryManager = sourceServerConnection.getPersistenceEntryManager();
 			String[] baseDns = sourceServerConnection.getBaseDns();
 			Filter filter = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, "", customFilter);
 			if (log.isTraceEnabled()) {
@@ -878,30 +1122,17 @@ public class CacheRefreshTimer {
 			}
 
 			for (String baseDn : baseDns) {
-				List<GluuSimplePerson> currentSourcePersons = sourcePersistenceEntryManager.findEntries(baseDn,
-						GluuSimplePerson.class, filter, SearchScope.SUB, returnAttributes, null, 0, 0,
-						cacheRefreshConfiguration.getLdapSearchSizeLimit());
-
-				// Add to result and ignore root entry if needed
-				for (GluuSimplePerson currentSourcePerson : currentSourcePersons) {
-					currentSourcePerson.setSourceServerName(sourceServerName);
-					// if (!StringHelper.equalsIgnoreCase(baseDn,
-					// currentSourcePerson.getDn())) {
-					String currentSourcePersonDn = currentSourcePerson.getDn().toLowerCase();
-					if (!addedDns.contains(currentSourcePersonDn)) {
-						sourcePersons.add(currentSourcePerson);
-						addedDns.add(currentSourcePersonDn);
-					}
-					// }
-				}
+				searchTasks.add(new SourceSearchTask(cacheRefreshConfiguration, sourceServerConnection, baseDn, filter,
+						returnAttributes, getSourceChangeTracker(sourceChangeTrackers, sourceServerConnection)));
 			}
 		}
 
-		return sourcePersons;
+		return searchTasks;
 	}
 
-	private List<GluuSimplePerson> loadSourceServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration,
-			LdapServerConnection[] sourceServerConnections) throws SearchException {
+	private List<SourceSearchTask> prepareSourceSearchTasks(CacheRefreshConfiguration cacheRefreshConfiguration,
+			LdapServerConnection[] sourceServerConnections, Map<String, SourceChangeTracker> sourceChangeTrackers)
+			throws SearchException {
 		Filter customFilter = cacheRefreshService.createFilter(cacheRefreshConfiguration.getCustomLdapFilter());
 		String[] keyAttributes = getCompoundKeyAttributes(cacheRefreshConfiguration);
 		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
@@ -909,15 +1140,11 @@ public class CacheRefreshTimer {
 		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
 
 		String[] twoLettersArray = createTwoLettersArray();
-		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
-
-		Set<String> addedDns = new HashSet<String>();
+		String[] returnAttributes = getSourceReturnAttributes(keyAttributesWithoutValues, sourceAttributes,
+				sourceChangeTrackers);
 
-		List<GluuSimplePerson> sourcePersons = new ArrayList<GluuSimplePerson>();
+		List<SourceSearchTask> searchTasks = new ArrayList<SourceSearchTask>();
 		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
-			String sourceServerName = sourceServerConnection.getSourceServerName();
-
-			PersistenceEntryManager sourcePersistenceEntryManager = sourceServerConnection.getPersistenceEntryManager();
 			String[] baseDns = sourceServerConnection.getBaseDns();
 			for (String keyAttributeStart : twoLettersArray) {
 				Filter filter = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, keyAttributeStart,
@@ -927,164 +1154,596 @@ public class CacheRefreshTimer {
 				}
 
 				for (String baseDn : baseDns) {
-					List<GluuSimplePerson> currentSourcePersons = sourcePersistenceEntryManager.findEntries(baseDn,
-							GluuSimplePerson.class, filter, SearchScope.SUB, returnAttributes, null, 0, 0,
-							cacheRefreshConfiguration.getLdapSearchSizeLimit());
-
-					// Add to result and ignore root entry if needed
-					for (GluuSimplePerson currentSourcePerson : currentSourcePersons) {
-						currentSourcePerson.setSourceServerName(sourceServerName);
-						// if (!StringHelper.equalsIgnoreCase(baseDn,
-						// currentSourcePerson.getDn())) {
-						String currentSourcePersonDn = currentSourcePerson.getDn().toLowerCase();
-						if (!addedDns.contains(currentSourcePersonDn)) {
-							sourcePersons.add(currentSourcePerson);
-							addedDns.add(currentSourcePersonDn);
-						}
-						// }
-					}
+					searchTasks.add(new SourceSearchTask(cacheRefreshConfiguration, sourceServerConnection, baseDn,
+							filter, returnAttributes, getSourceChangeTracker(sourceChangeTrackers, sourceServerConnection)));
 				}
 			}
 		}
 
-		return sourcePersons;
+		return searchTasks;
 	}
 
-	private List<GluuSimplePerson> loadTargetServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration,
-			PersistenceEntryManager targetPersistenceEntryManager) {
-		Filter filter = Filter.createEqualityFilter(OxConstants.OBJECT_CLASS, OxTrustConstants.objectClassPerson);
+	private List<SourceSearchTask> prepareAdaptiveSourceSearchTasks(CacheRefreshConfiguration cacheRefreshConfiguration,
+			LdapServerConnection[] sourceServerConnections, Map<String, SourceChangeTracker> sourceChangeTrackers,
+			Map<String, SourceSearchPartitions> searchPartitions) throws SearchException {
+		Filter customFilter = cacheRefreshService.createFilter(cacheRefreshConfiguration.getCustomLdapFilter());
+		String[] keyAttributes = getCompoundKeyAttributes(cacheRefreshConfiguration);
+		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
+		String[] keyObjectClasses = getCompoundKeyObjectClasses(cacheRefreshConfiguration);
+		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
 
-		return targetPersistenceEntryManager.findEntries(personService.getDnForPerson(null), GluuSimplePerson.class,
-				filter, SearchScope.SUB, TARGET_PERSON_RETURN_ATTRIBUTES, null, 0, 0,
-				cacheRefreshConfiguration.getLdapSearchSizeLimit());
-	}
+		String[] returnAttributes = getSourceReturnAttributes(keyAttributesWithoutValues, sourceAttributes,
+				sourceChangeTrackers);
 
-	private GluuInumMap addGluuInumMap(String inumbBaseDn, PersistenceEntryManager inumDbPersistenceEntryManager,
-			String[] primaryKeyAttrName, String[][] primaryKeyValues) {
-		String inum = cacheRefreshService.generateInumForNewInumMap(inumbBaseDn, inumDbPersistenceEntryManager);
-		String inumDn = cacheRefreshService.getDnForInum(inumbBaseDn, inum);
+		Map<String, String> searchPartitionsState = cacheRefreshSnapshotFileService
+				.readSearchPartitions(cacheRefreshConfiguration);
 
-		GluuInumMap inumMap = new GluuInumMap();
-		inumMap.setDn(inumDn);
-		inumMap.setInum(inum);
-		inumMap.setPrimaryKeyAttrName(primaryKeyAttrName[0]);
-		inumMap.setPrimaryKeyValues(primaryKeyValues[0]);
-		if (primaryKeyAttrName.length > 1) {
-			inumMap.setSecondaryKeyAttrName(primaryKeyAttrName[1]);
-			inumMap.setSecondaryKeyValues(primaryKeyValues[1]);
-		}
-		if (primaryKeyAttrName.length > 2) {
-			inumMap.setTertiaryKeyAttrName(primaryKeyAttrName[2]);
-			inumMap.setTertiaryKeyValues(primaryKeyValues[2]);
+		List<SourceSearchTask> searchTasks = new ArrayList<SourceSearchTask>();
+		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+			for (String baseDn : sourceServerConnection.getBaseDns()) {
+				String partitionsKey = sourceServerConnection.getSourceServerName() + "|" + baseDn;
+				SourceSearchPartitions partitions = new SourceSearchPartitions(
+						cacheRefreshConfiguration.getLdapSearchSizeLimit());
+				searchPartitions.put(partitionsKey, partitions);
+
+				// Start from partitions of last run
+				String[] keyAttributeStarts = null;
+				if (searchPartitionsState != null) {
+					keyAttributeStarts = SourceSearchPartitions.parse(searchPartitionsState.get(partitionsKey));
+				}
+				if (keyAttributeStarts == null) {
+					keyAttributeStarts = SourceSearchPartitions.split("");
+				}
+				log.debug("Using '{}' search partitions to load entries from source server '{}' with baseDN: {}",
+						keyAttributeStarts.length, sourceServerConnection.getSourceServerName(), baseDn);
+
+				for (String keyAttributeStart : keyAttributeStarts) {
+					Filter filter = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, keyAttributeStart,
+							customFilter);
+					searchTasks.add(new SourceSearchTask(cacheRefreshConfiguration, sourceServerConnection, baseDn,
+							filter, returnAttributes, getSourceChangeTracker(sourceChangeTrackers, sourceServerConnection),
+							new SourceSearchPartition(keyAttributes, keyObjectClasses, customFilter, keyAttributeStart,
+									partitions)));
+				}
+			}
 		}
-		inumMap.setStatus(GluuStatus.ACTIVE);
-		cacheRefreshService.addInumMap(inumDbPersistenceEntryManager, inumMap);
 
-		return inumMap;
+		return searchTasks;
 	}
 
-	private HashMap<CacheCompoundKey, GluuInumMap> addNewInumServerEntries(
-			CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection inumDbServerConnection,
-			Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
-			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
-		PersistenceEntryManager inumDbPersistenceEntryManager = inumDbServerConnection.getPersistenceEntryManager();
-		String inumbaseDn = inumDbServerConnection.getBaseDns()[0];
+	private Map<String, String> prepareSearchPartitionsState(Map<String, SourceSearchPartitions> searchPartitions) {
+		Map<String, String> result = new HashMap<String, String>();
+		for (Entry<String, SourceSearchPartitions> searchPartitionsEntry : searchPartitions.entrySet()) {
+			result.put(searchPartitionsEntry.getKey(), searchPartitionsEntry.getValue().toState());
+		}
 
-		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+		return result;
+	}
 
+	private List<SourceSearchTask> prepareIncrementalSourceSearchTasks(
+			CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection[] sourceServerConnections,
+			Map<String, SourceChangeTracker> sourceChangeTrackers, Map<String, String> incrementalState)
+			throws SearchException {
+		Filter customFilter = cacheRefreshService.createFilter(cacheRefreshConfiguration.getCustomLdapFilter());
+		String[] keyAttributes = getCompoundKeyAttributes(cacheRefreshConfiguration);
 		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
-		for (Entry<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyEntry : sourcePersonCacheCompoundKeyMap
-				.entrySet()) {
-			CacheCompoundKey cacheCompoundKey = sourcePersonCacheCompoundKeyEntry.getKey();
-			GluuSimplePerson sourcePerson = sourcePersonCacheCompoundKeyEntry.getValue();
+		String[] keyObjectClasses = getCompoundKeyObjectClasses(cacheRefreshConfiguration);
+		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
 
+		String[] returnAttributes = getSourceReturnAttributes(keyAttributesWithoutValues, sourceAttributes,
+				sourceChangeTrackers);
+
+		// Number of changed entries is small, there is no need to split searches by key prefixes
+		List<SourceSearchTask> searchTasks = new ArrayList<SourceSearchTask>();
+		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+			SourceChangeTracker sourceChangeTracker = getSourceChangeTracker(sourceChangeTrackers,
+					sourceServerConnection);
+			String highWaterMark = incrementalState
+					.get(INCREMENTAL_STATE_HIGH_WATER_MARK_PREFIX + sourceServerConnection.getSourceServerName());
+			sourceChangeTracker.update(highWaterMark);
+
+			Filter filter = Filter.createANDFilter(
+					cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, "", customFilter),
+					Filter.createGreaterOrEqualFilter(sourceChangeTracker.getChangeAttribute(), highWaterMark));
 			if (log.isTraceEnabled()) {
-				log.trace("Checking source entry with key: '{}', and DN: {}", cacheCompoundKey, sourcePerson.getDn());
+				log.trace("Using next filter to load changed entris from source server: {}", filter);
 			}
 
-			GluuInumMap currentInumMap = primaryKeyAttrValueInumMap.get(cacheCompoundKey);
-			if (currentInumMap == null) {
-				String[][] keyAttributesValues = getKeyAttributesValues(keyAttributesWithoutValues, sourcePerson);
-				currentInumMap = addGluuInumMap(inumbaseDn, inumDbPersistenceEntryManager, keyAttributesWithoutValues,
-						keyAttributesValues);
-				result.put(cacheCompoundKey, currentInumMap);
-				log.debug("Added new inum entry for DN: {}", sourcePerson.getDn());
-			} else {
-				log.trace("Inum entry for DN: '{}' exist", sourcePerson.getDn());
+			for (String baseDn : sourceServerConnection.getBaseDns()) {
+				searchTasks.add(new SourceSearchTask(cacheRefreshConfiguration, sourceServerConnection, baseDn, filter,
+						returnAttributes, sourceChangeTracker));
 			}
 		}
 
-		return result;
+		return searchTasks;
 	}
 
-	private HashMap<CacheCompoundKey, GluuInumMap> getAllInumServerEntries(
-			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap,
-			HashMap<CacheCompoundKey, GluuInumMap> addedPrimaryKeyAttrValueInumMap) {
-		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+	private String[] getSourceReturnAttributes(String[] keyAttributesWithoutValues, String[] sourceAttributes,
+			Map<String, SourceChangeTracker> sourceChangeTrackers) {
+		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
+		if (sourceChangeTrackers == null) {
+			return returnAttributes;
+		}
 
-		result.putAll(primaryKeyAttrValueInumMap);
-		result.putAll(addedPrimaryKeyAttrValueInumMap);
+		String changeAttribute = cacheRefreshTuningConfiguration.getIncrementalChangeAttribute();
 
-		return result;
+		return ArrayHelper.arrayMerge(returnAttributes, new String[] { changeAttribute });
 	}
 
-	private HashMap<String, Integer> getSourcePersonsHashCodesMap(LdapServerConnection inumDbServerConnection,
-			Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
-			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
-		PersistenceEntryManager inumDbPersistenceEntryManager = inumDbServerConnection.getPersistenceEntryManager();
-
-		HashMap<String, Integer> result = new HashMap<String, Integer>();
-
-		for (Entry<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyEntry : sourcePersonCacheCompoundKeyMap
-				.entrySet()) {
-			CacheCompoundKey cacheCompoundKey = sourcePersonCacheCompoundKeyEntry.getKey();
-			GluuSimplePerson sourcePerson = sourcePersonCacheCompoundKeyEntry.getValue();
+	private SourceChangeTracker getSourceChangeTracker(Map<String, SourceChangeTracker> sourceChangeTrackers,
+			LdapServerConnection sourceServerConnection) {
+		if (sourceChangeTrackers == null) {
+			return null;
+		}
 
-			GluuInumMap currentInumMap = primaryKeyAttrValueInumMap.get(cacheCompoundKey);
+		return sourceChangeTrackers.get(sourceServerConnection.getSourceServerName());
+	}
 
-			result.put(currentInumMap.getInum(), inumDbPersistenceEntryManager.getHashCode(sourcePerson));
+	private Map<String, SourceChangeTracker> prepareSourceChangeTrackers(
+			LdapServerConnection[] sourceServerConnections, String changeAttribute) {
+		Map<String, SourceChangeTracker> result = new HashMap<String, SourceChangeTracker>();
+		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+			result.put(sourceServerConnection.getSourceServerName(), new SourceChangeTracker(changeAttribute));
 		}
 
 		return result;
 	}
 
-	private List<GluuSimplePerson> processTargetPersons(List<GluuSimplePerson> targetPersons,
-			HashMap<String, Integer> currInumWithEntryHashCodeMap) {
-		List<GluuSimplePerson> result = new ArrayList<GluuSimplePerson>();
+	private boolean isIncrementalRun(LdapServerConnection[] sourceServerConnections, String changeAttribute,
+			Map<String, String> incrementalState) {
+		if (incrementalState == null) {
+			log.info("There is no incremental cache refresh state. Starting full reconciliation");
+			return false;
+		}
 
-		for (GluuSimplePerson targetPerson : targetPersons) {
-			String personInum = targetPerson.getAttribute(OxTrustConstants.inum);
-			if (!currInumWithEntryHashCodeMap.containsKey(personInum)) {
-				log.debug("Person with such DN: '{}' isn't present on source server", targetPerson.getDn());
-				result.add(targetPerson);
+		if (!StringHelper.equalsIgnoreCase(changeAttribute,
+				incrementalState.get(INCREMENTAL_STATE_CHANGE_ATTRIBUTE))) {
+			log.info("Incremental change attribute was changed. Starting full reconciliation");
+			return false;
+		}
+
+		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+			String highWaterMark = incrementalState
+					.get(INCREMENTAL_STATE_HIGH_WATER_MARK_PREFIX + sourceServerConnection.getSourceServerName());
+			if (StringHelper.isEmpty(highWaterMark)) {
+				log.info("There is no high-water mark for source server '{}'. Starting full reconciliation",
+						sourceServerConnection.getSourceServerName());
+				return false;
 			}
 		}
 
-		return result;
+		int incrementalRuns = StringHelper.toInteger(incrementalState.get(INCREMENTAL_STATE_RUNS), 0);
+		if (incrementalRuns >= cacheRefreshTuningConfiguration.getFullReconciliationInterval()) {
+			log.info("Starting full reconciliation after '{}' incremental cache refresh runs", incrementalRuns);
+			return false;
+		}
+
+		return true;
 	}
 
-	private HashMap<CacheCompoundKey, GluuInumMap> getPrimaryKeyAttrValueInumMap(List<GluuInumMap> inumMaps) {
-		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+	private Map<String, String> prepareIncrementalState(Map<String, SourceChangeTracker> sourceChangeTrackers,
+			Map<String, String> prevIncrementalState, boolean isIncrementalRun) {
+		Map<String, String> result = new HashMap<String, String>();
+		result.put(INCREMENTAL_STATE_CHANGE_ATTRIBUTE, cacheRefreshTuningConfiguration.getIncrementalChangeAttribute());
 
-		for (GluuInumMap inumMap : inumMaps) {
-			result.put(new CacheCompoundKey(inumMap.getPrimaryKeyValues(), inumMap.getSecondaryKeyValues(),
-					inumMap.getTertiaryKeyValues()), inumMap);
+		for (Entry<String, SourceChangeTracker> sourceChangeTrackerEntry : sourceChangeTrackers.entrySet()) {
+			String highWaterMark = sourceChangeTrackerEntry.getValue().getHighWaterMark();
+			if (StringHelper.isNotEmpty(highWaterMark)) {
+				result.put(INCREMENTAL_STATE_HIGH_WATER_MARK_PREFIX + sourceChangeTrackerEntry.getKey(), highWaterMark);
+			}
+		}
+
+		int incrementalRuns = 0;
+		if (isIncrementalRun) {
+			incrementalRuns = StringHelper.toInteger(prevIncrementalState.get(INCREMENTAL_STATE_RUNS), 0) + 1;
 		}
+		result.put(INCREMENTAL_STATE_RUNS, String.valueOf(incrementalRuns));
 
 		return result;
 	}
 
-	private HashMap<String, GluuInumMap> getInumInumMap(List<GluuInumMap> inumMaps) {
-		HashMap<String, GluuInumMap> result = new HashMap<String, GluuInumMap>();
+	private List<GluuSimplePerson> executeSourceSearchTasks(List<SourceSearchTask> searchTasks) {
+		Set<String> addedDns = new HashSet<String>();
+		List<GluuSimplePerson> sourcePersons = new ArrayList<GluuSimplePerson>();
 
-		for (GluuInumMap inumMap : inumMaps) {
-			result.put(inumMap.getInum(), inumMap);
+		int concurrency = Math.min(cacheRefreshTuningConfiguration.getSourceLoadConcurrency(), searchTasks.size());
+		if (concurrency <= 1) {
+			for (SourceSearchTask searchTask : searchTasks) {
+				addSourcePersons(searchTask.call(), addedDns, sourcePersons);
+			}
+			addSourceLoadStatistics(searchTasks);
+
+			return sourcePersons;
 		}
 
-		return result;
-	}
+		log.debug("Loading entries from source servers using '{}' concurrent searches", concurrency);
+		ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+		try {
+			List<Future<List<GluuSimplePerson>>> searchResults = new ArrayList<Future<List<GluuSimplePerson>>>(
+					searchTasks.size());
+			for (SourceSearchTask searchTask : searchTasks) {
+				searchResults.add(executorService.submit(searchTask));
+			}
 
-	private Map<CacheCompoundKey, GluuSimplePerson> getSourcePersonCompoundKeyMap(
+			// Merge results in tasks order to keep DN de-duplication and result order stable
+			for (int i = 0; i < searchResults.size(); i++) {
+				addSourcePersons(getSearchResult(searchTasks.get(i), searchResults.get(i)), addedDns, sourcePersons);
+				searchResults.set(i, null);
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+		addSourceLoadStatistics(searchTasks);
+
+		return sourcePersons;
+	}
+
+	/**
+	 * Add one source load phase per source server. Searches of server run in
+	 * parallel, so phase duration is time from first search start to last search
+	 * finish
+	 */
+	private void addSourceLoadStatistics(List<SourceSearchTask> searchTasks) {
+		Map<String, List<SourceSearchTask>> serverSearchTasks = new LinkedHashMap<String, List<SourceSearchTask>>();
+		for (SourceSearchTask searchTask : searchTasks) {
+			List<SourceSearchTask> tasks = serverSearchTasks.get(searchTask.getSourceServerName());
+			if (tasks == null) {
+				tasks = new ArrayList<SourceSearchTask>();
+				serverSearchTasks.put(searchTask.getSourceServerName(), tasks);
+			}
+			tasks.add(searchTask);
+		}
+
+		for (Entry<String, List<SourceSearchTask>> serverSearchTasksEntry : serverSearchTasks.entrySet()) {
+			long startTime = Long.MAX_VALUE;
+			long finishTime = Long.MIN_VALUE;
+			long countEntries = 0;
+			long bytesRead = 0;
+			for (SourceSearchTask searchTask : serverSearchTasksEntry.getValue()) {
+				startTime = Math.min(startTime, searchTask.getStartTime());
+				finishTime = Math.max(finishTime, searchTask.getFinishTime());
+				countEntries += searchTask.getCountEntries();
+				bytesRead += searchTask.getBytesRead();
+			}
+
+			cacheRefreshMetricsService.addPhase(
+					CacheRefreshMetricsService.PHASE_SOURCE_LOAD + "." + serverSearchTasksEntry.getKey(),
+					finishTime - startTime, countEntries, bytesRead);
+		}
+	}
+
+	private <T> T getSearchResult(SourceSearchTask searchTask, Future<T> searchResult) {
+		try {
+			return searchResult.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new EntryPersistenceException(
+					String.format("Interrupted while loading entries from source server '%s' using baseDN: %s",
+							searchTask.getSourceServerName(), searchTask.getBaseDn()),
+					ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+
+			throw new EntryPersistenceException(
+					String.format("Failed to load entries from source server '%s' using baseDN: %s",
+							searchTask.getSourceServerName(), searchTask.getBaseDn()),
+					ex.getCause());
+		}
+	}
+
+	private Pair<Map<CacheCompoundKey, GluuSimplePerson>, Map<CacheCompoundKey, Integer>> streamSourceSearchTasks(
+			CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection inumDbServerConnection,
+			List<SourceSearchTask> searchTasks) {
+		final SourcePersonDigestCollector digestCollector = new SourcePersonDigestCollector(
+				getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration),
+				inumDbServerConnection.getPersistenceEntryManager());
+
+		int pageSize = cacheRefreshTuningConfiguration.getSourceLoadPageSize();
+		if (pageSize <= 0) {
+			pageSize = cacheRefreshConfiguration.getLdapSearchSizeLimit();
+		}
+
+		List<Callable<Void>> streamTasks = new ArrayList<Callable<Void>>(searchTasks.size());
+		for (int i = 0; i < searchTasks.size(); i++) {
+			final SourceSearchTask searchTask = searchTasks.get(i);
+			final int taskIndex = i;
+			final int chunkSize = pageSize;
+			streamTasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					searchTask.startStatistics();
+					searchTask.search(new ProcessBatchOperation<GluuSimplePerson>() {
+						@Override
+						public void performAction(List<GluuSimplePerson> entries) {
+							for (GluuSimplePerson entry : entries) {
+								searchTask.prepareSourcePerson(entry);
+								digestCollector.add(taskIndex, entry);
+							}
+						}
+					}, chunkSize);
+					searchTask.finishStatistics();
+
+					return null;
+				}
+			});
+		}
+
+		int concurrency = Math.min(cacheRefreshTuningConfiguration.getSourceLoadConcurrency(), searchTasks.size());
+		if (concurrency <= 1) {
+			for (Callable<Void> streamTask : streamTasks) {
+				try {
+					streamTask.call();
+				} catch (RuntimeException ex) {
+					throw ex;
+				} catch (Exception ex) {
+					throw new EntryPersistenceException("Failed to load entries from source server", ex);
+				}
+			}
+		} else {
+			log.debug("Streaming entries from source servers using '{}' concurrent searches", concurrency);
+			ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+			try {
+				List<Future<Void>> searchResults = executorService.invokeAll(streamTasks);
+				for (int i = 0; i < searchResults.size(); i++) {
+					getSearchResult(searchTasks.get(i), searchResults.get(i));
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new EntryPersistenceException("Interrupted while loading entries from source servers", ex);
+			} finally {
+				executorService.shutdownNow();
+			}
+		}
+		addSourceLoadStatistics(searchTasks);
+		log.info("Found '{}' entries in source server", digestCollector.size());
+
+		return digestCollector.getDigests();
+	}
+
+	private long getBytesRead(List<SourceSearchTask> searchTasks) {
+		long result = 0;
+		for (SourceSearchTask searchTask : searchTasks) {
+			result += searchTask.getBytesRead();
+		}
+
+		return result;
+	}
+
+	private void addSourcePersons(List<GluuSimplePerson> currentSourcePersons, Set<String> addedDns,
+			List<GluuSimplePerson> sourcePersons) {
+		// Add to result and ignore root entry if needed
+		for (GluuSimplePerson currentSourcePerson : currentSourcePersons) {
+			// if (!StringHelper.equalsIgnoreCase(baseDn,
+			// currentSourcePerson.getDn())) {
+			String currentSourcePersonDn = currentSourcePerson.getDn().toLowerCase();
+			if (!addedDns.contains(currentSourcePersonDn)) {
+				sourcePersons.add(currentSourcePerson);
+				addedDns.add(currentSourcePersonDn);
+			}
+			// }
+		}
+	}
+
+	private List<GluuSimplePerson> loadTargetServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration,
+			PersistenceEntryManager targetPersistenceEntryManager) {
+		Filter filter = Filter.createEqualityFilter(OxConstants.OBJECT_CLASS, OxTrustConstants.objectClassPerson);
+
+		return targetPersistenceEntryManager.findEntries(personService.getDnForPerson(null), GluuSimplePerson.class,
+				filter, SearchScope.SUB, TARGET_PERSON_RETURN_ATTRIBUTES, null, 0, 0,
+				cacheRefreshConfiguration.getLdapSearchSizeLimit());
+	}
+
+	private GluuInumMap prepareGluuInumMap(String inumbBaseDn, String inum, String[] primaryKeyAttrName,
+			String[][] primaryKeyValues) {
+		String inumDn = cacheRefreshService.getDnForInum(inumbBaseDn, inum);
+
+		GluuInumMap inumMap = new GluuInumMap();
+		inumMap.setDn(inumDn);
+		inumMap.setInum(inum);
+		inumMap.setPrimaryKeyAttrName(primaryKeyAttrName[0]);
+		inumMap.setPrimaryKeyValues(primaryKeyValues[0]);
+		if (primaryKeyAttrName.length > 1) {
+			inumMap.setSecondaryKeyAttrName(primaryKeyAttrName[1]);
+			inumMap.setSecondaryKeyValues(primaryKeyValues[1]);
+		}
+		if (primaryKeyAttrName.length > 2) {
+			inumMap.setTertiaryKeyAttrName(primaryKeyAttrName[2]);
+			inumMap.setTertiaryKeyValues(primaryKeyValues[2]);
+		}
+		inumMap.setStatus(GluuStatus.ACTIVE);
+
+		return inumMap;
+	}
+
+	private Pair<HashMap<CacheCompoundKey, GluuInumMap>, List<CacheCompoundKey>> addNewInumServerEntries(
+			CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection inumDbServerConnection,
+			Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
+			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
+		PersistenceEntryManager inumDbPersistenceEntryManager = inumDbServerConnection.getPersistenceEntryManager();
+		String inumbaseDn = inumDbServerConnection.getBaseDns()[0];
+
+		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+		List<CacheCompoundKey> failedCacheCompoundKeys = new ArrayList<CacheCompoundKey>();
+
+		// Find source entries without inum entries
+		List<CacheCompoundKey> newCacheCompoundKeys = new ArrayList<CacheCompoundKey>();
+		for (Entry<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyEntry : sourcePersonCacheCompoundKeyMap
+				.entrySet()) {
+			CacheCompoundKey cacheCompoundKey = sourcePersonCacheCompoundKeyEntry.getKey();
+			GluuSimplePerson sourcePerson = sourcePersonCacheCompoundKeyEntry.getValue();
+
+			if (log.isTraceEnabled()) {
+				log.trace("Checking source entry with key: '{}', and DN: {}", cacheCompoundKey, sourcePerson.getDn());
+			}
+
+			if (primaryKeyAttrValueInumMap.containsKey(cacheCompoundKey)) {
+				log.trace("Inum entry for DN: '{}' exist", sourcePerson.getDn());
+			} else {
+				newCacheCompoundKeys.add(cacheCompoundKey);
+			}
+		}
+
+		if (newCacheCompoundKeys.isEmpty()) {
+			return new Pair<HashMap<CacheCompoundKey, GluuInumMap>, List<CacheCompoundKey>>(result,
+					failedCacheCompoundKeys);
+		}
+
+		int batchSize = cacheRefreshTuningConfiguration.getInumMapBatchSize();
+		int concurrency = Math.min(cacheRefreshTuningConfiguration.getInumMapWriteConcurrency(), batchSize);
+		log.info("Adding '{}' new inum entries using batches of '{}' entries and '{}' concurrent writes",
+				newCacheCompoundKeys.size(), batchSize, concurrency);
+
+		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
+		ExecutorService executorService = concurrency > 1 ? Executors.newFixedThreadPool(concurrency) : null;
+		try {
+			for (int batchStart = 0; batchStart < newCacheCompoundKeys.size(); batchStart += batchSize) {
+				List<CacheCompoundKey> batchCacheCompoundKeys = newCacheCompoundKeys.subList(batchStart,
+						Math.min(batchStart + batchSize, newCacheCompoundKeys.size()));
+
+				// Generate unique inums for whole batch
+				List<String> inums = cacheRefreshService.generateInumsForNewInumMaps(inumbaseDn,
+						inumDbPersistenceEntryManager, batchCacheCompoundKeys.size());
+
+				List<InumMapAddTask> addTasks = new ArrayList<InumMapAddTask>(batchCacheCompoundKeys.size());
+				for (int i = 0; i < batchCacheCompoundKeys.size(); i++) {
+					CacheCompoundKey cacheCompoundKey = batchCacheCompoundKeys.get(i);
+					GluuSimplePerson sourcePerson = sourcePersonCacheCompoundKeyMap.get(cacheCompoundKey);
+
+					String[][] keyAttributesValues = getKeyAttributesValues(keyAttributesWithoutValues, sourcePerson);
+					GluuInumMap inumMap = prepareGluuInumMap(inumbaseDn, inums.get(i), keyAttributesWithoutValues,
+							keyAttributesValues);
+					addTasks.add(new InumMapAddTask(inumDbPersistenceEntryManager, cacheCompoundKey,
+							sourcePerson.getDn(), inumMap));
+				}
+
+				executeInumMapAddTasks(executorService, addTasks);
+
+				for (InumMapAddTask addTask : addTasks) {
+					if (addTask.getException() == null) {
+						result.put(addTask.getCacheCompoundKey(), addTask.getInumMap());
+						log.debug("Added new inum entry for DN: {}", addTask.getSourceDn());
+					} else {
+						failedCacheCompoundKeys.add(addTask.getCacheCompoundKey());
+						log.error("Failed to add inum entry for DN: {}", addTask.getSourceDn(), addTask.getException());
+					}
+				}
+			}
+		} finally {
+			if (executorService != null) {
+				executorService.shutdownNow();
+			}
+		}
+
+		return new Pair<HashMap<CacheCompoundKey, GluuInumMap>, List<CacheCompoundKey>>(result,
+				failedCacheCompoundKeys);
+	}
+
+	private void executeInumMapAddTasks(ExecutorService executorService, List<InumMapAddTask> addTasks) {
+		if (executorService == null) {
+			for (InumMapAddTask addTask : addTasks) {
+				addTask.run();
+			}
+
+			return;
+		}
+
+		List<Future<?>> addResults = new ArrayList<Future<?>>(addTasks.size());
+		for (InumMapAddTask addTask : addTasks) {
+			addResults.add(executorService.submit(addTask));
+		}
+
+		// Wait for whole batch. Tasks report own failures
+		for (Future<?> addResult : addResults) {
+			try {
+				addResult.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new EntryPersistenceException("Interrupted while adding new inum entries", ex);
+			} catch (ExecutionException ex) {
+				throw new EntryPersistenceException("Failed to add new inum entries", ex.getCause());
+			}
+		}
+	}
+
+	private HashMap<CacheCompoundKey, GluuInumMap> getAllInumServerEntries(
+			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap,
+			HashMap<CacheCompoundKey, GluuInumMap> addedPrimaryKeyAttrValueInumMap) {
+		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+
+		result.putAll(primaryKeyAttrValueInumMap);
+		result.putAll(addedPrimaryKeyAttrValueInumMap);
+
+		return result;
+	}
+
+	private CacheRefreshSnapshot getSourcePersonsHashCodesSnapshot(LdapServerConnection inumDbServerConnection,
+			Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
+			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap,
+			Map<CacheCompoundKey, Integer> sourcePersonCacheCompoundKeyHashCodeMap, boolean offHeap) {
+		PersistenceEntryManager inumDbPersistenceEntryManager = inumDbServerConnection.getPersistenceEntryManager();
+
+		CacheRefreshSnapshotBuilder snapshotBuilder = new CacheRefreshSnapshotBuilder(sourcePersonCacheCompoundKeyMap.size());
+
+		for (Entry<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyEntry : sourcePersonCacheCompoundKeyMap
+				.entrySet()) {
+			CacheCompoundKey cacheCompoundKey = sourcePersonCacheCompoundKeyEntry.getKey();
+			GluuSimplePerson sourcePerson = sourcePersonCacheCompoundKeyEntry.getValue();
+
+			GluuInumMap currentInumMap = primaryKeyAttrValueInumMap.get(cacheCompoundKey);
+
+			if (sourcePersonCacheCompoundKeyHashCodeMap == null) {
+				snapshotBuilder.add(currentInumMap.getInum(), inumDbPersistenceEntryManager.getHashCode(sourcePerson));
+			} else {
+				snapshotBuilder.add(currentInumMap.getInum(), sourcePersonCacheCompoundKeyHashCodeMap.get(cacheCompoundKey));
+			}
+		}
+
+		if (offHeap) {
+			return snapshotBuilder.buildOffHeap();
+		}
+
+		return snapshotBuilder.build();
+	}
+
+	private List<GluuSimplePerson> processTargetPersons(List<GluuSimplePerson> targetPersons,
+			CacheRefreshSnapshot currSnapshot) {
+		List<GluuSimplePerson> result = new ArrayList<GluuSimplePerson>();
+
+		for (GluuSimplePerson targetPerson : targetPersons) {
+			String personInum = targetPerson.getAttribute(OxTrustConstants.inum);
+			if (!currSnapshot.containsKey(personInum)) {
+				log.debug("Person with such DN: '{}' isn't present on source server", targetPerson.getDn());
+				result.add(targetPerson);
+			}
+		}
+
+		return result;
+	}
+
+	private HashMap<CacheCompoundKey, GluuInumMap> getPrimaryKeyAttrValueInumMap(List<GluuInumMap> inumMaps) {
+		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+
+		for (GluuInumMap inumMap : inumMaps) {
+			result.put(new CacheCompoundKey(inumMap.getPrimaryKeyValues(), inumMap.getSecondaryKeyValues(),
+					inumMap.getTertiaryKeyValues()), inumMap);
+		}
+
+		return result;
+	}
+
+	private HashMap<String, GluuInumMap> getInumInumMap(Collection<GluuInumMap> inumMaps) {
+		HashMap<String, GluuInumMap> result = new HashMap<String, GluuInumMap>();
+
+		for (GluuInumMap inumMap : inumMaps) {
+			result.put(inumMap.getInum(), inumMap);
+		}
+
+		return result;
+	}
+
+	private Map<CacheCompoundKey, GluuSimplePerson> getSourcePersonCompoundKeyMap(
 			CacheRefreshConfiguration cacheRefreshConfiguration, List<GluuSimplePerson> sourcePersons) {
 		Map<CacheCompoundKey, GluuSimplePerson> result = new HashMap<CacheCompoundKey, GluuSimplePerson>();
 		Set<CacheCompoundKey> duplicateKeys = new HashSet<CacheCompoundKey>();
@@ -1212,10 +1871,158 @@ public class CacheRefreshTimer {
 		configurationService.updateConfiguration(configuration);
 	}
 
+	private boolean isSearchTruncated(Map<String, SourceSearchPartitions> searchPartitions) {
+		if (searchPartitions == null) {
+			return false;
+		}
+
+		for (SourceSearchPartitions partitions : searchPartitions.values()) {
+			if (partitions.isTruncated()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	private String getInumCachePath(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		return FilenameUtils.concat(cacheRefreshConfiguration.getSnapshotFolder(), "inum_cache.bin");
+	}
+
+	private String getLegacyInumCachePath(CacheRefreshConfiguration cacheRefreshConfiguration) {
 		return FilenameUtils.concat(cacheRefreshConfiguration.getSnapshotFolder(), "inum_cache.dat");
 	}
 
+	private class TargetUpdateTask implements Callable<Boolean> {
+		private final CacheRefreshConfiguration cacheRefreshConfiguration;
+		private final LdapServerConnection[] reloadSourceServerConnections;
+		private final GluuSimplePerson sourcePerson;
+		private final String targetInum;
+		private final String[] customObjectClasses;
+		private final Map<String, String> targetServerAttributesMapping;
+
+		public TargetUpdateTask(CacheRefreshConfiguration cacheRefreshConfiguration,
+				LdapServerConnection[] reloadSourceServerConnections, GluuSimplePerson sourcePerson, String targetInum,
+				String[] customObjectClasses, Map<String, String> targetServerAttributesMapping) {
+			this.cacheRefreshConfiguration = cacheRefreshConfiguration;
+			this.reloadSourceServerConnections = reloadSourceServerConnections;
+			this.sourcePerson = sourcePerson;
+			this.targetInum = targetInum;
+			this.customObjectClasses = customObjectClasses;
+			this.targetServerAttributesMapping = targetServerAttributesMapping;
+		}
+
+		public String getTargetInum() {
+			return targetInum;
+		}
+
+		@Override
+		public Boolean call() {
+			GluuSimplePerson person = this.sourcePerson;
+			if (reloadSourceServerConnections != null) {
+				// Only keys were kept in memory after streaming source entries
+				person = reloadSourcePerson(cacheRefreshConfiguration, reloadSourceServerConnections, person);
+				if (person == null) {
+					return false;
+				}
+			}
+
+			// Only DB operations are retried. Scripts are executed once because they
+			// might be not idempotent
+			try {
+				GluuCustomPerson existingPerson = executeWithRetries(new Callable<GluuCustomPerson>() {
+					@Override
+					public GluuCustomPerson call() {
+						return findTargetEntry(targetInum);
+					}
+				});
+
+				final GluuCustomPerson targetPerson = prepareTargetEntry(person, existingPerson, targetInum,
+						customObjectClasses, targetServerAttributesMapping);
+				if (targetPerson == null) {
+					return false;
+				}
+
+				final boolean updatePerson = existingPerson != null;
+				executeWithRetries(new Callable<Void>() {
+					@Override
+					public Void call() {
+						saveTargetEntry(targetPerson, updatePerson);
+						return null;
+					}
+				});
+
+				return true;
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (Exception ex) {
+				log.error("Failed to update person '{}'", targetInum, ex);
+				return false;
+			}
+		}
+
+		private <T> T executeWithRetries(Callable<T> operation) throws Exception {
+			int retries = cacheRefreshTuningConfiguration.getTargetUpdateRetries();
+			long retryDelay = cacheRefreshTuningConfiguration.getTargetUpdateRetryDelay();
+			for (int attempt = 0;; attempt++) {
+				try {
+					return operation.call();
+				} catch (Exception ex) {
+					if (attempt >= retries) {
+						throw ex;
+					}
+					log.warn("Failed to update person '{}'. Retrying in {} ms, attempt '{}'", targetInum, retryDelay,
+							attempt + 1, ex);
+				}
+
+				Thread.sleep(retryDelay);
+				retryDelay = Math.min(2 * retryDelay, MAX_TARGET_UPDATE_RETRY_DELAY);
+			}
+		}
+	}
+
+	private class InumMapAddTask implements Runnable {
+		private final PersistenceEntryManager inumDbPersistenceEntryManager;
+		private final CacheCompoundKey cacheCompoundKey;
+		private final String sourceDn;
+		private final GluuInumMap inumMap;
+		private Exception exception;
+
+		public InumMapAddTask(PersistenceEntryManager inumDbPersistenceEntryManager,
+				CacheCompoundKey cacheCompoundKey, String sourceDn, GluuInumMap inumMap) {
+			this.inumDbPersistenceEntryManager = inumDbPersistenceEntryManager;
+			this.cacheCompoundKey = cacheCompoundKey;
+			this.sourceDn = sourceDn;
+			this.inumMap = inumMap;
+		}
+
+		public CacheCompoundKey getCacheCompoundKey() {
+			return cacheCompoundKey;
+		}
+
+		public String getSourceDn() {
+			return sourceDn;
+		}
+
+		public GluuInumMap getInumMap() {
+			return inumMap;
+		}
+
+		public Exception getException() {
+			return exception;
+		}
+
+		@Override
+		public void run() {
+			try {
+				cacheRefreshService.addInumMap(inumDbPersistenceEntryManager, inumMap);
+			} catch (Exception ex) {
+				this.exception = ex;
+			}
+		}
+	}
+
 	private class LdapServerConnection {
 		private String sourceServerName;
 		private PersistenceEntryManager ldapEntryManager;
@@ -1241,6 +2048,504 @@ public class CacheRefreshTimer {
 		}
 	}
 
+	private class SourceSearchTask implements Callable<List<GluuSimplePerson>> {
+		private CacheRefreshConfiguration cacheRefreshConfiguration;
+		private LdapServerConnection sourceServerConnection;
+		private String baseDn;
+		private Filter filter;
+		private String[] returnAttributes;
+		private SourceChangeTracker sourceChangeTracker;
+		private SourceSearchPartition searchPartition;
+		private long countEntries;
+		private long bytesRead;
+		private long startTime;
+		private long finishTime;
+
+		protected SourceSearchTask(CacheRefreshConfiguration cacheRefreshConfiguration,
+				LdapServerConnection sourceServerConnection, String baseDn, Filter filter, String[] returnAttributes,
+				SourceChangeTracker sourceChangeTracker) {
+			this(cacheRefreshConfiguration, sourceServerConnection, baseDn, filter, returnAttributes,
+					sourceChangeTracker, null);
+		}
+
+		protected SourceSearchTask(CacheRefreshConfiguration cacheRefreshConfiguration,
+				LdapServerConnection sourceServerConnection, String baseDn, Filter filter, String[] returnAttributes,
+				SourceChangeTracker sourceChangeTracker, SourceSearchPartition searchPartition) {
+			this.cacheRefreshConfiguration = cacheRefreshConfiguration;
+			this.sourceServerConnection = sourceServerConnection;
+			this.baseDn = baseDn;
+			this.filter = filter;
+			this.returnAttributes = returnAttributes;
+			this.sourceChangeTracker = sourceChangeTracker;
+			this.searchPartition = searchPartition;
+		}
+
+		public void prepareSourcePerson(GluuSimplePerson sourcePerson) {
+			sourcePerson.setSourceServerName(sourceServerConnection.getSourceServerName());
+
+			this.countEntries++;
+			this.bytesRead += getEntrySize(sourcePerson);
+
+			if (sourceChangeTracker != null) {
+				// Change attribute shouldn't affect entry hash code
+				String changeAttribute = sourceChangeTracker.getChangeAttribute();
+				sourceChangeTracker.update(sourcePerson.getAttribute(changeAttribute));
+
+				Iterator<GluuCustomAttribute> it = sourcePerson.getCustomAttributes().iterator();
+				while (it.hasNext()) {
+					if (StringHelper.equalsIgnoreCase(changeAttribute, it.next().getName())) {
+						it.remove();
+					}
+				}
+			}
+		}
+
+		public final String getSourceServerName() {
+			return sourceServerConnection.getSourceServerName();
+		}
+
+		public final String getBaseDn() {
+			return baseDn;
+		}
+
+		/**
+		 * Approximate size of loaded attribute values
+		 */
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		public long getCountEntries() {
+			return countEntries;
+		}
+
+		public void startStatistics() {
+			this.startTime = System.nanoTime();
+		}
+
+		public void finishStatistics() {
+			this.finishTime = System.nanoTime();
+		}
+
+		public long getStartTime() {
+			return startTime;
+		}
+
+		public long getFinishTime() {
+			return finishTime;
+		}
+
+		private long getEntrySize(GluuSimplePerson sourcePerson) {
+			long size = sourcePerson.getDn() == null ? 0 : sourcePerson.getDn().length();
+			for (GluuCustomAttribute customAttribute : sourcePerson.getCustomAttributes()) {
+				size += customAttribute.getName().length();
+				String[] values = customAttribute.getValues();
+				if (values != null) {
+					for (String value : values) {
+						if (value != null) {
+							size += value.length();
+						}
+					}
+				}
+			}
+
+			return size;
+		}
+
+		public void search(BatchOperation<GluuSimplePerson> batchOperation, int chunkSize) {
+			if (searchPartition == null) {
+				search(filter, batchOperation, chunkSize);
+				return;
+			}
+
+			searchPartition(searchPartition.getKeyAttributeStart(), filter, batchOperation, chunkSize);
+		}
+
+		private void searchPartition(String keyAttributeStart, Filter partitionFilter,
+				BatchOperation<GluuSimplePerson> batchOperation, int chunkSize) {
+			long countEntriesBefore = this.countEntries;
+			long bytesReadBefore = this.bytesRead;
+			search(partitionFilter, batchOperation, chunkSize);
+
+			int count = (int) (this.countEntries - countEntriesBefore);
+			SourceSearchPartitions partitions = searchPartition.getPartitions();
+			if (!partitions.isSplitNeeded(keyAttributeStart, count)) {
+				addPartition(keyAttributeStart, count);
+				return;
+			}
+
+			// Entries were passed to batch operation already. Sub-partitions return
+			// them again, duplicates are filtered out by DN. Count them once in
+			// sub-partitions only
+			this.countEntries = countEntriesBefore;
+			this.bytesRead = bytesReadBefore;
+
+			log.debug("Search with prefix '{}' reached size limit. Splitting it", keyAttributeStart);
+			for (String subKeyAttributeStart : SourceSearchPartitions.split(keyAttributeStart)) {
+				searchPartition(subKeyAttributeStart, searchPartition.createFilter(subKeyAttributeStart),
+						batchOperation, chunkSize);
+			}
+		}
+
+		private List<GluuSimplePerson> loadPartition(String keyAttributeStart, Filter partitionFilter) {
+			List<GluuSimplePerson> currentSourcePersons = search(partitionFilter, null,
+					cacheRefreshConfiguration.getLdapSearchSizeLimit());
+
+			SourceSearchPartitions partitions = searchPartition.getPartitions();
+			if (!partitions.isSplitNeeded(keyAttributeStart, currentSourcePersons.size())) {
+				addPartition(keyAttributeStart, currentSourcePersons.size());
+				return currentSourcePersons;
+			}
+
+			log.debug("Search with prefix '{}' reached size limit. Splitting it", keyAttributeStart);
+			List<GluuSimplePerson> result = new ArrayList<GluuSimplePerson>();
+			for (String subKeyAttributeStart : SourceSearchPartitions.split(keyAttributeStart)) {
+				result.addAll(loadPartition(subKeyAttributeStart, searchPartition.createFilter(subKeyAttributeStart)));
+			}
+
+			return result;
+		}
+
+		private void addPartition(String keyAttributeStart, int count) {
+			SourceSearchPartitions partitions = searchPartition.getPartitions();
+			partitions.add(keyAttributeStart, count);
+			if (partitions.isSizeLimitReached(count)) {
+				log.warn("Search with prefix '{}' reached size limit and can't be split further. "
+						+ "Some entries weren't loaded", keyAttributeStart);
+			}
+		}
+
+		private List<GluuSimplePerson> search(Filter searchFilter, BatchOperation<GluuSimplePerson> batchOperation,
+				int chunkSize) {
+			return sourceServerConnection.getPersistenceEntryManager().findEntries(baseDn, GluuSimplePerson.class,
+					searchFilter, SearchScope.SUB, returnAttributes, batchOperation, 0, 0, chunkSize);
+		}
+
+		@Override
+		public List<GluuSimplePerson> call() {
+			startStatistics();
+			List<GluuSimplePerson> currentSourcePersons;
+			if (searchPartition == null) {
+				currentSourcePersons = search(filter, null, cacheRefreshConfiguration.getLdapSearchSizeLimit());
+			} else {
+				currentSourcePersons = loadPartition(searchPartition.getKeyAttributeStart(), filter);
+			}
+
+			for (GluuSimplePerson currentSourcePerson : currentSourcePersons) {
+				prepareSourcePerson(currentSourcePerson);
+			}
+			finishStatistics();
+
+			return currentSourcePersons;
+		}
+	}
+
+	/**
+	 * Key attribute prefix of source search and filter settings which allow to
+	 * split it into sub-partitions
+	 */
+	private class SourceSearchPartition {
+		private final String[] keyAttributes;
+		private final String[] keyObjectClasses;
+		private final Filter customFilter;
+		private final String keyAttributeStart;
+		private final SourceSearchPartitions partitions;
+
+		protected SourceSearchPartition(String[] keyAttributes, String[] keyObjectClasses, Filter customFilter,
+				String keyAttributeStart, SourceSearchPartitions partitions) {
+			this.keyAttributes = keyAttributes;
+			this.keyObjectClasses = keyObjectClasses;
+			this.customFilter = customFilter;
+			this.keyAttributeStart = keyAttributeStart;
+			this.partitions = partitions;
+		}
+
+		public String getKeyAttributeStart() {
+			return keyAttributeStart;
+		}
+
+		public SourceSearchPartitions getPartitions() {
+			return partitions;
+		}
+
+		public Filter createFilter(String subKeyAttributeStart) {
+			try {
+				return cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, subKeyAttributeStart,
+						customFilter);
+			} catch (SearchException ex) {
+				throw new EntryPersistenceException(
+						String.format("Failed to prepare filter for key attribute prefix '%s'", subKeyAttributeStart),
+						ex);
+			}
+		}
+	}
+
+	/**
+	 * Key attribute prefixes which were used to load entries from source server
+	 * base DN. Prefixes form complete partition of key space: every prefix is
+	 * split into all LETTERS_FOR_SEARCH sub-prefixes
+	 */
+	private static class SourceSearchPartitions {
+		private final int sizeLimit;
+		private final TreeMap<String, Integer> partitionSizes;
+		private boolean truncated;
+
+		protected SourceSearchPartitions(int sizeLimit) {
+			this.sizeLimit = sizeLimit;
+			this.partitionSizes = new TreeMap<String, Integer>();
+		}
+
+		public boolean isSplitNeeded(String keyAttributeStart, int count) {
+			return isSizeLimitReached(count) && (keyAttributeStart.length() < MAX_SEARCH_PREFIX_LENGTH);
+		}
+
+		public boolean isSizeLimitReached(int count) {
+			return (sizeLimit > 0) && (count >= sizeLimit);
+		}
+
+		public synchronized void add(String keyAttributeStart, int count) {
+			partitionSizes.put(keyAttributeStart, count);
+			if (isSizeLimitReached(count)) {
+				this.truncated = true;
+			}
+		}
+
+		/**
+		 * Check if some partition of maximum prefix length still reached size limit.
+		 * Source entries are incomplete in this case
+		 */
+		public synchronized boolean isTruncated() {
+			return truncated;
+		}
+
+		/**
+		 * Serialize partitions for next run. Complete groups of small sibling
+		 * partitions are merged back into parent partition
+		 */
+		public synchronized String toState() {
+			Map<String, Integer> parentSizes = new HashMap<String, Integer>();
+			Map<String, Integer> parentCounts = new HashMap<String, Integer>();
+			for (Entry<String, Integer> partitionSize : partitionSizes.entrySet()) {
+				String keyAttributeStart = partitionSize.getKey();
+				if (keyAttributeStart.length() <= 1) {
+					continue;
+				}
+
+				String parent = keyAttributeStart.substring(0, keyAttributeStart.length() - 1);
+				Integer parentSize = parentSizes.get(parent);
+				parentSizes.put(parent, (parentSize == null ? 0 : parentSize) + partitionSize.getValue());
+				Integer parentCount = parentCounts.get(parent);
+				parentCounts.put(parent, (parentCount == null ? 0 : parentCount) + 1);
+			}
+
+			TreeSet<String> result = new TreeSet<String>();
+			for (String keyAttributeStart : partitionSizes.keySet()) {
+				String parent = keyAttributeStart.length() > 1
+						? keyAttributeStart.substring(0, keyAttributeStart.length() - 1)
+						: null;
+				if ((parent != null) && (parentCounts.get(parent) == LETTERS_FOR_SEARCH.length())
+						&& (parentSizes.get(parent) < sizeLimit / 2)) {
+					result.add(parent);
+				} else {
+					result.add(keyAttributeStart);
+				}
+			}
+
+			String[] keyAttributeStarts = result.toArray(new String[result.size()]);
+			if (!isComplete(keyAttributeStarts)) {
+				// Some searches failed. Next run should start from scratch
+				return "";
+			}
+
+			return String.join(",", keyAttributeStarts);
+		}
+
+		public static String[] split(String keyAttributeStart) {
+			char[] characters = LETTERS_FOR_SEARCH.toCharArray();
+
+			String[] result = new String[characters.length];
+			for (int i = 0; i < characters.length; i++) {
+				result[i] = keyAttributeStart + characters[i];
+			}
+
+			return result;
+		}
+
+		/**
+		 * Parse partitions of previous run. Returns null if they not cover whole key
+		 * space
+		 */
+		public static String[] parse(String state) {
+			if (StringHelper.isEmpty(state)) {
+				return null;
+			}
+
+			String[] result = StringHelper.split(state, ",", true, false);
+			for (String keyAttributeStart : result) {
+				if (StringHelper.isEmpty(keyAttributeStart) || (keyAttributeStart.length() > MAX_SEARCH_PREFIX_LENGTH)) {
+					return null;
+				}
+				for (char ch : keyAttributeStart.toCharArray()) {
+					if (LETTERS_FOR_SEARCH.indexOf(ch) == -1) {
+						return null;
+					}
+				}
+			}
+
+			if (!isComplete(result)) {
+				return null;
+			}
+
+			return result;
+		}
+
+		/**
+		 * Prefixes are complete partition if none of them is prefix of another one
+		 * and they cover whole key space
+		 */
+		private static boolean isComplete(String[] keyAttributeStarts) {
+			String[] sorted = keyAttributeStarts.clone();
+			Arrays.sort(sorted);
+			for (int i = 1; i < sorted.length; i++) {
+				if (sorted[i].startsWith(sorted[i - 1])) {
+					return false;
+				}
+			}
+
+			BigInteger lettersCount = BigInteger.valueOf(LETTERS_FOR_SEARCH.length());
+			BigInteger total = BigInteger.ZERO;
+			for (String keyAttributeStart : sorted) {
+				total = total.add(lettersCount.pow(MAX_SEARCH_PREFIX_LENGTH - keyAttributeStart.length()));
+			}
+
+			return total.equals(lettersCount.pow(MAX_SEARCH_PREFIX_LENGTH));
+		}
+	}
+
+	/**
+	 * Tracks highest value of change attribute (modifyTimestamp, uSNChanged) of
+	 * entries loaded from source server
+	 */
+	private static class SourceChangeTracker {
+		private final String changeAttribute;
+		private String highWaterMark;
+
+		protected SourceChangeTracker(String changeAttribute) {
+			this.changeAttribute = changeAttribute;
+		}
+
+		public String getChangeAttribute() {
+			return changeAttribute;
+		}
+
+		public synchronized String getHighWaterMark() {
+			return highWaterMark;
+		}
+
+		public synchronized void update(String changeValue) {
+			if (StringHelper.isEmpty(changeValue)) {
+				return;
+			}
+
+			if ((highWaterMark == null) || (compareChangeValues(changeValue, highWaterMark) > 0)) {
+				highWaterMark = changeValue;
+			}
+		}
+
+		private int compareChangeValues(String value1, String value2) {
+			// uSNChanged and similar counters are numbers
+			if (NUMBER_PATTERN.matcher(value1).matches() && NUMBER_PATTERN.matcher(value2).matches()) {
+				return new BigInteger(value1).compareTo(new BigInteger(value2));
+			}
+
+			// Generalized time values are ordered lexicographically
+			return value1.compareTo(value2);
+		}
+	}
+
+	/**
+	 * Collects key attributes and hash codes of source entries which were loaded
+	 * by search tasks. Entries with same DN are resolved in search tasks order
+	 */
+	private class SourcePersonDigestCollector {
+		private String[] keyAttributesWithoutValues;
+		private PersistenceEntryManager hashCodePersistenceEntryManager;
+		private Map<String, SourcePersonDigest> dnDigests;
+
+		protected SourcePersonDigestCollector(String[] keyAttributesWithoutValues,
+				PersistenceEntryManager hashCodePersistenceEntryManager) {
+			this.keyAttributesWithoutValues = keyAttributesWithoutValues;
+			this.hashCodePersistenceEntryManager = hashCodePersistenceEntryManager;
+			this.dnDigests = new HashMap<String, SourcePersonDigest>();
+		}
+
+		public void add(int taskIndex, GluuSimplePerson sourcePerson) {
+			String[][] keyAttributesValues = getKeyAttributesValues(keyAttributesWithoutValues, sourcePerson);
+
+			GluuSimplePerson sourcePersonKey = new GluuSimplePerson();
+			sourcePersonKey.setDn(sourcePerson.getDn());
+			sourcePersonKey.setSourceServerName(sourcePerson.getSourceServerName());
+			for (int i = 0; i < keyAttributesWithoutValues.length; i++) {
+				sourcePersonKey.setAttribute(keyAttributesWithoutValues[i], keyAttributesValues[i]);
+			}
+
+			SourcePersonDigest digest = new SourcePersonDigest(taskIndex, new CacheCompoundKey(keyAttributesValues),
+					sourcePersonKey, hashCodePersistenceEntryManager.getHashCode(sourcePerson));
+
+			String sourcePersonDn = sourcePerson.getDn().toLowerCase();
+			synchronized (this) {
+				SourcePersonDigest addedDigest = dnDigests.get(sourcePersonDn);
+				if ((addedDigest == null) || (addedDigest.taskIndex > taskIndex)) {
+					dnDigests.put(sourcePersonDn, digest);
+				}
+			}
+		}
+
+		public synchronized int size() {
+			return dnDigests.size();
+		}
+
+		public synchronized Pair<Map<CacheCompoundKey, GluuSimplePerson>, Map<CacheCompoundKey, Integer>> getDigests() {
+			Map<CacheCompoundKey, GluuSimplePerson> persons = new HashMap<CacheCompoundKey, GluuSimplePerson>();
+			Map<CacheCompoundKey, Integer> hashCodes = new HashMap<CacheCompoundKey, Integer>();
+			Set<CacheCompoundKey> duplicateKeys = new HashSet<CacheCompoundKey>();
+
+			for (SourcePersonDigest digest : dnDigests.values()) {
+				if (persons.containsKey(digest.cacheCompoundKey)) {
+					duplicateKeys.add(digest.cacheCompoundKey);
+				}
+
+				persons.put(digest.cacheCompoundKey, digest.sourcePersonKey);
+				hashCodes.put(digest.cacheCompoundKey, digest.entryHashCode);
+			}
+			dnDigests.clear();
+
+			for (CacheCompoundKey duplicateKey : duplicateKeys) {
+				log.error("Non-deterministic primary key. Skipping user with key: {}", duplicateKey);
+				persons.remove(duplicateKey);
+				hashCodes.remove(duplicateKey);
+			}
+
+			return new Pair<Map<CacheCompoundKey, GluuSimplePerson>, Map<CacheCompoundKey, Integer>>(persons,
+					hashCodes);
+		}
+	}
+
+	private static class SourcePersonDigest {
+		private final int taskIndex;
+		private final CacheCompoundKey cacheCompoundKey;
+		private final GluuSimplePerson sourcePersonKey;
+		private final int entryHashCode;
+
+		protected SourcePersonDigest(int taskIndex, CacheCompoundKey cacheCompoundKey,
+				GluuSimplePerson sourcePersonKey, int entryHashCode) {
+			this.taskIndex = taskIndex;
+			this.cacheCompoundKey = cacheCompoundKey;
+			this.sourcePersonKey = sourcePersonKey;
+			this.entryHashCode = entryHashCode;
+		}
+	}
+
 	private CacheRefreshUpdateMethod getUpdateMethod(CacheRefreshConfiguration cacheRefreshConfiguration) {
 		String updateMethod = cacheRefreshConfiguration.getUpdateMethod();
 		if (StringHelper.isEmpty(updateMethod)) {
@@ -0,0 +1,353 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.io.FileUtils;
+import org.gluu.model.GluuStatus;
+import org.gluu.oxtrust.ldap.cache.model.CacheCompoundKey;
+import org.gluu.oxtrust.ldap.cache.model.GluuInumMap;
+import org.gluu.util.Pair;
+import org.slf4j.Logger;
+
+/**
+ * Disk cache of inum DB entries. Cache file is append-only log of added and
+ * removed inum maps. Every record has own checksum, so partially written or
+ * corrupted file is detected during loading. Partially written last record is
+ * cut off before next append
+ *
+ * File format: header (magic, version) and records (payload length, CRC32 of
+ * payload, payload). Strings in payload are stored as length and UTF-8 bytes
+ */
+@ApplicationScoped
+@Named("inumMapCacheFileService")
+public class InumMapCacheFileService {
+
+	private static final int MAGIC = 0x47494D43;
+	private static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private static final byte RECORD_ADD = 1;
+	private static final byte RECORD_REMOVE = 2;
+
+	private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+	// Rewrite file when it contains more removed and replaced records than actual
+	private static final int COMPACTION_MIN_RECORDS = 1000;
+
+	@Inject
+	private Logger log;
+
+	/**
+	 * Load inum maps from disk cache
+	 *
+	 * @return Map of inum maps by compound key and count of records in file, or
+	 *         null if file not exists or it's corrupted
+	 */
+	public Pair<HashMap<CacheCompoundKey, GluuInumMap>, Integer> loadInumMaps(String inumCachePath) {
+		File file = new File(inumCachePath);
+		if (!file.exists()) {
+			return null;
+		}
+
+		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+		HashMap<String, CacheCompoundKey> inumKeyMap = new HashMap<String, CacheCompoundKey>();
+		int countRecords = 0;
+		long validLength = HEADER_SIZE;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if ((input.readInt() != MAGIC) || (input.readInt() != VERSION)) {
+				throw new IOException("Unsupported file format");
+			}
+
+			CRC32 checksum = new CRC32();
+			byte[] buffer = new byte[1024];
+			while (true) {
+				int length;
+				long expectedChecksum;
+				try {
+					length = input.readInt();
+					expectedChecksum = input.readInt() & 0xFFFFFFFFL;
+					if ((length <= 0) || (length > MAX_RECORD_SIZE)) {
+						throw new IOException(String.format("Invalid record size '%d'", length));
+					}
+
+					if (buffer.length < length) {
+						buffer = new byte[Math.max(length, 2 * buffer.length)];
+					}
+					input.readFully(buffer, 0, length);
+				} catch (EOFException ex) {
+					// End of file or last record was written partially
+					break;
+				}
+
+				checksum.reset();
+				checksum.update(buffer, 0, length);
+				if (checksum.getValue() != expectedChecksum) {
+					throw new IOException(String.format("Invalid checksum of record '%d'", countRecords));
+				}
+
+				applyRecord(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)), result,
+						inumKeyMap);
+				countRecords++;
+				validLength += RECORD_HEADER_SIZE + length;
+			}
+		} catch (IOException ex) {
+			log.error("Failed to load inum objects disk cache '{}'. It will be rebuilt", inumCachePath, ex);
+			cleanup(inumCachePath);
+			return null;
+		}
+
+		if (file.length() > validLength) {
+			log.warn("Inum objects disk cache '{}' has partially written record at offset {}. It will be removed",
+					inumCachePath, validLength);
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+				randomAccessFile.setLength(validLength);
+			} catch (IOException ex) {
+				log.error("Failed to truncate inum objects disk cache '{}'. It will be rebuilt", inumCachePath, ex);
+				cleanup(inumCachePath);
+				return null;
+			}
+		}
+
+		return new Pair<HashMap<CacheCompoundKey, GluuInumMap>, Integer>(result, countRecords);
+	}
+
+	/**
+	 * Replace disk cache with specified inum maps
+	 */
+	public boolean writeInumMaps(String inumCachePath, Collection<GluuInumMap> inumMaps) {
+		File file = new File(inumCachePath);
+		File tmpFile = new File(inumCachePath + ".tmp");
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+
+				RecordWriter recordWriter = new RecordWriter(output);
+				for (GluuInumMap inumMap : inumMaps) {
+					recordWriter.writeAddRecord(inumMap);
+				}
+			}
+
+			if (file.exists() && !file.delete()) {
+				throw new IOException("Failed to remove previous file");
+			}
+			if (!tmpFile.renameTo(file)) {
+				throw new IOException("Failed to rename temporary file");
+			}
+		} catch (IOException ex) {
+			log.error("Failed to write inum objects disk cache '{}'", inumCachePath, ex);
+			FileUtils.deleteQuietly(tmpFile);
+			cleanup(inumCachePath);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Append changes to existing disk cache
+	 */
+	public boolean appendInumMaps(String inumCachePath, Collection<GluuInumMap> addedInumMaps,
+			Collection<String> removedInums) {
+		File file = new File(inumCachePath);
+		if (!file.exists()) {
+			log.error("Inum objects disk cache '{}' not exists", inumCachePath);
+			return false;
+		}
+
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file, true)))) {
+			RecordWriter recordWriter = new RecordWriter(output);
+			for (String removedInum : removedInums) {
+				recordWriter.writeRemoveRecord(removedInum);
+			}
+			for (GluuInumMap inumMap : addedInumMaps) {
+				recordWriter.writeAddRecord(inumMap);
+			}
+		} catch (IOException ex) {
+			log.error("Failed to append changes to inum objects disk cache '{}'", inumCachePath, ex);
+			cleanup(inumCachePath);
+			return false;
+		}
+
+		return true;
+	}
+
+	public boolean isCompactionNeeded(int countRecords, int countInumMaps) {
+		return (countRecords > COMPACTION_MIN_RECORDS) && (countRecords > 2 * countInumMaps);
+	}
+
+	public void cleanup(String inumCachePath) {
+		File file = new File(inumCachePath);
+		if (file.exists() && !FileUtils.deleteQuietly(file)) {
+			log.error("Failed to remove inum objects disk cache '{}'", inumCachePath);
+		}
+	}
+
+	private void applyRecord(DataInputStream input, HashMap<CacheCompoundKey, GluuInumMap> inumMaps,
+			HashMap<String, CacheCompoundKey> inumKeyMap) throws IOException {
+		byte type = input.readByte();
+		if (type == RECORD_REMOVE) {
+			String inum = readString(input);
+			CacheCompoundKey cacheCompoundKey = inumKeyMap.remove(inum);
+			if (cacheCompoundKey != null) {
+				inumMaps.remove(cacheCompoundKey);
+			}
+		} else if (type == RECORD_ADD) {
+			GluuInumMap inumMap = new GluuInumMap();
+			inumMap.setInum(readString(input));
+			inumMap.setDn(readString(input));
+			inumMap.setPrimaryKeyAttrName(readString(input));
+			inumMap.setPrimaryKeyValues(readStringArray(input));
+			inumMap.setSecondaryKeyAttrName(readString(input));
+			inumMap.setSecondaryKeyValues(readStringArray(input));
+			inumMap.setTertiaryKeyAttrName(readString(input));
+			inumMap.setTertiaryKeyValues(readStringArray(input));
+			String status = readString(input);
+			if (status != null) {
+				inumMap.setStatus(GluuStatus.getByValue(status));
+			}
+
+			CacheCompoundKey cacheCompoundKey = new CacheCompoundKey(inumMap.getPrimaryKeyValues(),
+					inumMap.getSecondaryKeyValues(), inumMap.getTertiaryKeyValues());
+			CacheCompoundKey prevCacheCompoundKey = inumKeyMap.put(inumMap.getInum(), cacheCompoundKey);
+			if (prevCacheCompoundKey != null) {
+				inumMaps.remove(prevCacheCompoundKey);
+			}
+			inumMaps.put(cacheCompoundKey, inumMap);
+		} else {
+			throw new IOException(String.format("Unknown record type '%d'", type));
+		}
+	}
+
+	private String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > input.available()) {
+			throw new IOException(String.format("Invalid string size '%d'", length));
+		}
+
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private String[] readStringArray(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			return null;
+		}
+
+		String[] result = new String[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = readString(input);
+		}
+
+		return result;
+	}
+
+	private static class RecordWriter {
+
+		private final DataOutputStream output;
+		private final ByteArrayOutputStream recordBuffer;
+		private final DataOutputStream record;
+		private final CRC32 checksum;
+
+		public RecordWriter(DataOutputStream output) {
+			this.output = output;
+			this.recordBuffer = new ByteArrayOutputStream(256);
+			this.record = new DataOutputStream(recordBuffer);
+			this.checksum = new CRC32();
+		}
+
+		public void writeAddRecord(GluuInumMap inumMap) throws IOException {
+			recordBuffer.reset();
+			record.writeByte(RECORD_ADD);
+			writeString(inumMap.getInum());
+			writeString(inumMap.getDn());
+			writeString(inumMap.getPrimaryKeyAttrName());
+			writeStringArray(inumMap.getPrimaryKeyValues());
+			writeString(inumMap.getSecondaryKeyAttrName());
+			writeStringArray(inumMap.getSecondaryKeyValues());
+			writeString(inumMap.getTertiaryKeyAttrName());
+			writeStringArray(inumMap.getTertiaryKeyValues());
+			writeString(inumMap.getStatus() == null ? null : inumMap.getStatus().getValue());
+			flushRecord();
+		}
+
+		public void writeRemoveRecord(String inum) throws IOException {
+			recordBuffer.reset();
+			record.writeByte(RECORD_REMOVE);
+			writeString(inum);
+			flushRecord();
+		}
+
+		private void writeString(String value) throws IOException {
+			if (value == null) {
+				record.writeInt(-1);
+				return;
+			}
+
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			record.writeInt(bytes.length);
+			record.write(bytes);
+		}
+
+		private void writeStringArray(String[] values) throws IOException {
+			if (values == null) {
+				record.writeInt(-1);
+				return;
+			}
+
+			record.writeInt(values.length);
+			for (String value : values) {
+				writeString(value);
+			}
+		}
+
+		private void flushRecord() throws IOException {
+			record.flush();
+			byte[] bytes = recordBuffer.toByteArray();
+
+			checksum.reset();
+			checksum.update(bytes);
+
+			output.writeInt(bytes.length);
+			output.writeInt((int) checksum.getValue());
+			output.write(bytes);
+		}
+
+	}
+
+}
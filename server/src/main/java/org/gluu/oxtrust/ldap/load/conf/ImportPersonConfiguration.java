@@ -37,6 +37,13 @@ public class ImportPersonConfiguration {
 	private static final String ATTRIBUTE_DATA_TYPE_SUFFIX = ".dataType";
 	private static final String ATTRIBUTE_DATA_REQUIRED_SUFFIX = ".required";
 
+	private static final String VALIDATION_CHUNK_SIZE = "person.validation.chunkSize";
+	private static final String VALIDATION_CONCURRENCY = "person.validation.concurrency";
+	private static final String IMPORT_SCRIPTS_THREAD_SAFE = "person.import.scriptsThreadSafe";
+
+	private static final int DEFAULT_VALIDATION_CHUNK_SIZE = 100;
+	private static final int DEFAULT_VALIDATION_CONCURRENCY = 4;
+
 	@Inject
 	private Logger log;
 
@@ -141,6 +148,41 @@ public class ImportPersonConfiguration {
 	}
 
 
+	/**
+	 * Count of values which are checked by one query during uniqueness
+	 * validation
+	 */
+	public int getValidationChunkSize() {
+		return Math.max(1, getInt(VALIDATION_CHUNK_SIZE, DEFAULT_VALIDATION_CHUNK_SIZE));
+	}
+
+	/**
+	 * Count of uniqueness validation queries which are executed concurrently
+	 */
+	public int getValidationConcurrency() {
+		return Math.max(1, getInt(VALIDATION_CONCURRENCY, DEFAULT_VALIDATION_CONCURRENCY));
+	}
+
+	/**
+	 * Allow concurrent execution of update user scripts during import. Scripts
+	 * should not share state between calls in this case
+	 */
+	public boolean isImportScriptsThreadSafe() {
+		if (importConfiguration == null) {
+			return false;
+		}
+
+		return importConfiguration.getBoolean(IMPORT_SCRIPTS_THREAD_SAFE, false);
+	}
+
+	private int getInt(String key, int defaultValue) {
+		if (importConfiguration == null) {
+			return defaultValue;
+		}
+
+		return importConfiguration.getInt(key, defaultValue);
+	}
+
 	public List<GluuAttribute> getAttributes() {
 		if(attributes == null){
 			try {
@@ -6,27 +6,42 @@
 
 package org.gluu.oxtrust.service;
 
-import java.io.IOException;
+import java.io.BufferedReader;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import org.apache.poi.EncryptedDocumentException;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.gluu.oxtrust.model.table.Table;
 import org.slf4j.Logger;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
 /**
  * Service class to work with Excel files
- * 
+ *
  * @author Yuriy Movchan Date: 02.15.2011
  * @author Gasmyr Mougang Date: 11.06.2018
  */
@@ -37,28 +52,209 @@ public class ExcelService {
 	@Inject
 	private Logger log;
 
+	/**
+	 * Handler of rows of first sheet. Values contains cell values by column
+	 * index, missing cells are empty strings
+	 */
+	public interface RowHandler {
+		void handleRow(int row, List<String> values) throws Exception;
+	}
+
 	public Table read(InputStream is) {
-		org.gluu.oxtrust.model.table.Table result = null;
+		final Table result = new Table();
 		try {
-			result = new org.gluu.oxtrust.model.table.Table();
-			Workbook workbook = WorkbookFactory.create(is);
+			readWorkbook(is, new RowHandler() {
+				@Override
+				public void handleRow(int row, List<String> values) {
+					for (int col = 0; col < values.size(); col++) {
+						if (!values.get(col).isEmpty()) {
+							result.addCell(new org.gluu.oxtrust.model.table.Cell(col, row, values.get(col)));
+						}
+					}
+				}
+			});
+		} catch (Exception e) {
+			log.error("Error: " + e);
+		}
+		return result;
+	}
+
+	/**
+	 * Read rows of first sheet one by one without loading whole file in
+	 * memory. File type is selected by file name: .xlsx files are parsed with
+	 * SAX, .csv files are parsed as comma separated values. Old .xls files
+	 * don't support streaming and are loaded whole
+	 */
+	public void read(InputStream is, String fileName, RowHandler handler) throws Exception {
+		String lowerFileName = (fileName == null) ? "" : fileName.toLowerCase();
+		if (lowerFileName.endsWith(".csv")) {
+			readCsv(new InputStreamReader(is, StandardCharsets.UTF_8), handler);
+		} else if (lowerFileName.endsWith(".xlsx")) {
+			readXlsx(is, handler);
+		} else {
+			readWorkbook(is, handler);
+		}
+	}
+
+	private void readXlsx(InputStream is, final RowHandler handler) throws Exception {
+		try (OPCPackage opcPackage = OPCPackage.open(is)) {
+			XSSFReader xssfReader = new XSSFReader(opcPackage);
+			ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+			StylesTable styles = xssfReader.getStylesTable();
+
+			XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+			if (!sheets.hasNext()) {
+				return;
+			}
+
+			XlsxRowCollector rowCollector = new XlsxRowCollector(handler);
+			try (InputStream sheet = sheets.next()) {
+				XMLReader sheetParser = XMLHelper.newXMLReader();
+				sheetParser.setContentHandler(
+						new XSSFSheetXMLHandler(styles, null, sharedStrings, rowCollector, new DataFormatter(), false));
+				sheetParser.parse(new InputSource(sheet));
+			} catch (RowHandlerException ex) {
+				throw (Exception) ex.getCause();
+			}
+		}
+	}
+
+	private void readWorkbook(InputStream is, RowHandler handler) throws Exception {
+		DataFormatter dataFormatter = new DataFormatter();
+		try (Workbook workbook = WorkbookFactory.create(is)) {
 			Sheet datatypeSheet = workbook.getSheetAt(0);
 			Iterator<Row> iterator = datatypeSheet.iterator();
 			while (iterator.hasNext()) {
 				Row currentRow = iterator.next();
+				List<String> values = new ArrayList<String>();
 				Iterator<Cell> cellIterator = currentRow.iterator();
 				while (cellIterator.hasNext()) {
 					Cell currentCell = cellIterator.next();
-					result.addCell(new org.gluu.oxtrust.model.table.Cell(currentCell.getColumnIndex(),
-							currentCell.getRowIndex(), currentCell.getStringCellValue()));
+					setValue(values, currentCell.getColumnIndex(), dataFormatter.formatCellValue(currentCell));
 				}
+				handler.handleRow(currentRow.getRowNum(), values);
 			}
-		} catch (IOException e) {
-			log.error("Error: " + e);
-		} catch (EncryptedDocumentException e) {
-			log.error("Error: " + e);
 		}
-		return result;
+	}
+
+	private void readCsv(Reader reader, RowHandler handler) throws Exception {
+		BufferedReader bufferedReader = new BufferedReader(reader);
+
+		int row = 0;
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		boolean hasData = false;
+		int ch = bufferedReader.read();
+		if (ch == '\uFEFF') {
+			// Skip BOM
+			ch = bufferedReader.read();
+		}
+
+		for (; ch != -1; ch = bufferedReader.read()) {
+			if (quoted) {
+				if (ch == '"') {
+					bufferedReader.mark(1);
+					if (bufferedReader.read() == '"') {
+						value.append('"');
+					} else {
+						bufferedReader.reset();
+						quoted = false;
+					}
+				} else {
+					value.append((char) ch);
+				}
+				continue;
+			}
+
+			if (ch == '"') {
+				quoted = true;
+				hasData = true;
+			} else if (ch == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+				hasData = true;
+			} else if ((ch == '\n') || (ch == '\r')) {
+				if (ch == '\r') {
+					bufferedReader.mark(1);
+					if (bufferedReader.read() != '\n') {
+						bufferedReader.reset();
+					}
+				}
+				if (hasData || (value.length() > 0)) {
+					values.add(value.toString());
+					handler.handleRow(row, values);
+				}
+				row++;
+				values = new ArrayList<String>();
+				value.setLength(0);
+				hasData = false;
+			} else {
+				value.append((char) ch);
+			}
+		}
+
+		if (hasData || (value.length() > 0)) {
+			values.add(value.toString());
+			handler.handleRow(row, values);
+		}
+	}
+
+	private static void setValue(List<String> values, int col, String value) {
+		while (values.size() <= col) {
+			values.add("");
+		}
+		values.set(col, (value == null) ? "" : value);
+	}
+
+	/**
+	 * Collects cells of current row from SAX events
+	 */
+	private static class XlsxRowCollector implements SheetContentsHandler {
+
+		private final RowHandler handler;
+		private List<String> values;
+		private int nextCol;
+
+		public XlsxRowCollector(RowHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public void startRow(int rowNum) {
+			this.values = new ArrayList<String>();
+			this.nextCol = 0;
+		}
+
+		@Override
+		public void endRow(int rowNum) {
+			try {
+				handler.handleRow(rowNum, values);
+			} catch (Exception ex) {
+				throw new RowHandlerException(ex);
+			}
+		}
+
+		@Override
+		public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+			int col = (cellReference == null) ? nextCol : new CellReference(cellReference).getCol();
+			setValue(values, col, formattedValue);
+			this.nextCol = col + 1;
+		}
+
+	}
+
+	/**
+	 * Passes row handler exceptions through SAX parser
+	 */
+	private static class RowHandlerException extends RuntimeException {
+
+		private static final long serialVersionUID = 4172437915716096473L;
+
+		public RowHandlerException(Exception cause) {
+			super(cause);
+		}
+
 	}
 
 }
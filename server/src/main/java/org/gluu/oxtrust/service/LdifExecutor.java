@@ -0,0 +1,45 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Pool of workers which is shared by all LDIF imports and exports. It limits
+ * number of concurrent DB operations and is stopped with application
+ */
+@ApplicationScoped
+public class LdifExecutor {
+
+	private static final int CONCURRENCY = 4;
+
+	private ExecutorService executorService;
+
+	@PostConstruct
+	public void init() {
+		this.executorService = Executors.newFixedThreadPool(CONCURRENCY);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		this.executorService.shutdownNow();
+	}
+
+	public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+		return executorService.invokeAll(tasks);
+	}
+
+}
@@ -12,7 +12,13 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ejb.Stateless;
 import javax.inject.Inject;
@@ -20,6 +26,7 @@ import javax.inject.Named;
 
 import org.gluu.model.GluuAttribute;
 import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.persist.exception.EntryPersistenceException;
 import org.gluu.persist.ldap.impl.LdifDataUtility;
 import org.gluu.persist.ldap.operation.LdapOperationService;
 import org.gluu.persist.model.AttributeData;
@@ -32,7 +39,9 @@ import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFException;
 import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFWriter;
 
 /**
  * Provides operations with LDIF files
@@ -44,10 +53,11 @@ import com.unboundid.ldif.LDIFReader;
 @Named("ldifService")
 public class LdifService implements Serializable {
 
-	private static final String LINE_SEPARATOR = "line.separator";
-
 	private static final long serialVersionUID = 6690460114767359078L;
 
+	private static final int IMPORT_BATCH_SIZE = 100;
+	private static final int EXPORT_BATCH_SIZE = 100;
+
 	@Inject
 	private Logger log;
 
@@ -60,6 +70,9 @@ public class LdifService implements Serializable {
 	@Inject
 	private PersistenceEntryManager persistenceManager;
 
+	@Inject
+	private LdifExecutor ldifExecutor;
+
 	public ResultCode importLdifFileInLdap(Class<?> entryClass, InputStream is) throws LDAPException {
 		if (dataSourceTypeService.isLDAP(attributeService.getDnForAttribute(null))) {
 			ResultCode result = ResultCode.UNAVAILABLE;
@@ -78,7 +91,11 @@ public class LdifService implements Serializable {
 			}
 			return result;
 		} else {
-			performImport(entryClass, is);
+			ImportSummary summary = performImport(entryClass, is);
+			if (summary.getFailed() > 0) {
+				log.error("Failed to import {} entries from ldif file: {}", summary.getFailed(), summary.getErrors());
+				return ResultCode.OTHER;
+			}
 			return ResultCode.SUCCESS;
 		}
 	}
@@ -96,62 +113,221 @@ public class LdifService implements Serializable {
 		return result;
 	}
 
-	@SuppressWarnings("resource")
-	public void performImport(Class entryClass, InputStream inputStream) {
-		final ArrayList<Entry> entryList = new ArrayList<Entry>();
-		final LDIFReader reader = new LDIFReader(inputStream);
-		while (true) {
-			try {
-				final Entry entry = reader.readEntry();
+	/**
+	 * Import entries one batch at a time. Entries of batch with same DN depth
+	 * are imported concurrently, so parent entries are imported before children
+	 */
+	public ImportSummary performImport(final Class<?> entryClass, InputStream inputStream) {
+		ImportSummary summary = new ImportSummary();
+		try (LDIFReader reader = new LDIFReader(inputStream)) {
+			List<Entry> batchEntries = new ArrayList<Entry>(IMPORT_BATCH_SIZE);
+			while (true) {
+				Entry entry;
+				try {
+					entry = reader.readEntry();
+				} catch (LDIFException ex) {
+					log.error("Failed to read entry from ldif file", ex);
+					summary.addError("line " + ex.getLineNumber(), ex.getMessage());
+					if (ex.mayContinueReading()) {
+						continue;
+					}
+					break;
+				}
+
 				if (entry == null) {
 					break;
-				} else {
-					entryList.add(entry);
 				}
-			} catch (final Exception e) {
-				log.error("", e);
+
+				batchEntries.add(entry);
+				if (batchEntries.size() == IMPORT_BATCH_SIZE) {
+					importEntries(entryClass, batchEntries, summary);
+					batchEntries.clear();
+				}
 			}
+			importEntries(entryClass, batchEntries, summary);
+		} catch (IOException ex) {
+			log.error("Failed to read ldif file", ex);
+			summary.addError("", ex.getMessage());
 		}
-		entryList.stream().forEach(e -> {
-			Collection<Attribute> attributes = e.getAttributes();
-			List<Attribute> values = new ArrayList<>();
-			values.addAll(attributes);
-			ArrayList<AttributeData> datas = new ArrayList<>();
-			values.stream().forEach(value -> {
-				datas.add(new AttributeData(value.getName(), value.getValues(),
-						(value.getValues().length > 1) ? true : false));
-			});
+
+		log.info("Imported {} entries from ldif file, failed {}", summary.getImported(), summary.getFailed());
+		return summary;
+	}
+
+	private void importEntries(final Class<?> entryClass, List<Entry> entries, final ImportSummary summary) {
+		// Entries with same depth can't be parent and child
+		TreeMap<Integer, List<Callable<Void>>> depthTasks = new TreeMap<Integer, List<Callable<Void>>>();
+		for (final Entry entry : entries) {
+			int depth;
 			try {
-				persistenceManager.importEntry(e.getDN(), entryClass, datas);
-			} catch (Exception ex) {
-				log.info("=========", ex);
+				depth = entry.getParsedDN().getRDNs().length;
+			} catch (LDAPException ex) {
+				log.error("Failed to parse DN of entry '{}'", entry.getDN(), ex);
+				summary.addError(entry.getDN(), ex.getMessage());
+				continue;
 			}
 
-		});
+			List<Callable<Void>> tasks = depthTasks.get(depth);
+			if (tasks == null) {
+				tasks = new ArrayList<Callable<Void>>();
+				depthTasks.put(depth, tasks);
+			}
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					importEntry(entryClass, entry, summary);
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (List<Callable<Void>> tasks : depthTasks.values()) {
+				ldifExecutor.invokeAll(tasks);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new EntryPersistenceException("Interrupted while importing ldif entries", ex);
+		}
 	}
 
-	public void exportLDIFFile(List<String> checkedItems, OutputStream output) throws LDAPException {
+	private void importEntry(Class<?> entryClass, Entry entry, ImportSummary summary) {
+		Collection<Attribute> attributes = entry.getAttributes();
+		List<AttributeData> datas = new ArrayList<AttributeData>(attributes.size());
+		for (Attribute attribute : attributes) {
+			datas.add(new AttributeData(attribute.getName(), attribute.getValues(), attribute.getValues().length > 1));
+		}
+
+		try {
+			persistenceManager.importEntry(entry.getDN(), entryClass, datas);
+			summary.addImported();
+		} catch (Exception ex) {
+			log.error("Failed to import entry '{}'", entry.getDN(), ex);
+			summary.addError(entry.getDN(), ex.getMessage());
+		}
+	}
+
+	/**
+	 * Write entries to output while they are loaded. Entries are loaded in
+	 * batches, entries of batch are loaded concurrently. Entries which can't be
+	 * loaded are listed in comment at the end of output
+	 *
+	 * @return DNs of entries which were not exported
+	 */
+	public List<String> exportLDIFFile(List<String> checkedItems, OutputStream output) throws LDAPException {
+		List<String> failedDns = new ArrayList<String>();
+		if ((checkedItems == null) || checkedItems.isEmpty()) {
+			return failedDns;
+		}
+
 		try {
-			StringBuilder builder = new StringBuilder();
-			if (checkedItems != null && checkedItems.size() > 0) {
-				checkedItems.stream().forEach(e -> {
-					List<AttributeData> exportEntry = persistenceManager.exportEntry(e);
-					if (exportEntry != null && exportEntry.size() >= 0) {
-						builder.append("dn: " + e + System.getProperty(LINE_SEPARATOR));
-						exportEntry.forEach(v -> {
-							String key = v.getName();
-							for (Object value : v.getValues()) {
-								builder.append(key + ": " + value + System.getProperty(LINE_SEPARATOR));
-							}
-						});
+			LDIFWriter ldifWriter = new LDIFWriter(output);
+			ldifWriter.setWrapColumn(0);
+			for (int batchStart = 0; batchStart < checkedItems.size(); batchStart += EXPORT_BATCH_SIZE) {
+				List<String> batchDns = checkedItems.subList(batchStart,
+						Math.min(batchStart + EXPORT_BATCH_SIZE, checkedItems.size()));
+
+				List<Callable<List<AttributeData>>> tasks = new ArrayList<Callable<List<AttributeData>>>(
+						batchDns.size());
+				for (final String dn : batchDns) {
+					tasks.add(new Callable<List<AttributeData>>() {
+						@Override
+						public List<AttributeData> call() {
+							return persistenceManager.exportEntry(dn);
+						}
+					});
+				}
+
+				// Keep order of requested entries
+				List<Future<List<AttributeData>>> exportEntries = ldifExecutor.invokeAll(tasks);
+				for (int i = 0; i < batchDns.size(); i++) {
+					List<AttributeData> exportEntry;
+					try {
+						exportEntry = exportEntries.get(i).get();
+					} catch (ExecutionException ex) {
+						log.error("Failed to export entry '{}'", batchDns.get(i), ex.getCause());
+						failedDns.add(batchDns.get(i));
+						continue;
+					}
+
+					if (exportEntry != null) {
+						ldifWriter.writeEntry(toEntry(batchDns.get(i), exportEntry));
 					}
-					builder.append(System.getProperty(LINE_SEPARATOR));
-				});
+				}
+				ldifWriter.flush();
+			}
+
+			if (!failedDns.isEmpty()) {
+				ldifWriter.writeComment("Failed to export entries: " + String.join("; ", failedDns), false, false);
+				ldifWriter.flush();
 			}
-			output.write(builder.toString().getBytes());
 		} catch (IOException e) {
-			log.error("Error while exporting entries: ", e);
+			throw new LDAPException(ResultCode.LOCAL_ERROR, "Error while exporting entries", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LDAPException(ResultCode.LOCAL_ERROR, "Interrupted while exporting entries", e);
+		}
+
+		return failedDns;
+	}
+
+	private Entry toEntry(String dn, List<AttributeData> exportEntry) {
+		Entry entry = new Entry(dn);
+		for (AttributeData attributeData : exportEntry) {
+			Object[] values = attributeData.getValues();
+			if (values == null) {
+				continue;
+			}
+
+			for (Object value : values) {
+				if (value instanceof byte[]) {
+					entry.addAttribute(attributeData.getName(), (byte[]) value);
+				} else if (value != null) {
+					entry.addAttribute(attributeData.getName(), value.toString());
+				}
+			}
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Result of ldif file import with errors of failed entries
+	 */
+	public static class ImportSummary implements Serializable {
+
+		private static final long serialVersionUID = -8244931542375924127L;
+
+		// Don't keep too many errors in memory if whole file is wrong
+		private static final int MAX_ERRORS = 1000;
+
+		private final AtomicInteger imported = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+		public void addImported() {
+			imported.incrementAndGet();
 		}
+
+		public void addError(String dn, String error) {
+			failed.incrementAndGet();
+			if (errors.size() < MAX_ERRORS) {
+				errors.add(dn + ": " + error);
+			}
+		}
+
+		public int getImported() {
+			return imported.get();
+		}
+
+		public int getFailed() {
+			return failed.get();
+		}
+
+		public List<String> getErrors() {
+			return errors;
+		}
+
 	}
 
 }
@@ -2,7 +2,10 @@ package org.gluu.oxtrust.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -23,43 +26,62 @@ public class MemberService implements Serializable {
 
 	@Inject
 	private PersonService personService;
-	
+
 	@Inject
 	private Logger log;
 
 	public void removePerson(GluuCustomPerson person) {
-		// Remove groups where user is owner
-		List<GluuGroup> groups = groupService.getAllGroups();
-		for (GluuGroup group : groups) {
-			if (StringHelper.equalsIgnoreCase(group.getOwner(), person.getDn())) {
-				groupService.removeGroup(group);
+		removePersons(Arrays.asList(person));
+	}
+
+	/**
+	 * Remove persons together with groups they own and their memberships in
+	 * other groups
+	 */
+	public void removePersons(List<GluuCustomPerson> persons) {
+		List<String> personDns = new ArrayList<String>(persons.size());
+		for (GluuCustomPerson person : persons) {
+			personDns.add(person.getDn());
+		}
+
+		// Remove groups where users are owners
+		Set<String> removedGroupDns = new HashSet<String>();
+		List<String> ownedGroupDns = groupService.getGroupDnsByOwners(personDns);
+		for (String groupDn : ownedGroupDns) {
+			if (!removedGroupDns.add(StringHelper.toLowerCase(groupDn))) {
+				continue;
 			}
+
+			GluuGroup group = groupService.getGroupByDn(groupDn);
+			groupService.removeGroup(group);
+		}
+
+		for (GluuCustomPerson person : persons) {
+			// Remove person from associated groups
+			removePersonFromGroups(person, removedGroupDns);
+			// Remove person
+			personService.removePerson(person);
 		}
-		// Remove person from associated groups
-		removePersonFromGroups(person);
-		// Remove person
-		personService.removePerson(person);
 	}
 
-	private void removePersonFromGroups(GluuCustomPerson person) {
+	private void removePersonFromGroups(GluuCustomPerson person, Set<String> removedGroupDns) {
 		log.debug("Removing person from associated group before deletion");
-        String pesonDn = person.getDn();
+		String pesonDn = person.getDn();
 		// Remove person from associated groups
 		List<String> associatedGroupsDn = person.getMemberOf();
-		for (String groupDn : associatedGroupsDn) {
-		    if (!groupService.contains(groupDn)) {
-		        continue;
-		    }
+		if (associatedGroupsDn == null) {
+			return;
+		}
 
-		    GluuGroup group = groupService.getGroupByDn(groupDn);
+		for (String groupDn : associatedGroupsDn) {
+			if (removedGroupDns.contains(StringHelper.toLowerCase(groupDn))) {
+				continue;
+			}
 
-			List<String> members = new ArrayList<String>(group.getMembers());
-			members.remove(pesonDn);
-			group.setMembers(members);
 			try {
-				groupService.updateGroup(group);
+				groupService.removeMember(groupDn, pesonDn);
 			} catch (EntryPersistenceException ex) {
-			    log.error("Failed to remove preson '{}' from group '{}'", ex);
+				log.error("Failed to remove preson '{}' from group '{}'", pesonDn, groupDn, ex);
 			}
 		}
 		log.debug("All group updated");
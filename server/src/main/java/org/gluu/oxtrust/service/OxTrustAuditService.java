@@ -17,8 +17,10 @@ public class OxTrustAuditService implements Serializable {
 	private Logger log;
 
     public void audit(String message, GluuCustomPerson user, HttpServletRequest request) {
-        String ipAddress = request.getHeader("X-FORWARDED-FOR") != null ? request.getHeader("X-FORWARDED-FOR")
-                : request.getRemoteAddr();
+        audit(message, user, getClientAddress(request));
+    }
+
+    public void audit(String message, GluuCustomPerson user, String ipAddress) {
         String fullMessage = message.concat(" BY USER " + user.getDisplayName() + " FROM IP ADDRESS " + ipAddress);
         log.info(fullMessage);
     }
@@ -27,4 +29,9 @@ public class OxTrustAuditService implements Serializable {
         log.info(message);
     }
 
+    public String getClientAddress(HttpServletRequest request) {
+        return request.getHeader("X-FORWARDED-FOR") != null ? request.getHeader("X-FORWARDED-FOR")
+                : request.getRemoteAddr();
+    }
+
 }
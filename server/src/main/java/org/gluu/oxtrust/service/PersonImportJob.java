@@ -0,0 +1,160 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress and errors of person import which runs in background
+ */
+public class PersonImportJob implements Serializable {
+
+	private static final long serialVersionUID = -1964278914806306137L;
+
+	// Don't keep too many errors in memory if whole file is wrong
+	private static final int MAX_ERRORS = 10000;
+
+	public enum Status {
+		RUNNING, COMPLETED, CANCELLED, FAILED
+	}
+
+	private final String id;
+	private final int total;
+
+	private final AtomicInteger processed = new AtomicInteger();
+	private final AtomicInteger added = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+	private volatile Status status = Status.RUNNING;
+	private volatile boolean cancelRequested;
+	private volatile boolean reported;
+	private volatile long finishTime;
+
+	public PersonImportJob(String id, int total) {
+		this.id = id;
+		this.total = total;
+	}
+
+	public void addSuccess() {
+		added.incrementAndGet();
+		processed.incrementAndGet();
+	}
+
+	public void addError(String uid, String error) {
+		failed.incrementAndGet();
+		processed.incrementAndGet();
+		if (errors.size() < MAX_ERRORS) {
+			errors.add(toReportField(uid) + ";" + toReportField(error));
+		}
+	}
+
+	public void cancel() {
+		this.cancelRequested = true;
+	}
+
+	public boolean isCancelRequested() {
+		return cancelRequested;
+	}
+
+	public boolean isRunning() {
+		return status == Status.RUNNING;
+	}
+
+	public int getProgress() {
+		if (total == 0) {
+			return 100;
+		}
+
+		return (int) (100L * processed.get() / total);
+	}
+
+	/**
+	 * Report with one "uid;error" line per failed person. Fields with separator,
+	 * quote or line break are quoted
+	 */
+	public String getErrorsReport() {
+		StringBuilder report = new StringBuilder("uid;error\n");
+		synchronized (errors) {
+			for (String error : errors) {
+				report.append(error).append('\n');
+			}
+		}
+		if (failed.get() > errors.size()) {
+			report.append("...;").append(failed.get() - errors.size()).append(" more errors\n");
+		}
+
+		return report.toString();
+	}
+
+	private static String toReportField(String value) {
+		if (value == null) {
+			return "";
+		}
+
+		if ((value.indexOf(';') == -1) && (value.indexOf('"') == -1) && (value.indexOf('\n') == -1)
+				&& (value.indexOf('\r') == -1)) {
+			return value;
+		}
+
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getProcessed() {
+		return processed.get();
+	}
+
+	public int getAdded() {
+		return added.get();
+	}
+
+	public int getFailed() {
+		return failed.get();
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		if (status != Status.RUNNING) {
+			this.finishTime = System.currentTimeMillis();
+		}
+		this.status = status;
+	}
+
+	/**
+	 * Time when job was finished in milliseconds or 0 if it's still running
+	 */
+	public long getFinishTime() {
+		return finishTime;
+	}
+
+	/**
+	 * Result of finished job was shown to user
+	 */
+	public boolean isReported() {
+		return reported;
+	}
+
+	public void setReported(boolean reported) {
+		this.reported = reported;
+	}
+
+}
@@ -0,0 +1,352 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.gluu.oxtrust.ldap.load.conf.ImportPersonConfiguration;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.service.PersonImportJob.Status;
+import org.gluu.oxtrust.service.external.ExternalUpdateUserService;
+import org.gluu.persist.exception.EntryPersistenceException;
+import org.gluu.util.StringHelper;
+import org.slf4j.Logger;
+
+/**
+ * Imports validated persons in background. Persons are added in batches by
+ * bounded pool of workers. Finished jobs are kept for some time to allow to
+ * check results
+ */
+@ApplicationScoped
+@Named
+public class PersonImportService {
+
+	private static final String[] UID_RETURN_ATTRIBUTES = { "uid" };
+
+	private static final int IMPORT_BATCH_SIZE = 100;
+	private static final int IMPORT_CONCURRENCY = 4;
+
+	private static final int MAX_RUNNING_JOBS = 2;
+	private static final int MAX_QUEUED_JOBS = 10;
+	private static final long FINISHED_JOB_TIME_TO_LIVE = TimeUnit.HOURS.toMillis(1);
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private PersonService personService;
+
+	@Inject
+	private OrganizationService organizationService;
+
+	@Inject
+	private ExternalUpdateUserService externalUpdateUserService;
+
+	@Inject
+	private OxTrustAuditService oxTrustAuditService;
+
+	/**
+	 * Source of persons to import. Persons are passed to handler batch by batch
+	 * to avoid loading all of them in memory
+	 */
+	public interface PersonSource {
+		void read(PersonBatchHandler handler) throws Exception;
+	}
+
+	public interface PersonBatchHandler {
+		void handle(List<GluuCustomPerson> persons) throws Exception;
+	}
+
+	@Inject
+	private ImportPersonConfiguration importPersonConfiguration;
+
+	private ExecutorService jobExecutorService;
+	private Map<String, PersonImportJob> jobs;
+
+	// Update user scripts are executed one at a time if they aren't thread-safe
+	private final Object scriptLock = new Object();
+
+	@PostConstruct
+	public void init() {
+		this.jobExecutorService = new ThreadPoolExecutor(MAX_RUNNING_JOBS, MAX_RUNNING_JOBS, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(MAX_QUEUED_JOBS));
+		this.jobs = new ConcurrentHashMap<String, PersonImportJob>();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		this.jobExecutorService.shutdownNow();
+	}
+
+	/**
+	 * Start import of persons. Persons should be already validated. Import is
+	 * audited when it finishes
+	 *
+	 * @param user
+	 *            User who started import
+	 * @param clientAddress
+	 *            IP address of user
+	 * @throws RejectedExecutionException
+	 *             if there are too many running imports
+	 */
+	public PersonImportJob startImport(final PersonSource personSource, int countPersons, final GluuCustomPerson user,
+			final String clientAddress) {
+		removeExpiredJobs();
+
+		final PersonImportJob job = new PersonImportJob(UUID.randomUUID().toString(), countPersons);
+		jobExecutorService.execute(new Runnable() {
+			@Override
+			public void run() {
+				importPersons(job, personSource);
+				oxTrustAuditService.audit(job.getAdded() + " USERS IMPORTED ", user, clientAddress);
+			}
+		});
+		jobs.put(job.getId(), job);
+
+		return job;
+	}
+
+	public PersonImportJob getJob(String jobId) {
+		removeExpiredJobs();
+		if (jobId == null) {
+			return null;
+		}
+
+		return jobs.get(jobId);
+	}
+
+	/**
+	 * Cancel job if it's still running and forget it
+	 */
+	public void removeJob(String jobId) {
+		if (jobId == null) {
+			return;
+		}
+
+		PersonImportJob job = jobs.remove(jobId);
+		if (job != null) {
+			job.cancel();
+		}
+	}
+
+	private void removeExpiredJobs() {
+		long expirationTime = System.currentTimeMillis() - FINISHED_JOB_TIME_TO_LIVE;
+		for (Iterator<PersonImportJob> it = jobs.values().iterator(); it.hasNext();) {
+			PersonImportJob job = it.next();
+			if (!job.isRunning() && (job.getFinishTime() < expirationTime)) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Find persons which already have one of values in attribute. Values are
+	 * checked in chunks, chunks are checked concurrently. Only attribute itself
+	 * is loaded
+	 */
+	public List<GluuCustomPerson> findExistingPersons(final String attributeName, Collection<String> values)
+			throws Exception {
+		final List<String> checkValues = new ArrayList<String>(values.size());
+		for (String value : values) {
+			if (StringHelper.isNotEmpty(value)) {
+				checkValues.add(value);
+			}
+		}
+
+		List<GluuCustomPerson> result = new ArrayList<GluuCustomPerson>();
+		if (checkValues.isEmpty()) {
+			return result;
+		}
+
+		final int chunkSize = importPersonConfiguration.getValidationChunkSize();
+		int concurrency = Math.min(importPersonConfiguration.getValidationConcurrency(),
+				(checkValues.size() + chunkSize - 1) / chunkSize);
+		if (concurrency <= 1) {
+			return personService.findPersonsByAttributeValues(attributeName, checkValues, chunkSize, attributeName);
+		}
+
+		List<Callable<List<GluuCustomPerson>>> tasks = new ArrayList<Callable<List<GluuCustomPerson>>>();
+		for (int chunkStart = 0; chunkStart < checkValues.size(); chunkStart += chunkSize) {
+			final List<String> chunkValues = checkValues.subList(chunkStart,
+					Math.min(chunkStart + chunkSize, checkValues.size()));
+			tasks.add(new Callable<List<GluuCustomPerson>>() {
+				@Override
+				public List<GluuCustomPerson> call() {
+					return personService.findPersonsByAttributeValues(attributeName, chunkValues, chunkSize,
+							attributeName);
+				}
+			});
+		}
+
+		log.debug("Checking {} '{}' values with {} queries, {} in parallel", checkValues.size(), attributeName,
+				tasks.size(), concurrency);
+		ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+		try {
+			for (Future<List<GluuCustomPerson>> future : executorService.invokeAll(tasks)) {
+				try {
+					result.addAll(future.get());
+				} catch (ExecutionException ex) {
+					throw new EntryPersistenceException("Failed to check existing persons", ex.getCause());
+				}
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		return result;
+	}
+
+	private void importPersons(final PersonImportJob job, PersonSource personSource) {
+		log.info("Starting import of {} persons", job.getTotal());
+		final ExecutorService executorService = Executors.newFixedThreadPool(IMPORT_CONCURRENCY);
+		try {
+			personSource.read(new PersonBatchHandler() {
+				@Override
+				public void handle(List<GluuCustomPerson> persons) throws Exception {
+					for (int batchStart = 0; batchStart < persons.size(); batchStart += IMPORT_BATCH_SIZE) {
+						if (job.isCancelRequested()) {
+							throw new CancellationException();
+						}
+
+						List<GluuCustomPerson> batchPersons = persons.subList(batchStart,
+								Math.min(batchStart + IMPORT_BATCH_SIZE, persons.size()));
+						importBatch(executorService, job, batchPersons);
+					}
+				}
+			});
+
+			job.setStatus(Status.COMPLETED);
+			log.info("Import of persons finished. Added: {}, failed: {}", job.getAdded(), job.getFailed());
+		} catch (CancellationException ex) {
+			job.setStatus(Status.CANCELLED);
+			log.info("Import of persons was cancelled after {} persons", job.getProcessed());
+		} catch (Exception ex) {
+			job.setStatus(Status.FAILED);
+			log.error("Failed to import persons", ex);
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private void importBatch(ExecutorService executorService, final PersonImportJob job,
+			List<GluuCustomPerson> batchPersons) throws Exception {
+		// Persons might be added after validation. Check whole batch with one query
+		List<String> uids = new ArrayList<String>(batchPersons.size());
+		for (GluuCustomPerson person : batchPersons) {
+			uids.add(person.getUid());
+		}
+
+		Set<String> existingUids = new HashSet<String>();
+		for (GluuCustomPerson existingPerson : personService.findPersonsByUids(uids, UID_RETURN_ATTRIBUTES)) {
+			existingUids.add(StringHelper.toLowerCase(existingPerson.getUid()));
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(batchPersons.size());
+		for (final GluuCustomPerson person : batchPersons) {
+			if (existingUids.contains(StringHelper.toLowerCase(person.getUid()))) {
+				job.addError(person.getUid(), "Duplicate UID value");
+				continue;
+			}
+
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					importPerson(job, person);
+					return null;
+				}
+			});
+		}
+
+		for (Future<Void> future : executorService.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (ExecutionException ex) {
+				// Task reports own failures in job
+				throw new EntryPersistenceException("Failed to import persons", ex.getCause());
+			}
+		}
+	}
+
+	private void importPerson(PersonImportJob job, GluuCustomPerson person) {
+		if (!organizationService.isAllowPersonModification()) {
+			job.addError(person.getUid(), "Person modification is not allowed");
+			return;
+		}
+
+		try {
+			personService.addCustomObjectClass(person);
+
+			String inum = personService.generateInumForNewPerson();
+			person.setDn(personService.getDnForPerson(inum));
+			person.setInum(inum);
+
+			List<GluuCustomAttribute> personAttributes = person.getCustomAttributes();
+			if (!personAttributes.contains(new GluuCustomAttribute("cn", ""))) {
+				List<GluuCustomAttribute> changedAttributes = new ArrayList<GluuCustomAttribute>();
+				changedAttributes.addAll(personAttributes);
+				changedAttributes.add(new GluuCustomAttribute("cn", person.getGivenName() + " " + person.getDisplayName()));
+				person.setCustomAttributes(changedAttributes);
+			} else {
+				person.setCommonName(person.getCommonName() + " " + person.getGivenName());
+			}
+
+			boolean runScript = externalUpdateUserService.isEnabled();
+			boolean serialScript = !importPersonConfiguration.isImportScriptsThreadSafe();
+			if (runScript) {
+				if (serialScript) {
+					synchronized (scriptLock) {
+						externalUpdateUserService.executeExternalAddUserMethods(person);
+					}
+				} else {
+					externalUpdateUserService.executeExternalAddUserMethods(person);
+				}
+			}
+			personService.persistPerson(person);
+			if (runScript) {
+				if (serialScript) {
+					synchronized (scriptLock) {
+						externalUpdateUserService.executeExternalPostAddUserMethods(person);
+					}
+				} else {
+					externalUpdateUserService.executeExternalPostAddUserMethods(person);
+				}
+			}
+
+			job.addSuccess();
+			log.debug("Added new person: {}", person.getUid());
+		} catch (Exception ex) {
+			log.error("Failed to add new person {}", person.getUid(), ex);
+			job.addError(person.getUid(), ex.getMessage());
+		}
+	}
+
+}
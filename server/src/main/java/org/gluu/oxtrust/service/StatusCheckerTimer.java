@@ -80,10 +80,7 @@ public class StatusCheckerTimer {
 	private AtomicBoolean isActive;
 
 	@Inject
-	private IGroupService groupService;
-
-	@Inject
-	private IPersonService personService;
+	private EntryCountService entryCountService;
 
 	@PostConstruct
 	public void create() {
@@ -134,8 +131,9 @@ public class StatusCheckerTimer {
 		}
 		ConfigurationStatus configurationStatus = new ConfigurationStatus();
 		OxtrustStat oxtrustStatObject = new OxtrustStat();
-		oxtrustStatObject.setGroupCount(String.valueOf(groupService.countGroups()));
-		oxtrustStatObject.setPersonCount(String.valueOf(personService.countPersons()));
+		entryCountService.reconcileIfExpired();
+		oxtrustStatObject.setGroupCount(String.valueOf(entryCountService.getGroupCount()));
+		oxtrustStatObject.setPersonCount(String.valueOf(entryCountService.getPersonCount()));
 		log.debug("Setting FactorAttributes");
 		FacterData facterData = getFacterData();
 		configurationStatus.setHostname(facterData.getHostname());
@@ -0,0 +1,119 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class CacheRefreshSnapshotTest {
+
+    @Test
+    public void testWriteAndOpen() throws Exception {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        for (int i = 0; i < 1000; i++) {
+            map.put("inum-" + i, i * 31);
+        }
+
+        File file = File.createTempFile("inum-snapshot-", ".bin");
+        try {
+            MemoryCacheRefreshSnapshot.create(map).write(file);
+
+            CacheRefreshSnapshot snapshot = MappedCacheRefreshSnapshot.open(file);
+            assertEquals(snapshot.size(), 1000);
+            assertEquals(snapshot.get("inum-10"), Integer.valueOf(310));
+            assertNull(snapshot.get("inum-1000"));
+            assertEquals(snapshot.toMap(), map);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDiffAndMerge() {
+        Map<String, Integer> prevMap = new HashMap<String, Integer>();
+        prevMap.put("a", 1);
+        prevMap.put("b", 2);
+        prevMap.put("c", 3);
+
+        Map<String, Integer> currMap = new HashMap<String, Integer>();
+        currMap.put("b", 2);
+        currMap.put("c", 4);
+        currMap.put("d", 5);
+
+        CacheRefreshSnapshot prevSnapshot = MemoryCacheRefreshSnapshot.create(prevMap);
+        CacheRefreshSnapshot currSnapshot = MemoryCacheRefreshSnapshot.create(currMap);
+
+        CacheRefreshSnapshot.Diff diff = CacheRefreshSnapshot.diff(prevSnapshot, currSnapshot);
+        assertEqualsNoOrder(diff.getChangedInums().toArray(), new Object[] { "c", "d" });
+        assertEqualsNoOrder(diff.getRemovedInums().toArray(), new Object[] { "a" });
+
+        CacheRefreshSnapshot merged = CacheRefreshSnapshot.merge(prevSnapshot, currSnapshot);
+        assertEquals(merged.size(), 4);
+        assertEquals(merged.get("a"), Integer.valueOf(1));
+        assertEquals(merged.get("c"), Integer.valueOf(4));
+    }
+
+    @Test
+    public void testBuilderAndOffHeapCopy() {
+        CacheRefreshSnapshot snapshot = createBuilder().build();
+        CacheRefreshSnapshot offHeapSnapshot = OffHeapCacheRefreshSnapshot.copyOf(snapshot);
+        assertEquals(offHeapSnapshot.size(), 101);
+        assertEquals(offHeapSnapshot.toMap(), snapshot.toMap());
+        assertEquals(offHeapSnapshot.get("inum-\u00e9"), Integer.valueOf(100));
+        assertTrue(CacheRefreshSnapshot.diff(snapshot, offHeapSnapshot).getChangedInums().isEmpty());
+    }
+
+    @Test
+    public void testBuildOffHeap() {
+        CacheRefreshSnapshotBuilder builder = createBuilder();
+        builder.add("inum-100", 1000);
+
+        CacheRefreshSnapshot offHeapSnapshot = builder.buildOffHeap();
+        assertEquals(offHeapSnapshot.size(), 102);
+        assertEquals(offHeapSnapshot.get("inum-100"), Integer.valueOf(1000));
+        assertEquals(offHeapSnapshot.get("inum-\u00e9"), Integer.valueOf(100));
+
+        CacheRefreshSnapshot snapshot = createBuilder().add("inum-100", 1000).build();
+        assertEquals(offHeapSnapshot.toMap(), snapshot.toMap());
+    }
+
+    @Test
+    public void testOffHeapMerge() {
+        Map<String, Integer> prevMap = new HashMap<String, Integer>();
+        prevMap.put("a", 1);
+        prevMap.put("b", 2);
+        prevMap.put("c", 3);
+
+        Map<String, Integer> changesMap = new HashMap<String, Integer>();
+        changesMap.put("c", 4);
+        changesMap.put("d", 5);
+
+        CacheRefreshSnapshot prevSnapshot = MemoryCacheRefreshSnapshot.create(prevMap);
+        CacheRefreshSnapshot changesSnapshot = MemoryCacheRefreshSnapshot.create(changesMap);
+
+        CacheRefreshSnapshot merged = OffHeapCacheRefreshSnapshot.merge(prevSnapshot, changesSnapshot);
+        assertEquals(merged.toMap(), CacheRefreshSnapshot.merge(prevSnapshot, changesSnapshot).toMap());
+        assertEquals(merged.size(), 4);
+        assertEquals(merged.get("c"), Integer.valueOf(4));
+    }
+
+    private CacheRefreshSnapshotBuilder createBuilder() {
+        CacheRefreshSnapshotBuilder builder = new CacheRefreshSnapshotBuilder(4);
+        for (int i = 0; i < 100; i++) {
+            builder.add("inum-" + i, i);
+        }
+        builder.add("inum-\u00e9", 100);
+
+        return builder;
+    }
+
+}
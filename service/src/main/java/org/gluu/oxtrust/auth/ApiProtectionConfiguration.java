@@ -0,0 +1,269 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.auth;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.gluu.service.config.ConfigurationFactory;
+import org.gluu.util.StringHelper;
+import org.gluu.util.properties.FileConfiguration;
+import org.slf4j.Logger;
+
+/**
+ * Performance settings of API protection. Values are loaded from optional
+ * oxTrustApiProtection.properties and reloaded when file changes
+ */
+@ApplicationScoped
+public class ApiProtectionConfiguration {
+
+	public static final String API_PROTECTION_PROPERTIES_FILE = "oxTrustApiProtection.properties";
+
+	public static final String INTROSPECTION_CACHE_ENABLED = "introspectionCacheEnabled";
+	public static final String INTROSPECTION_CACHE_MAX_SIZE = "introspectionCacheMaxSize";
+	public static final String INTROSPECTION_CACHE_TIME_TO_LIVE = "introspectionCacheTimeToLive";
+	public static final String INTROSPECTION_CACHE_TIME_TO_IDLE = "introspectionCacheTimeToIdle";
+	public static final String INTROSPECTION_CLIENT_CONNECT_TIMEOUT = "introspectionClientConnectTimeout";
+	public static final String INTROSPECTION_CLIENT_READ_TIMEOUT = "introspectionClientReadTimeout";
+	public static final String INTROSPECTION_CLIENT_MAX_CONNECTIONS = "introspectionClientMaxConnections";
+	public static final String RPT_CACHE_ENABLED = "rptCacheEnabled";
+	public static final String RPT_CACHE_MAX_SIZE = "rptCacheMaxSize";
+	public static final String RPT_CACHE_TIME_TO_LIVE = "rptCacheTimeToLive";
+	public static final String RPT_CACHE_TIME_TO_IDLE = "rptCacheTimeToIdle";
+	public static final String LOCAL_JWT_VALIDATION_ENABLED = "localJwtValidationEnabled";
+	public static final String JWKS_REFRESH_INTERVAL = "jwksRefreshInterval";
+	public static final String JWT_AUDIENCES = "jwtAudiences";
+	public static final String UMA_CLIENT_CONNECT_TIMEOUT = "umaClientConnectTimeout";
+	public static final String UMA_CLIENT_READ_TIMEOUT = "umaClientReadTimeout";
+	public static final String UMA_CLIENT_MAX_CONCURRENCY = "umaClientMaxConcurrency";
+	public static final String UMA_CLIENT_FAILURE_THRESHOLD = "umaClientFailureThreshold";
+	public static final String UMA_CLIENT_OPEN_CIRCUIT_TIME = "umaClientOpenCircuitTime";
+
+	public static final int DEFAULT_INTROSPECTION_CACHE_MAX_SIZE = 10000;
+	public static final int DEFAULT_INTROSPECTION_CACHE_TIME_TO_LIVE = 60 * 60;
+	public static final int DEFAULT_INTROSPECTION_CACHE_TIME_TO_IDLE = 5 * 60;
+	public static final int DEFAULT_INTROSPECTION_CLIENT_CONNECT_TIMEOUT = 5;
+	public static final int DEFAULT_INTROSPECTION_CLIENT_READ_TIMEOUT = 10;
+	public static final int DEFAULT_INTROSPECTION_CLIENT_MAX_CONNECTIONS = 50;
+	public static final int DEFAULT_JWKS_REFRESH_INTERVAL = 60 * 60;
+	public static final int DEFAULT_UMA_CLIENT_CONNECT_TIMEOUT = 5;
+	public static final int DEFAULT_UMA_CLIENT_READ_TIMEOUT = 10;
+	public static final int DEFAULT_UMA_CLIENT_MAX_CONCURRENCY = 20;
+	public static final int DEFAULT_UMA_CLIENT_FAILURE_THRESHOLD = 5;
+	public static final int DEFAULT_UMA_CLIENT_OPEN_CIRCUIT_TIME = 30;
+
+	@Inject
+	private Logger log;
+
+	private FileConfiguration configuration;
+	private long configurationLastModifiedTime = -1;
+
+	/**
+	 * Reuse results of access token introspection until token expires
+	 */
+	public boolean isIntrospectionCacheEnabled() {
+		return getBoolean(INTROSPECTION_CACHE_ENABLED, true);
+	}
+
+	/**
+	 * Maximum number of cached introspection results
+	 */
+	public int getIntrospectionCacheMaxSize() {
+		return Math.max(1, getInt(INTROSPECTION_CACHE_MAX_SIZE, DEFAULT_INTROSPECTION_CACHE_MAX_SIZE));
+	}
+
+	/**
+	 * Maximum time in seconds to keep introspection result. Result is never kept
+	 * after token expiration
+	 */
+	public int getIntrospectionCacheTimeToLive() {
+		return Math.max(1, getInt(INTROSPECTION_CACHE_TIME_TO_LIVE, DEFAULT_INTROSPECTION_CACHE_TIME_TO_LIVE));
+	}
+
+	/**
+	 * Time in seconds after which unused introspection result is removed. 0
+	 * disables idle expiration
+	 */
+	public int getIntrospectionCacheTimeToIdle() {
+		return Math.max(0, getInt(INTROSPECTION_CACHE_TIME_TO_IDLE, DEFAULT_INTROSPECTION_CACHE_TIME_TO_IDLE));
+	}
+
+	/**
+	 * Reuse results of RPT introspection until RPT expires
+	 */
+	public boolean isRptCacheEnabled() {
+		return getBoolean(RPT_CACHE_ENABLED, true);
+	}
+
+	/**
+	 * Maximum number of cached RPT introspection results
+	 */
+	public int getRptCacheMaxSize() {
+		return Math.max(1, getInt(RPT_CACHE_MAX_SIZE, DEFAULT_INTROSPECTION_CACHE_MAX_SIZE));
+	}
+
+	/**
+	 * Maximum time in seconds to keep RPT introspection result. Result is never
+	 * kept after RPT expiration
+	 */
+	public int getRptCacheTimeToLive() {
+		return Math.max(1, getInt(RPT_CACHE_TIME_TO_LIVE, DEFAULT_INTROSPECTION_CACHE_TIME_TO_LIVE));
+	}
+
+	/**
+	 * Time in seconds after which unused RPT introspection result is removed. 0
+	 * disables idle expiration
+	 */
+	public int getRptCacheTimeToIdle() {
+		return Math.max(0, getInt(RPT_CACHE_TIME_TO_IDLE, DEFAULT_INTROSPECTION_CACHE_TIME_TO_IDLE));
+	}
+
+	/**
+	 * Timeout in seconds of connection to oxAuth introspection endpoint
+	 */
+	public int getIntrospectionClientConnectTimeout() {
+		return Math.max(1, getInt(INTROSPECTION_CLIENT_CONNECT_TIMEOUT, DEFAULT_INTROSPECTION_CLIENT_CONNECT_TIMEOUT));
+	}
+
+	/**
+	 * Timeout in seconds of oxAuth introspection endpoint response
+	 */
+	public int getIntrospectionClientReadTimeout() {
+		return Math.max(1, getInt(INTROSPECTION_CLIENT_READ_TIMEOUT, DEFAULT_INTROSPECTION_CLIENT_READ_TIMEOUT));
+	}
+
+	/**
+	 * Maximum number of pooled connections to oxAuth introspection endpoint
+	 */
+	public int getIntrospectionClientMaxConnections() {
+		return Math.max(1, getInt(INTROSPECTION_CLIENT_MAX_CONNECTIONS, DEFAULT_INTROSPECTION_CLIENT_MAX_CONNECTIONS));
+	}
+
+	/**
+	 * Validate JWT access tokens and RPTs locally with oxAuth JWKS. It requires
+	 * JWT audiences. Tokens which can't be validated locally are introspected at
+	 * oxAuth
+	 */
+	public boolean isLocalJwtValidationEnabled() {
+		return getBoolean(LOCAL_JWT_VALIDATION_ENABLED, false);
+	}
+
+	/**
+	 * Interval in seconds between two JWKS loads from oxAuth
+	 */
+	public int getJwksRefreshInterval() {
+		return Math.max(1, getInt(JWKS_REFRESH_INTERVAL, DEFAULT_JWKS_REFRESH_INTERVAL));
+	}
+
+	/**
+	 * Audiences which are accepted in locally validated tokens. Tokens are always
+	 * introspected at oxAuth if list is empty
+	 */
+	public List<String> getJwtAudiences() {
+		List<String> result = new ArrayList<String>();
+		String audiences = getString(JWT_AUDIENCES, null);
+		if (StringHelper.isEmpty(audiences)) {
+			return result;
+		}
+
+		for (String audience : audiences.split(",")) {
+			if (StringHelper.isNotEmpty(audience.trim())) {
+				result.add(audience.trim());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Timeout in seconds of connection to oxAuth UMA endpoints
+	 */
+	public int getUmaClientConnectTimeout() {
+		return Math.max(1, getInt(UMA_CLIENT_CONNECT_TIMEOUT, DEFAULT_UMA_CLIENT_CONNECT_TIMEOUT));
+	}
+
+	/**
+	 * Timeout in seconds of oxAuth UMA endpoint response
+	 */
+	public int getUmaClientReadTimeout() {
+		return Math.max(1, getInt(UMA_CLIENT_READ_TIMEOUT, DEFAULT_UMA_CLIENT_READ_TIMEOUT));
+	}
+
+	/**
+	 * Maximum number of concurrent calls to oxAuth UMA endpoints. Other calls
+	 * fail immediately
+	 */
+	public int getUmaClientMaxConcurrency() {
+		return Math.max(1, getInt(UMA_CLIENT_MAX_CONCURRENCY, DEFAULT_UMA_CLIENT_MAX_CONCURRENCY));
+	}
+
+	/**
+	 * Number of consecutive failed calls to oxAuth UMA endpoints after which
+	 * calls are stopped
+	 */
+	public int getUmaClientFailureThreshold() {
+		return Math.max(1, getInt(UMA_CLIENT_FAILURE_THRESHOLD, DEFAULT_UMA_CLIENT_FAILURE_THRESHOLD));
+	}
+
+	/**
+	 * Time in seconds during which calls to oxAuth UMA endpoints are stopped
+	 * after failures
+	 */
+	public int getUmaClientOpenCircuitTime() {
+		return Math.max(1, getInt(UMA_CLIENT_OPEN_CIRCUIT_TIME, DEFAULT_UMA_CLIENT_OPEN_CIRCUIT_TIME));
+	}
+
+	protected String getString(String key, String defaultValue) {
+		FileConfiguration configuration = getConfiguration();
+		if (configuration == null) {
+			return defaultValue;
+		}
+
+		return configuration.getString(key, defaultValue);
+	}
+
+	protected int getInt(String key, int defaultValue) {
+		FileConfiguration configuration = getConfiguration();
+		if (configuration == null) {
+			return defaultValue;
+		}
+
+		return configuration.getInt(key, defaultValue);
+	}
+
+	protected boolean getBoolean(String key, boolean defaultValue) {
+		FileConfiguration configuration = getConfiguration();
+		if (configuration == null) {
+			return defaultValue;
+		}
+
+		return configuration.getBoolean(key, defaultValue);
+	}
+
+	private synchronized FileConfiguration getConfiguration() {
+		File configurationFile = new File(ConfigurationFactory.DIR, API_PROTECTION_PROPERTIES_FILE);
+		if (!configurationFile.exists()) {
+			this.configuration = null;
+			this.configurationLastModifiedTime = -1;
+			return null;
+		}
+
+		long lastModified = configurationFile.lastModified();
+		if (lastModified > this.configurationLastModifiedTime) {
+			log.info("Loading API protection configuration from '{}'", configurationFile);
+			this.configuration = new FileConfiguration(configurationFile.getAbsolutePath());
+			this.configurationLastModifiedTime = lastModified;
+		}
+
+		return this.configuration;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.auth;
+
+/**
+ * Stops calls to remote service after several consecutive failures. After open
+ * time one trial call is allowed. Circuit is closed again if it succeeds. If
+ * trial call doesn't finish during open time another one is allowed
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openTimeMillis;
+
+	private State state = State.CLOSED;
+	private int failures;
+	// Time when circuit was opened or when trial call was allowed
+	private long openedAt;
+
+	public CircuitBreaker(String name, int failureThreshold, long openTimeMillis) {
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openTimeMillis = openTimeMillis;
+	}
+
+	/**
+	 * Check if call is allowed. Only one caller gets permission for trial call
+	 * when open time is over
+	 */
+	public synchronized boolean allowRequest() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+
+		long now = System.currentTimeMillis();
+		if (now - openedAt >= openTimeMillis) {
+			state = State.HALF_OPEN;
+			openedAt = now;
+			return true;
+		}
+
+		return false;
+	}
+
+	public synchronized void recordSuccess() {
+		state = State.CLOSED;
+		failures = 0;
+	}
+
+	public synchronized void recordFailure() {
+		failures++;
+		if ((state == State.HALF_OPEN) || (failures >= failureThreshold)) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Record allowed call which wasn't executed or finished without result, e.g.
+	 * because there are too many concurrent calls. Only trial call of half open
+	 * circuit counts as failure
+	 */
+	public synchronized void recordRejected() {
+		if (state == State.HALF_OPEN) {
+			recordFailure();
+		}
+	}
+
+	/**
+	 * Time in milliseconds after which next trial call will be allowed
+	 */
+	public synchronized long getRemainingOpenTime() {
+		if (state != State.OPEN) {
+			return 0;
+		}
+
+		return Math.max(0, openTimeMillis - (System.currentTimeMillis() - openedAt));
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker [name=" + name + ", state=" + getState() + "]";
+	}
+
+}
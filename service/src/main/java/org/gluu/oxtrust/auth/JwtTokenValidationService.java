@@ -0,0 +1,301 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.auth;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.gluu.oxauth.client.JwkClient;
+import org.gluu.oxauth.client.JwkResponse;
+import org.gluu.oxauth.client.OpenIdConfigurationResponse;
+import org.gluu.oxauth.model.crypto.AuthCryptoProvider;
+import org.gluu.oxauth.model.crypto.signature.AlgorithmFamily;
+import org.gluu.oxauth.model.crypto.signature.SignatureAlgorithm;
+import org.gluu.oxauth.model.common.IntrospectionResponse;
+import org.gluu.oxauth.model.exception.InvalidJwtException;
+import org.gluu.oxauth.model.jwt.Jwt;
+import org.gluu.oxauth.model.jwt.JwtClaimName;
+import org.gluu.oxauth.model.jwt.JwtClaims;
+import org.gluu.oxauth.model.uma.RptIntrospectionResponse;
+import org.gluu.oxauth.model.uma.UmaPermission;
+import org.gluu.oxtrust.service.OpenIdService;
+import org.gluu.util.StringHelper;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Validates JWT access tokens and RPTs without call to oxAuth. Signature is
+ * verified with keys from oxAuth JWKS which is loaded periodically
+ */
+@ApplicationScoped
+public class JwtTokenValidationService {
+
+	// Don't reload JWKS more often because of tokens with unknown key
+	private static final long JWKS_MIN_REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+	private static final String CLAIM_SCOPE = "scope";
+	private static final String CLAIM_CLIENT_ID = "client_id";
+	private static final String CLAIM_PERMISSIONS = "permissions";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	static {
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	}
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private OpenIdService openIdService;
+
+	@Inject
+	private ApiProtectionConfiguration apiProtectionConfiguration;
+
+	private volatile JSONObject jwks;
+	private volatile String issuer;
+	private volatile long jwksLoadTime;
+
+	/**
+	 * Validate token locally
+	 *
+	 * @return Verified JWT or null if token can't be validated locally and should
+	 *         be introspected at oxAuth
+	 * @throws InvalidJwtException
+	 *             if token is JWT signed by oxAuth key but it's expired, not yet
+	 *             valid, issued for another audience or signature is wrong
+	 */
+	public Jwt validate(String token) throws InvalidJwtException {
+		if (!apiProtectionConfiguration.isLocalJwtValidationEnabled() || !isJwt(token)) {
+			return null;
+		}
+
+		// Audience of token can't be verified without allowed audiences
+		List<String> allowedAudiences = apiProtectionConfiguration.getJwtAudiences();
+		if (allowedAudiences.isEmpty()) {
+			log.trace("JWT audiences aren't configured, token will be introspected");
+			return null;
+		}
+
+		Jwt jwt;
+		try {
+			jwt = Jwt.parse(token);
+		} catch (InvalidJwtException ex) {
+			log.trace("Token isn't JWT, it will be introspected", ex);
+			return null;
+		}
+
+		SignatureAlgorithm signatureAlgorithm = jwt.getHeader().getSignatureAlgorithm();
+		String keyId = jwt.getHeader().getKeyId();
+		if ((signatureAlgorithm == null) || StringHelper.isEmpty(keyId)
+				|| (signatureAlgorithm == SignatureAlgorithm.NONE)
+				|| (signatureAlgorithm.getFamily() == AlgorithmFamily.HMAC)) {
+			// Only tokens signed with oxAuth keys can be verified locally
+			return null;
+		}
+
+		JSONObject currentJwks = getJwks(keyId);
+		if ((currentJwks == null) || !containsKey(currentJwks, keyId)) {
+			return null;
+		}
+
+		boolean validSignature;
+		try {
+			validSignature = new AuthCryptoProvider().verifySignature(jwt.getSigningInput(),
+					jwt.getEncodedSignature(), keyId, currentJwks, null, signatureAlgorithm);
+		} catch (Exception ex) {
+			log.error("Failed to verify JWT signature", ex);
+			return null;
+		}
+
+		if (!validSignature) {
+			throw new InvalidJwtException("JWT signature is invalid");
+		}
+
+		validateClaims(jwt, allowedAudiences);
+
+		return jwt;
+	}
+
+	/**
+	 * Build introspection response of locally validated access token
+	 */
+	public IntrospectionResponse toIntrospectionResponse(Jwt jwt) {
+		JwtClaims claims = jwt.getClaims();
+
+		IntrospectionResponse response = new IntrospectionResponse(true);
+		response.setScope(getScopes(claims));
+		response.setClientId(claims.getClaimAsString(CLAIM_CLIENT_ID));
+		response.setExpiresAt(toSeconds(claims.getClaimAsDate(JwtClaimName.EXPIRATION_TIME)));
+		response.setIssuedAt(toSeconds(claims.getClaimAsDate(JwtClaimName.ISSUED_AT)));
+
+		return response;
+	}
+
+	/**
+	 * Build status response of locally validated RPT
+	 * 
+	 * @return Status response or null if RPT doesn't contain permissions and
+	 *         should be introspected at oxAuth
+	 */
+	public RptIntrospectionResponse toRptIntrospectionResponse(Jwt jwt) {
+		JwtClaims claims = jwt.getClaims();
+		Object permissionsClaim = claims.getClaim(CLAIM_PERMISSIONS);
+		if (permissionsClaim == null) {
+			return null;
+		}
+
+		List<UmaPermission> permissions;
+		try {
+			permissions = mapper.readValue(permissionsClaim.toString(), new TypeReference<List<UmaPermission>>() {
+			});
+		} catch (Exception ex) {
+			log.error("Failed to parse RPT permissions", ex);
+			return null;
+		}
+
+		RptIntrospectionResponse response = new RptIntrospectionResponse();
+		response.setActive(true);
+		response.setPermissions(permissions);
+		response.setExpiresAt(toSeconds(claims.getClaimAsDate(JwtClaimName.EXPIRATION_TIME)));
+		response.setIssuedAt(toSeconds(claims.getClaimAsDate(JwtClaimName.ISSUED_AT)));
+
+		return response;
+	}
+
+	private List<String> getScopes(JwtClaims claims) {
+		List<String> result = new ArrayList<String>();
+		List<String> scopes = claims.getClaimAsStringList(CLAIM_SCOPE);
+		if (scopes == null) {
+			return result;
+		}
+
+		// Scopes can be JSON array or space separated string
+		for (String scope : scopes) {
+			for (String scopeValue : scope.split(" ")) {
+				if (StringHelper.isNotEmpty(scopeValue)) {
+					result.add(scopeValue);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private Integer toSeconds(Date date) {
+		if (date == null) {
+			return null;
+		}
+
+		return (int) TimeUnit.MILLISECONDS.toSeconds(date.getTime());
+	}
+
+	private void validateClaims(Jwt jwt, List<String> allowedAudiences) throws InvalidJwtException {
+		long now = System.currentTimeMillis();
+		Date expirationTime = jwt.getClaims().getClaimAsDate(JwtClaimName.EXPIRATION_TIME);
+		if ((expirationTime == null) || (expirationTime.getTime() <= now)) {
+			throw new InvalidJwtException("JWT is expired");
+		}
+
+		Date notBefore = jwt.getClaims().getClaimAsDate(JwtClaimName.NOT_BEFORE);
+		if ((notBefore != null) && (notBefore.getTime() > now)) {
+			throw new InvalidJwtException("JWT is not yet valid");
+		}
+
+		String tokenIssuer = jwt.getClaims().getClaimAsString(JwtClaimName.ISSUER);
+		if (StringHelper.isNotEmpty(this.issuer) && !StringHelper.equals(this.issuer, tokenIssuer)) {
+			throw new InvalidJwtException("JWT issuer is invalid");
+		}
+
+		List<String> audiences = jwt.getClaims().getClaimAsStringList(JwtClaimName.AUDIENCE);
+		if ((audiences == null) || Collections.disjoint(audiences, allowedAudiences)) {
+			throw new InvalidJwtException("JWT audience is invalid");
+		}
+	}
+
+	private JSONObject getJwks(String keyId) {
+		if (isJwksReloadNeeded(keyId)) {
+			synchronized (this) {
+				if (isJwksReloadNeeded(keyId)) {
+					loadJwks();
+				}
+			}
+		}
+
+		return this.jwks;
+	}
+
+	private boolean isJwksReloadNeeded(String keyId) {
+		long loadAge = System.currentTimeMillis() - this.jwksLoadTime;
+		if (loadAge <= JWKS_MIN_REFRESH_INTERVAL) {
+			return false;
+		}
+
+		JSONObject currentJwks = this.jwks;
+		return (currentJwks == null) || !containsKey(currentJwks, keyId)
+				|| (loadAge > TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getJwksRefreshInterval()));
+	}
+
+	private void loadJwks() {
+		this.jwksLoadTime = System.currentTimeMillis();
+
+		try {
+			OpenIdConfigurationResponse openIdConfiguration = openIdService.getOpenIdConfiguration();
+			if ((openIdConfiguration == null) || StringHelper.isEmpty(openIdConfiguration.getJwksUri())) {
+				log.error("Failed to determine oxAuth JWKS URI");
+				return;
+			}
+
+			JwkResponse jwkResponse = new JwkClient(openIdConfiguration.getJwksUri()).exec();
+			if ((jwkResponse == null) || (jwkResponse.getStatus() != 200)) {
+				log.error("Failed to load oxAuth JWKS, status: {}",
+						(jwkResponse == null) ? null : jwkResponse.getStatus());
+				return;
+			}
+
+			this.issuer = openIdConfiguration.getIssuer();
+			this.jwks = new JSONObject(jwkResponse.getEntity());
+			log.debug("Loaded oxAuth JWKS from '{}'", openIdConfiguration.getJwksUri());
+		} catch (Exception ex) {
+			log.error("Failed to load oxAuth JWKS", ex);
+		}
+	}
+
+	private boolean containsKey(JSONObject jwks, String keyId) {
+		if (!jwks.has("keys")) {
+			return false;
+		}
+
+		for (Object key : jwks.getJSONArray("keys")) {
+			if ((key instanceof JSONObject) && keyId.equals(((JSONObject) key).optString("kid"))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean isJwt(String token) {
+		if (StringHelper.isEmpty(token)) {
+			return false;
+		}
+
+		int firstDot = token.indexOf('.');
+		return (firstDot > 0) && (token.indexOf('.', firstDot + 1) > firstDot + 1);
+	}
+
+}
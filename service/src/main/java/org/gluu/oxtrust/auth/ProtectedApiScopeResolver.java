@@ -0,0 +1,119 @@
+package org.gluu.oxtrust.auth;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.container.ResourceInfo;
+
+import org.gluu.oxtrust.service.filter.ProtectedApi;
+
+/**
+ * Provides scopes required by {@link ProtectedApi} annotations of resource
+ * class and method. Annotations are read once per resource method
+ */
+@ApplicationScoped
+public class ProtectedApiScopeResolver {
+
+    private final Map<ResourceKey, RequiredScopes> requiredScopes = new ConcurrentHashMap<>();
+
+    /**
+     * UMA scopes required by resource class and method
+     */
+    public List<String> getScopes(ResourceInfo resourceInfo) {
+        return getRequiredScopes(resourceInfo).getScopes();
+    }
+
+    /**
+     * OAuth scopes required by resource class and method
+     */
+    public List<String> getOAuthScopes(ResourceInfo resourceInfo) {
+        return getRequiredScopes(resourceInfo).getOAuthScopes();
+    }
+
+    private RequiredScopes getRequiredScopes(ResourceInfo resourceInfo) {
+        ResourceKey key = new ResourceKey(resourceInfo.getResourceClass(), resourceInfo.getResourceMethod());
+        return requiredScopes.computeIfAbsent(key, k -> new RequiredScopes(
+                collectScopes(k.resourceClass, k.resourceMethod, ProtectedApi::scopes),
+                collectScopes(k.resourceClass, k.resourceMethod, ProtectedApi::oauthScopes)));
+    }
+
+    private List<String> collectScopes(Class<?> resourceClass, Method resourceMethod,
+            Function<ProtectedApi, String[]> scopesGetter) {
+        List<String> scopes = new ArrayList<>();
+        addScopes(resourceClass, scopesGetter, scopes);
+        addScopes(resourceMethod, scopesGetter, scopes);
+        return Collections.unmodifiableList(scopes);
+    }
+
+    private void addScopes(AnnotatedElement elem, Function<ProtectedApi, String[]> scopesGetter,
+            List<String> scopes) {
+        if (elem == null) {
+            return;
+        }
+
+        ProtectedApi annotation = elem.getAnnotation(ProtectedApi.class);
+        if (annotation != null) {
+            scopes.addAll(Arrays.asList(scopesGetter.apply(annotation)));
+        }
+    }
+
+    private static class RequiredScopes {
+
+        private final List<String> scopes;
+        private final List<String> oauthScopes;
+
+        RequiredScopes(List<String> scopes, List<String> oauthScopes) {
+            this.scopes = scopes;
+            this.oauthScopes = oauthScopes;
+        }
+
+        List<String> getScopes() {
+            return scopes;
+        }
+
+        List<String> getOAuthScopes() {
+            return oauthScopes;
+        }
+
+    }
+
+    private static class ResourceKey {
+
+        private final Class<?> resourceClass;
+        private final Method resourceMethod;
+
+        ResourceKey(Class<?> resourceClass, Method resourceMethod) {
+            this.resourceClass = resourceClass;
+            this.resourceMethod = resourceMethod;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(resourceClass, resourceMethod);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ResourceKey)) {
+                return false;
+            }
+            ResourceKey other = (ResourceKey) obj;
+            return Objects.equals(resourceClass, other.resourceClass)
+                    && Objects.equals(resourceMethod, other.resourceMethod);
+        }
+
+    }
+
+}
@@ -1,9 +1,9 @@
 package org.gluu.oxtrust.auth;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -29,24 +29,28 @@ public class ProtectionServiceSelector {
     @Inject
     private Instance<GluuRestService> gluuRestServiceInstance;
 
-    private Map<String, Class<GluuRestService>> mapping;
+    // Sorted by pattern length descending to select longest matching pattern
+    private List<Route> routes;
 
     public GluuRestService select(String path) {
 
-        return mapping.keySet().stream().filter(path::startsWith).findFirst()
-            .map(mapping::get).map(gluuRestServiceInstance::select)
-            .map(Instance::get).orElse(null);              
-        
+        for (Route route : routes) {
+            if (path.startsWith(route.getPattern())) {
+                return route.getService();
+            }
+        }
+        return null;
+
     }
     /**
-     * Builds a map around url patterns and service beans that are aimed to perform
+     * Builds a table of url patterns and service beans that are aimed to perform
      * actual protection
      */
     @SuppressWarnings("unchecked")
     @PostConstruct
     private void init() {
         
-        mapping = new HashMap<>();
+        List<Route> routes = new ArrayList<>();
         Set<Bean<?>> beans = beanManager.getBeans(GluuRestService.class, Any.Literal.INSTANCE);
 
         for (Bean bean : beans) {
@@ -57,12 +61,50 @@ public class ProtectionServiceSelector {
                 .map(Arrays::asList).orElse(Collections.emptyList())
                 .forEach(pattern -> {
                     if (pattern.length() > 0) {
-                        mapping.put(pattern, beanClass);
+                        routes.add(new Route(pattern, beanClass));
                     }
                 });
 
         }
 
+        routes.sort((route1, route2) -> {
+            int result = Integer.compare(route2.getPattern().length(), route1.getPattern().length());
+            return (result == 0) ? route1.getPattern().compareTo(route2.getPattern()) : result;
+        });
+        log.debug("REST services protection routes: {}", routes);
+
+        this.routes = routes;
+
+    }
+
+    private class Route {
+
+        private final String pattern;
+        private final Class<? extends GluuRestService> serviceClass;
+        private volatile GluuRestService service;
+
+        Route(String pattern, Class<? extends GluuRestService> serviceClass) {
+            this.pattern = pattern;
+            this.serviceClass = serviceClass;
+        }
+
+        String getPattern() {
+            return pattern;
+        }
+
+        GluuRestService getService() {
+            // Beans are application scoped, resolved contextual reference can be reused
+            if (service == null) {
+                service = gluuRestServiceInstance.select(serviceClass).get();
+            }
+            return service;
+        }
+
+        @Override
+        public String toString() {
+            return pattern + " -> " + serviceClass.getSimpleName();
+        }
+
     }
     
 }
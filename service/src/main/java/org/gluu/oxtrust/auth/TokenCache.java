@@ -0,0 +1,346 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of token introspection results. Tokens are kept as
+ * SHA-256 hashes only. Entry expires after time to live but not later than
+ * token expiration time. Optionally entry expires if it wasn't used during time
+ * to idle. Calls which wait for concurrent load of same token give up after
+ * load wait timeout
+ */
+public class TokenCache<V> {
+
+	public static final long DEFAULT_LOAD_WAIT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+	private final int maxSize;
+	private final long timeToLiveMillis;
+	private final long timeToIdleMillis;
+	private final long loadWaitTimeoutMillis;
+
+	private final Map<String, CacheEntry<V>> entries;
+	private final Map<String, CompletableFuture<V>> loadings;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Loads result of token which is not in cache
+	 */
+	public interface Loader<V> {
+
+		V load() throws Exception;
+
+		/**
+		 * Get expiration time of loaded result
+		 *
+		 * @return Token expiration time in milliseconds, 0 if it's unknown or -1 if
+		 *         result should not be cached
+		 */
+		long getExpiresAt(V value);
+
+	}
+
+	public TokenCache(int maxSize, long timeToLiveMillis) {
+		this(maxSize, timeToLiveMillis, 0);
+	}
+
+	public TokenCache(int maxSize, long timeToLiveMillis, long timeToIdleMillis) {
+		this(maxSize, timeToLiveMillis, timeToIdleMillis, DEFAULT_LOAD_WAIT_TIMEOUT);
+	}
+
+	public TokenCache(int maxSize, long timeToLiveMillis, long timeToIdleMillis, long loadWaitTimeoutMillis) {
+		this.maxSize = maxSize;
+		this.timeToLiveMillis = timeToLiveMillis;
+		this.timeToIdleMillis = timeToIdleMillis;
+		this.loadWaitTimeoutMillis = loadWaitTimeoutMillis;
+		this.entries = new ConcurrentHashMap<String, CacheEntry<V>>();
+		this.loadings = new ConcurrentHashMap<String, CompletableFuture<V>>();
+	}
+
+	/**
+	 * Get cached result of token
+	 *
+	 * @return Cached result or null if there is no result or it's expired
+	 */
+	public V get(String token) {
+		return getByKey(hash(token));
+	}
+
+	/**
+	 * Get cached result of token or load it. Concurrent calls with same token
+	 * wait for result of first call instead of loading it again
+	 *
+	 * @throws TimeoutException
+	 *             if concurrent call didn't load result during load wait timeout
+	 */
+	public V getOrLoad(String token, Loader<V> loader) throws Exception {
+		String key = hash(token);
+		V value = getByKey(key);
+		if (value != null) {
+			return value;
+		}
+
+		CompletableFuture<V> loading = new CompletableFuture<V>();
+		CompletableFuture<V> currentLoading = loadings.putIfAbsent(key, loading);
+		if (currentLoading != null) {
+			coalesced.incrementAndGet();
+			try {
+				return currentLoading.get(loadWaitTimeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException ex) {
+				throw new TimeoutException("Timed out waiting for concurrent load of token result");
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof Exception) {
+					throw (Exception) ex.getCause();
+				}
+				throw ex;
+			}
+		}
+
+		try {
+			value = loader.load();
+			if (value != null) {
+				long expiresAt = loader.getExpiresAt(value);
+				if (expiresAt >= 0) {
+					putByKey(key, value, expiresAt);
+				}
+			}
+			loading.complete(value);
+
+			return value;
+		} catch (Exception ex) {
+			loading.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			if (!loading.isDone()) {
+				loading.completeExceptionally(new IllegalStateException("Failed to load token result"));
+			}
+			loadings.remove(key, loading);
+		}
+	}
+
+	private V getByKey(String key) {
+		CacheEntry<V> entry = entries.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		if (entry.isExpired(System.currentTimeMillis())) {
+			entries.remove(key, entry);
+			evictions.incrementAndGet();
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		entry.setLastAccessTime(System.currentTimeMillis());
+		return entry.getValue();
+	}
+
+	/**
+	 * Put result of token into cache
+	 *
+	 * @param expiresAt
+	 *            Token expiration time in milliseconds or 0 if it's unknown
+	 */
+	public void put(String token, V value, long expiresAt) {
+		putByKey(hash(token), value, expiresAt);
+	}
+
+	private void putByKey(String key, V value, long expiresAt) {
+		long now = System.currentTimeMillis();
+		long entryExpiresAt = now + timeToLiveMillis;
+		if (expiresAt > 0) {
+			entryExpiresAt = Math.min(entryExpiresAt, expiresAt);
+		}
+
+		if (entryExpiresAt <= now) {
+			return;
+		}
+
+		if (entries.size() >= maxSize) {
+			evict(now);
+		}
+
+		entries.put(key, new CacheEntry<V>(value, entryExpiresAt, timeToIdleMillis, now));
+	}
+
+	public void remove(String token) {
+		if (entries.remove(hash(token)) != null) {
+			evictions.incrementAndGet();
+		}
+	}
+
+	public void clear() {
+		evictions.addAndGet(entries.size());
+		entries.clear();
+	}
+
+	public Statistics getStatistics() {
+		return new Statistics(hits.get(), misses.get(), evictions.get(), coalesced.get(), entries.size());
+	}
+
+	/**
+	 * Remove expired entries. If cache is still full remove tenth of entries
+	 * which expire first
+	 */
+	private synchronized void evict(long now) {
+		if (entries.size() < maxSize) {
+			return;
+		}
+
+		removeExpiringBefore(now);
+		if (entries.size() < maxSize) {
+			return;
+		}
+
+		long[] expirationTimes = new long[entries.size()];
+		int count = 0;
+		for (CacheEntry<V> entry : entries.values()) {
+			if (count == expirationTimes.length) {
+				break;
+			}
+			expirationTimes[count++] = entry.getEffectiveExpiresAt();
+		}
+		if (count == 0) {
+			// Entries were removed concurrently
+			return;
+		}
+		Arrays.sort(expirationTimes, 0, count);
+
+		removeExpiringBefore(expirationTimes[Math.min(count / 10, count - 1)] + 1);
+	}
+
+	private void removeExpiringBefore(long time) {
+		for (Iterator<CacheEntry<V>> it = entries.values().iterator(); it.hasNext();) {
+			if (it.next().isExpired(time)) {
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private static String hash(String token) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not supported", ex);
+		}
+	}
+
+	private static class CacheEntry<V> {
+
+		private final V value;
+		private final long expiresAt;
+		private final long timeToIdle;
+		private volatile long lastAccessTime;
+
+		public CacheEntry(V value, long expiresAt, long timeToIdle, long lastAccessTime) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+			this.timeToIdle = timeToIdle;
+			this.lastAccessTime = lastAccessTime;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public void setLastAccessTime(long lastAccessTime) {
+			this.lastAccessTime = lastAccessTime;
+		}
+
+		public long getEffectiveExpiresAt() {
+			if (timeToIdle > 0) {
+				return Math.min(expiresAt, lastAccessTime + timeToIdle);
+			}
+
+			return expiresAt;
+		}
+
+		public boolean isExpired(long now) {
+			return getEffectiveExpiresAt() <= now;
+		}
+
+	}
+
+	/**
+	 * Hit, miss and eviction counters of cache. Coalesced counter contains
+	 * number of calls which waited for result of concurrent call with same token
+	 */
+	public static class Statistics {
+
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final long coalesced;
+		private final int size;
+
+		public Statistics(long hits, long misses, long evictions, long coalesced, int size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.coalesced = coalesced;
+			this.size = size;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public long getEvictions() {
+			return evictions;
+		}
+
+		public long getCoalesced() {
+			return coalesced;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public double getHitRatio() {
+			long requests = hits + misses;
+			if (requests == 0) {
+				return 0;
+			}
+
+			return (double) hits / requests;
+		}
+
+		@Override
+		public String toString() {
+			return "Statistics [hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", coalesced="
+					+ coalesced + ", size=" + size + "]";
+		}
+
+	}
+
+}
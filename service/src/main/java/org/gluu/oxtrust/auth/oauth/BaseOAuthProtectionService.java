@@ -1,7 +1,6 @@
 package org.gluu.oxtrust.auth.oauth;
 
 import java.io.Serializable;
-import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.ws.rs.container.ResourceInfo;
 import javax.ws.rs.core.HttpHeaders;
@@ -9,11 +8,8 @@ import javax.ws.rs.core.Response;
 
 import org.apache.commons.lang.StringUtils;
 
-import org.gluu.oxauth.client.service.ClientFactory;
-import org.gluu.oxauth.client.service.IntrospectionService;
 import org.gluu.oxauth.model.common.IntrospectionResponse;
 import org.gluu.oxtrust.auth.IProtectionService;
-import org.gluu.oxtrust.service.JsonConfigurationService;
 
 import org.slf4j.Logger;
 
@@ -25,9 +21,7 @@ public abstract class BaseOAuthProtectionService implements IProtectionService,
     private Logger log;
 
     @Inject
-    private JsonConfigurationService jsonConfigurationService;
-    
-    private IntrospectionService introspectionService;
+    private TokenIntrospectionService tokenIntrospectionService;
 
     protected abstract Response processIntrospectionResponse(IntrospectionResponse response,
             ResourceInfo resourceInfo);
@@ -45,12 +39,7 @@ public abstract class BaseOAuthProtectionService implements IProtectionService,
                 token = token.replaceFirst("Bearer\\s+","");
                 log.debug("Validating token {}", token);
 
-                IntrospectionResponse iresp = null;
-                try {
-                    iresp = introspectionService.introspectToken("Bearer " + token, token);
-                } catch (Exception e) {
-                    log.error(e.getMessage());
-                }
+                IntrospectionResponse iresp = tokenIntrospectionService.introspectToken(token);
                 authorizationResponse = processIntrospectionResponse(iresp, resourceInfo);
 
             } else {
@@ -67,20 +56,5 @@ public abstract class BaseOAuthProtectionService implements IProtectionService,
         return authorizationResponse;
 
     }
-    
-    @PostConstruct
-    private void init() {
-
-        try {
-            String introspectionEndpoint = jsonConfigurationService.getOxauthAppConfiguration()
-                    .getIntrospectionEndpoint();
-            
-            introspectionService = ClientFactory.instance().createIntrospectionService(
-            	introspectionEndpoint, ClientFactory.instance().createEngine());
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-        }
-        
-    }
 
 }
@@ -1,10 +1,5 @@
 package org.gluu.oxtrust.auth.oauth;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.AnnotatedElement;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,7 +10,7 @@ import javax.ws.rs.core.Response;
 
 import org.gluu.oxauth.model.common.IntrospectionResponse;
 import org.gluu.oxtrust.auth.IProtectionService;
-import org.gluu.oxtrust.service.filter.ProtectedApi;
+import org.gluu.oxtrust.auth.ProtectedApiScopeResolver;
 
 import org.slf4j.Logger;
 
@@ -24,12 +19,15 @@ public class DefaultOAuthProtectionService extends BaseOAuthProtectionService {
 
     @Inject
     private Logger log;
+
+    @Inject
+    private ProtectedApiScopeResolver protectedApiScopeResolver;
     
     public Response processIntrospectionResponse(IntrospectionResponse iresponse,
             ResourceInfo resourceInfo) {
         
         Response response = null;
-        List<String> scopes = getRequestedScopes(resourceInfo);
+        List<String> scopes = protectedApiScopeResolver.getOAuthScopes(resourceInfo);
         log.info("Call requires scopes: {}", scopes);	
         List<String> tokenScopes = Optional.ofNullable(iresponse).map(IntrospectionResponse::getScope)
                 .orElse(null);
@@ -44,23 +42,4 @@ public class DefaultOAuthProtectionService extends BaseOAuthProtectionService {
 
     }
 
-    private List<String> getRequestedScopes(ResourceInfo resourceInfo) {
-        
-        List<String> scopes = new ArrayList<>();
-        scopes.addAll(getScopesFromAnnotation(resourceInfo.getResourceClass()));
-        scopes.addAll(getScopesFromAnnotation(resourceInfo.getResourceMethod()));
-        return scopes;
-        
-    }
-
-    private List<String> getScopesFromAnnotation(AnnotatedElement elem) {		
-        return optAnnnotation(elem, ProtectedApi.class).map(ProtectedApi::oauthScopes)
-            .map(Arrays::asList).orElse(Collections.emptyList());
-    }	
-
-    private static <T extends Annotation> Optional<T> optAnnnotation(AnnotatedElement elem,
-            Class<T> cls) {
-        return Optional.ofNullable(elem.getAnnotation(cls));
-    }
-    
 }
@@ -0,0 +1,195 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.auth.oauth;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.gluu.oxauth.client.service.ClientFactory;
+import org.gluu.oxauth.client.service.IntrospectionService;
+import org.gluu.oxauth.model.common.IntrospectionResponse;
+import org.gluu.oxauth.model.exception.InvalidJwtException;
+import org.gluu.oxauth.model.jwt.Jwt;
+import org.gluu.oxtrust.auth.ApiProtectionConfiguration;
+import org.gluu.oxtrust.auth.JwtTokenValidationService;
+import org.gluu.oxtrust.auth.TokenCache;
+import org.gluu.oxtrust.service.JsonConfigurationService;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
+import org.slf4j.Logger;
+
+/**
+ * Introspects access tokens at oxAuth. Results of active tokens are shared by
+ * all OAuth protection services and reused until token expires. Concurrent
+ * requests with same token trigger one introspection call. JWT access tokens
+ * are validated locally if it's enabled. Calls to oxAuth use own pool of
+ * connections with connect and read timeouts
+ */
+@ApplicationScoped
+public class TokenIntrospectionService {
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private JsonConfigurationService jsonConfigurationService;
+
+	@Inject
+	private ApiProtectionConfiguration apiProtectionConfiguration;
+
+	@Inject
+	private JwtTokenValidationService jwtTokenValidationService;
+
+	private IntrospectionService introspectionService;
+	private PoolingHttpClientConnectionManager connectionManager;
+
+	private TokenCache<IntrospectionResponse> introspectionCache;
+
+	@PostConstruct
+	public void init() {
+		try {
+			String introspectionEndpoint = jsonConfigurationService.getOxauthAppConfiguration()
+					.getIntrospectionEndpoint();
+
+			introspectionService = ClientFactory.instance().createIntrospectionService(introspectionEndpoint,
+					createEngine());
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+
+		if (apiProtectionConfiguration.isIntrospectionCacheEnabled()) {
+			// Concurrent requests with same token don't wait longer than oxAuth call
+			long loadWaitTimeout = apiProtectionConfiguration.getIntrospectionClientConnectTimeout()
+					+ apiProtectionConfiguration.getIntrospectionClientReadTimeout();
+			this.introspectionCache = new TokenCache<IntrospectionResponse>(
+					apiProtectionConfiguration.getIntrospectionCacheMaxSize(),
+					TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getIntrospectionCacheTimeToLive()),
+					TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getIntrospectionCacheTimeToIdle()),
+					TimeUnit.SECONDS.toMillis(loadWaitTimeout));
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (this.connectionManager != null) {
+			this.connectionManager.shutdown();
+		}
+	}
+
+	private ApacheHttpClient43Engine createEngine() {
+		int connectTimeout = (int) TimeUnit.SECONDS
+				.toMillis(apiProtectionConfiguration.getIntrospectionClientConnectTimeout());
+		int readTimeout = (int) TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getIntrospectionClientReadTimeout());
+		int maxConnections = apiProtectionConfiguration.getIntrospectionClientMaxConnections();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		CloseableHttpClient client = HttpClients.custom()
+				.setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD)
+						.setConnectTimeout(connectTimeout).setConnectionRequestTimeout(connectTimeout)
+						.setSocketTimeout(readTimeout).build())
+				.setConnectionManager(connectionManager).build();
+
+		ApacheHttpClient43Engine engine = new ApacheHttpClient43Engine(client);
+		engine.setFollowRedirects(true);
+		this.connectionManager = connectionManager;
+
+		return engine;
+	}
+
+	/**
+	 * Get introspection response of token
+	 * 
+	 * @return Introspection response or null if token can't be introspected
+	 */
+	public IntrospectionResponse introspectToken(final String token) {
+		try {
+			if (introspectionCache == null) {
+				return loadIntrospection(token);
+			}
+
+			return introspectionCache.getOrLoad(token, new TokenCache.Loader<IntrospectionResponse>() {
+				@Override
+				public IntrospectionResponse load() {
+					return loadIntrospection(token);
+				}
+
+				@Override
+				public long getExpiresAt(IntrospectionResponse response) {
+					// Inactive token might be not yet known by oxAuth, don't keep it
+					if (!response.isActive()) {
+						return -1;
+					}
+
+					if (response.getExpiresAt() == null) {
+						return 0;
+					}
+
+					return TimeUnit.SECONDS.toMillis(response.getExpiresAt());
+				}
+			});
+		} catch (Exception e) {
+			log.error(e.getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Remove cached introspection response of token, e.g. after token revocation
+	 */
+	public void evictToken(String token) {
+		if (introspectionCache != null) {
+			introspectionCache.remove(token);
+		}
+	}
+
+	public void clearCache() {
+		if (introspectionCache != null) {
+			introspectionCache.clear();
+		}
+	}
+
+	/**
+	 * Hit and miss counters of introspection cache or null if cache is disabled
+	 */
+	public TokenCache.Statistics getCacheStatistics() {
+		if (introspectionCache == null) {
+			return null;
+		}
+
+		return introspectionCache.getStatistics();
+	}
+
+	private IntrospectionResponse loadIntrospection(String token) {
+		try {
+			Jwt jwt = jwtTokenValidationService.validate(token);
+			if (jwt != null) {
+				return jwtTokenValidationService.toIntrospectionResponse(jwt);
+			}
+		} catch (InvalidJwtException ex) {
+			log.debug("Access token is invalid: {}", ex.getMessage());
+			return new IntrospectionResponse(false);
+		}
+
+		return requestIntrospection(token);
+	}
+
+	private IntrospectionResponse requestIntrospection(String token) {
+		return introspectionService.introspectToken("Bearer " + token, token);
+	}
+
+}
@@ -1,13 +1,9 @@
 package org.gluu.oxtrust.auth.uma;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.inject.Inject;
 import javax.ws.rs.container.ResourceInfo;
@@ -20,9 +16,9 @@ import org.gluu.oxauth.client.uma.wrapper.UmaClient;
 import org.gluu.oxauth.model.uma.UmaMetadata;
 import org.gluu.oxauth.model.uma.wrapper.Token;
 import org.gluu.oxtrust.auth.IProtectionService;
+import org.gluu.oxtrust.auth.ProtectedApiScopeResolver;
 import org.gluu.oxtrust.exception.UmaProtectionException;
 import org.gluu.oxtrust.service.EncryptionService;
-import org.gluu.oxtrust.service.filter.ProtectedApi;
 import org.gluu.util.Pair;
 import org.gluu.util.StringHelper;
 import org.gluu.util.security.StringEncrypter.EncryptionException;
@@ -48,6 +44,9 @@ public abstract class BaseUmaProtectionService implements IProtectionService, Se
 	@Inject
 	protected UmaPermissionService umaPermissionService;
 
+	@Inject
+	private ProtectedApiScopeResolver protectedApiScopeResolver;
+
 	private Token umaPat;
 	private long umaPatAccessTokenExpiration = 0l; // When the "accessToken" will expire;
 
@@ -181,24 +180,7 @@ public abstract class BaseUmaProtectionService implements IProtectionService, Se
 	}
 
 	public List<String> getRequestedScopes(ResourceInfo resourceInfo) {
-		Class<?> resourceClass = resourceInfo.getResourceClass();
-		ProtectedApi typeAnnotation = resourceClass.getAnnotation(ProtectedApi.class);
-		List<String> scopes = new ArrayList<String>();
-		if (typeAnnotation == null) {
-			addMethodScopes(resourceInfo, scopes);
-		} else {
-			scopes.addAll(Stream.of(typeAnnotation.scopes()).collect(Collectors.toList()));
-			addMethodScopes(resourceInfo, scopes);
-		}
-		return scopes;
-	}
-
-	private void addMethodScopes(ResourceInfo resourceInfo, List<String> scopes) {
-		Method resourceMethod = resourceInfo.getResourceMethod();
-		ProtectedApi methodAnnotation = resourceMethod.getAnnotation(ProtectedApi.class);
-		if (methodAnnotation != null) {
-			scopes.addAll(Stream.of(methodAnnotation.scopes()).collect(Collectors.toList()));
-		}
+		return protectedApiScopeResolver.getScopes(resourceInfo);
 	}
 
 	protected abstract String getClientId();
@@ -6,12 +6,23 @@ import java.net.URL;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.core.Response;
 
 import org.apache.http.HeaderElement;
@@ -31,12 +42,18 @@ import org.gluu.exception.OxIntializationException;
 import org.gluu.oxauth.client.uma.UmaClientFactory;
 import org.gluu.oxauth.client.uma.UmaMetadataService;
 import org.gluu.oxauth.client.uma.UmaRptIntrospectionService;
+import org.gluu.oxauth.model.exception.InvalidJwtException;
+import org.gluu.oxauth.model.jwt.Jwt;
 import org.gluu.oxauth.model.uma.PermissionTicket;
 import org.gluu.oxauth.model.uma.RptIntrospectionResponse;
 import org.gluu.oxauth.model.uma.UmaMetadata;
 import org.gluu.oxauth.model.uma.UmaPermission;
 import org.gluu.oxauth.model.uma.UmaPermissionList;
 import org.gluu.oxauth.model.uma.wrapper.Token;
+import org.gluu.oxtrust.auth.ApiProtectionConfiguration;
+import org.gluu.oxtrust.auth.CircuitBreaker;
+import org.gluu.oxtrust.auth.JwtTokenValidationService;
+import org.gluu.oxtrust.auth.TokenCache;
 import org.gluu.service.cdi.event.ApplicationInitialized;
 import org.gluu.service.cdi.event.ApplicationInitializedEvent;
 import org.gluu.util.Pair;
@@ -56,6 +73,14 @@ public class UmaPermissionService implements Serializable {
 
 	private static final long serialVersionUID = -3347131971095468866L;
 
+	// Cache time of RPT status response without expiration time
+	private static final long RPT_CACHE_DEFAULT_EXPIRATION = TimeUnit.MINUTES.toMillis(1);
+
+	// Connection pool settings which are used if they are not set in configuration
+	private static final int DEFAULT_CONNECTION_POOL_MAX_TOTAL = 200;
+	private static final int DEFAULT_CONNECTION_POOL_MAX_PER_ROUTE = 50;
+	private static final int DEFAULT_CONNECTION_POOL_VALIDATE_AFTER_INACTIVITY = 10;
+
 	@Inject
 	private Logger log;
 
@@ -65,6 +90,12 @@ public class UmaPermissionService implements Serializable {
 	@Inject
 	protected AppConfiguration appConfiguration;
 
+	@Inject
+	private JwtTokenValidationService jwtTokenValidationService;
+
+	@Inject
+	private ApiProtectionConfiguration apiProtectionConfiguration;
+
 	private org.gluu.oxauth.client.uma.UmaPermissionService permissionService;
 	private UmaRptIntrospectionService rptStatusService;
 
@@ -72,47 +103,159 @@ public class UmaPermissionService implements Serializable {
 	private final Pair<Boolean, Response> authenticationSuccess = new Pair<Boolean, Response>(true, null);
 
 	private ClientHttpEngine clientHttpEngine;
+	private transient PoolingHttpClientConnectionManager connectionManager;
+
+	private transient ThreadPoolExecutor umaRequestExecutor;
+	private transient CircuitBreaker umaCircuitBreaker;
+
+	private transient TokenCache<RptIntrospectionResponse> rptStatusCache;
+
+	@PostConstruct
+	public void initRptStatusCache() {
+		if (apiProtectionConfiguration.isRptCacheEnabled()) {
+			this.rptStatusCache = new TokenCache<RptIntrospectionResponse>(
+					apiProtectionConfiguration.getRptCacheMaxSize(),
+					TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getRptCacheTimeToLive()),
+					TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getRptCacheTimeToIdle()));
+		}
+	}
 
 	public void init(@Observes @ApplicationInitialized(ApplicationScoped.class) ApplicationInitializedEvent init) {
 		try {
 			if (this.umaMetadata != null) {
-				if (appConfiguration.isRptConnectionPoolUseConnectionPooling()) {
-
-					// For more information about PoolingHttpClientConnectionManager, please see:
-					// http://hc.apache.org/httpcomponents-client-ga/httpclient/apidocs/index.html?org/apache/http/impl/conn/PoolingHttpClientConnectionManager.html
-
-					log.debug("##### Initializing custom ClientExecutor...");
-					PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-					connectionManager.setMaxTotal(appConfiguration.getRptConnectionPoolMaxTotal());
-					connectionManager.setDefaultMaxPerRoute(appConfiguration.getRptConnectionPoolDefaultMaxPerRoute());
-					connectionManager.setValidateAfterInactivity(
-							appConfiguration.getRptConnectionPoolValidateAfterInactivity() * 1000);
-					CloseableHttpClient client = HttpClients.custom()
-							.setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD).build())
-							.setKeepAliveStrategy(connectionKeepAliveStrategy).setConnectionManager(connectionManager)
-							.build();
-
-					ApacheHttpClient43Engine engine = new ApacheHttpClient43Engine(client);
-					engine.setFollowRedirects(true);
-					this.clientHttpEngine = engine;
-					
-					log.info("##### Initializing custom ClientExecutor DONE");
-
-					this.permissionService = UmaClientFactory.instance().createPermissionService(this.umaMetadata,
-							clientHttpEngine);
-					this.rptStatusService = UmaClientFactory.instance().createRptStatusService(this.umaMetadata,
-							clientHttpEngine);
-
-				} else {
-					this.permissionService = UmaClientFactory.instance().createPermissionService(this.umaMetadata);
-					this.rptStatusService = UmaClientFactory.instance().createRptStatusService(this.umaMetadata);
-				}
+				initUmaClient();
+
+				this.permissionService = UmaClientFactory.instance().createPermissionService(this.umaMetadata,
+						clientHttpEngine);
+				this.rptStatusService = UmaClientFactory.instance().createRptStatusService(this.umaMetadata,
+						clientHttpEngine);
 			}
 		} catch (Exception ex) {
 			log.error("Failed to initialize UmaPermissionService", ex);
 		}
 	}
 
+	/**
+	 * Prepare pooled client which is shared by all calls to oxAuth UMA endpoints.
+	 * Calls are executed by bounded pool of workers and are stopped for some time
+	 * if oxAuth fails
+	 */
+	private synchronized void initUmaClient() {
+		if (this.clientHttpEngine != null) {
+			return;
+		}
+
+		// For more information about PoolingHttpClientConnectionManager, please see:
+		// http://hc.apache.org/httpcomponents-client-ga/httpclient/apidocs/index.html?org/apache/http/impl/conn/PoolingHttpClientConnectionManager.html
+
+		log.debug("##### Initializing custom ClientExecutor...");
+		int connectTimeout = (int) TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getUmaClientConnectTimeout());
+		int readTimeout = (int) TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getUmaClientReadTimeout());
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(
+				getPositiveValue(appConfiguration.getRptConnectionPoolMaxTotal(), DEFAULT_CONNECTION_POOL_MAX_TOTAL));
+		connectionManager.setDefaultMaxPerRoute(getPositiveValue(
+				appConfiguration.getRptConnectionPoolDefaultMaxPerRoute(), DEFAULT_CONNECTION_POOL_MAX_PER_ROUTE));
+		connectionManager.setValidateAfterInactivity(
+				getPositiveValue(appConfiguration.getRptConnectionPoolValidateAfterInactivity(),
+						DEFAULT_CONNECTION_POOL_VALIDATE_AFTER_INACTIVITY) * 1000);
+		CloseableHttpClient client = HttpClients.custom()
+				.setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD)
+						.setConnectTimeout(connectTimeout).setConnectionRequestTimeout(connectTimeout)
+						.setSocketTimeout(readTimeout).build())
+				.setKeepAliveStrategy(connectionKeepAliveStrategy).setConnectionManager(connectionManager).build();
+
+		ApacheHttpClient43Engine engine = new ApacheHttpClient43Engine(client);
+		engine.setFollowRedirects(true);
+
+		int maxConcurrency = apiProtectionConfiguration.getUmaClientMaxConcurrency();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>());
+		executor.allowCoreThreadTimeOut(true);
+
+		this.umaCircuitBreaker = new CircuitBreaker("oxAuth UMA", apiProtectionConfiguration.getUmaClientFailureThreshold(),
+				TimeUnit.SECONDS.toMillis(apiProtectionConfiguration.getUmaClientOpenCircuitTime()));
+		this.umaRequestExecutor = executor;
+		this.connectionManager = connectionManager;
+		this.clientHttpEngine = engine;
+
+		log.info("##### Initializing custom ClientExecutor DONE");
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (this.umaRequestExecutor != null) {
+			this.umaRequestExecutor.shutdownNow();
+		}
+		if (this.connectionManager != null) {
+			this.connectionManager.shutdown();
+		}
+	}
+
+	private int getPositiveValue(Integer value, int defaultValue) {
+		if ((value == null) || (value <= 0)) {
+			return defaultValue;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Execute call to oxAuth UMA endpoint with timeout. Call fails immediately
+	 * if oxAuth failed recently or too many calls are in progress
+	 * 
+	 * @throws RejectedExecutionException
+	 *             if call was not executed
+	 */
+	private <T> T executeUmaRequest(Callable<T> request) throws Exception {
+		if (this.umaRequestExecutor == null) {
+			return request.call();
+		}
+
+		if (!umaCircuitBreaker.allowRequest()) {
+			throw new RejectedExecutionException("oxAuth UMA endpoints are temporarily unavailable");
+		}
+
+		Future<T> future;
+		try {
+			future = umaRequestExecutor.submit(request);
+		} catch (RejectedExecutionException ex) {
+			umaCircuitBreaker.recordRejected();
+			throw new RejectedExecutionException("Too many concurrent calls to oxAuth UMA endpoints", ex);
+		}
+
+		long timeout = apiProtectionConfiguration.getUmaClientConnectTimeout()
+				+ apiProtectionConfiguration.getUmaClientReadTimeout();
+		try {
+			T result = future.get(timeout, TimeUnit.SECONDS);
+			umaCircuitBreaker.recordSuccess();
+
+			return result;
+		} catch (ExecutionException ex) {
+			// oxAuth is available if it rejects request
+			if (ex.getCause() instanceof ClientErrorException) {
+				umaCircuitBreaker.recordSuccess();
+			} else {
+				umaCircuitBreaker.recordFailure();
+			}
+
+			if (ex.getCause() instanceof Exception) {
+				throw (Exception) ex.getCause();
+			}
+			throw ex;
+		} catch (TimeoutException ex) {
+			future.cancel(true);
+			umaCircuitBreaker.recordFailure();
+			throw ex;
+		} catch (InterruptedException ex) {
+			future.cancel(true);
+			umaCircuitBreaker.recordRejected();
+			Thread.currentThread().interrupt();
+			throw ex;
+		}
+	}
+
 	@Produces
 	@ApplicationScoped
 	@Named("umaMetadataConfiguration")
@@ -230,17 +373,28 @@ public class UmaPermissionService implements Serializable {
 	}
 
 	private RptIntrospectionResponse getStatusResponse(Token patToken, String rptToken) {
-		String authorization = "Bearer " + patToken.getAccessToken();
-		if (this.rptStatusService == null) {
-			init(null);
+		// Active RPT status is reused until RPT expires
+		if (rptStatusCache != null) {
+			RptIntrospectionResponse cachedStatusResponse = rptStatusCache.get(rptToken);
+			if (cachedStatusResponse != null) {
+				return cachedStatusResponse;
+			}
 		}
+
 		// Determine RPT token to status
 		RptIntrospectionResponse rptStatusResponse = null;
 		try {
-			rptStatusResponse = this.rptStatusService.requestRptStatus(authorization, rptToken, "");
-		} catch (Exception ex) {
-			log.error("Failed to determine RPT status", ex);
-			ex.printStackTrace();
+			Jwt jwt = jwtTokenValidationService.validate(rptToken);
+			if (jwt != null) {
+				rptStatusResponse = jwtTokenValidationService.toRptIntrospectionResponse(jwt);
+			}
+		} catch (InvalidJwtException ex) {
+			log.debug("RPT token is invalid: {}", ex.getMessage());
+			return null;
+		}
+
+		if (rptStatusResponse == null) {
+			rptStatusResponse = requestRptStatus(patToken, rptToken);
 		}
 
 		// Validate RPT status response
@@ -248,9 +402,65 @@ public class UmaPermissionService implements Serializable {
 			return null;
 		}
 
+		if (rptStatusCache != null) {
+			long expiresAt = System.currentTimeMillis() + RPT_CACHE_DEFAULT_EXPIRATION;
+			if (rptStatusResponse.getExpiresAt() != null) {
+				expiresAt = TimeUnit.SECONDS.toMillis(rptStatusResponse.getExpiresAt());
+			}
+			rptStatusCache.put(rptToken, rptStatusResponse, expiresAt);
+		}
+
 		return rptStatusResponse;
 	}
 
+	private RptIntrospectionResponse requestRptStatus(Token patToken, final String rptToken) {
+		final String authorization = "Bearer " + patToken.getAccessToken();
+		if (this.rptStatusService == null) {
+			init(null);
+		}
+
+		try {
+			return executeUmaRequest(new Callable<RptIntrospectionResponse>() {
+				@Override
+				public RptIntrospectionResponse call() {
+					return rptStatusService.requestRptStatus(authorization, rptToken, "");
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			log.error("Failed to determine RPT status: {}", ex.getMessage());
+		} catch (Exception ex) {
+			log.error("Failed to determine RPT status", ex);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Remove cached status of RPT token, e.g. after token revocation
+	 */
+	public void evictRptStatus(String rptToken) {
+		if (rptStatusCache != null) {
+			rptStatusCache.remove(rptToken);
+		}
+	}
+
+	public void clearRptStatusCache() {
+		if (rptStatusCache != null) {
+			rptStatusCache.clear();
+		}
+	}
+
+	/**
+	 * Hit and miss counters of RPT status cache or null if cache is disabled
+	 */
+	public TokenCache.Statistics getRptStatusCacheStatistics() {
+		if (rptStatusCache == null) {
+			return null;
+		}
+
+		return rptStatusCache.getStatistics();
+	}
+
 	public String registerResourcePermission(Token patToken, String resourceId, List<String> scopes) {
 		//TODO: Added this if as a hack since init method is not called upon app startup in scim project   
 		if (permissionService == null) {
@@ -261,8 +471,26 @@ public class UmaPermissionService implements Serializable {
 		UmaPermission permission = new UmaPermission();
 		permission.setResourceId(resourceId);
 		permission.setScopes(scopes);
-		PermissionTicket ticket = permissionService.registerPermission("Bearer " + patToken.getAccessToken(),
-				UmaPermissionList.instance(permission));
+		final String authorization = "Bearer " + patToken.getAccessToken();
+		final UmaPermissionList permissionList = UmaPermissionList.instance(permission);
+
+		PermissionTicket ticket;
+		try {
+			ticket = executeUmaRequest(new Callable<PermissionTicket>() {
+				@Override
+				public PermissionTicket call() {
+					return permissionService.registerPermission(authorization, permissionList);
+				}
+			});
+		} catch (RuntimeException ex) {
+			throw ex;
+		} catch (TimeoutException ex) {
+			throw new RejectedExecutionException("oxAuth didn't respond to permission registration in time", ex);
+		} catch (Exception ex) {
+			log.error("Failed to register permission", ex);
+			return null;
+		}
+
 		if (ticket == null) {
 			return null;
 		}
@@ -270,7 +498,14 @@ public class UmaPermissionService implements Serializable {
 	}
 
 	private Response prepareRegisterPermissionsResponse(Token patToken, String resourceId, List<String> scopes) {
-		String ticket = registerResourcePermission(patToken, resourceId, scopes);
+		String ticket;
+		try {
+			ticket = registerResourcePermission(patToken, resourceId, scopes);
+		} catch (RejectedExecutionException ex) {
+			log.error("Failed to register permission: {}", ex.getMessage());
+			return prepareServiceUnavailableResponse();
+		}
+
 		if (StringHelper.isEmpty(ticket)) {
 			return null;
 		}
@@ -289,6 +524,20 @@ public class UmaPermissionService implements Serializable {
 		return response;
 	}
 
+	/**
+	 * Ask client to retry when oxAuth is expected to be called again
+	 */
+	private Response prepareServiceUnavailableResponse() {
+		long retryAfter = 1;
+		if (umaCircuitBreaker != null) {
+			retryAfter = Math.max(retryAfter,
+					TimeUnit.MILLISECONDS.toSeconds(umaCircuitBreaker.getRemainingOpenTime() + 999));
+		}
+		log.debug("Construct response: HTTP 503 (Service Unavailable), retry after: {}", retryAfter);
+
+		return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", retryAfter).build();
+	}
+
 	private String getHost(String uri) throws MalformedURLException {
 		URL url = new URL(uri);
 
@@ -22,6 +22,9 @@ import org.gluu.oxtrust.model.OxAuthSubjectType;
 import org.gluu.oxtrust.model.SignatureAlgorithm;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.persist.PersistenceEntryManager;
+import org.gluu.persist.model.BatchOperation;
+import org.gluu.persist.model.PagedResult;
+import org.gluu.persist.model.SearchScope;
 import org.gluu.search.filter.Filter;
 import org.gluu.util.StringHelper;
 import org.python.jline.internal.Log;
@@ -195,6 +198,23 @@ public class ClientService implements Serializable {
 		return persistenceEntryManager.findEntries(getDnForClient(null), OxAuthClient.class, null);
 	}
 
+	/**
+	 * Load one page of clients
+	 */
+	public PagedResult<OxAuthClient> findPagedClients(int start, int count) {
+		return persistenceEntryManager.findPagedEntries(getDnForClient(null), OxAuthClient.class, null, null, null,
+				null, start, count, count);
+	}
+
+	/**
+	 * Pass clients to batch operation chunk by chunk without collecting them in
+	 * memory
+	 */
+	public void processClients(BatchOperation<OxAuthClient> batchOperation, int chunkSize) {
+		persistenceEntryManager.findEntries(getDnForClient(null), OxAuthClient.class, null, SearchScope.SUB, null,
+				batchOperation, 0, 0, chunkSize);
+	}
+
 	/**
 	 * returns oxAuthClient by Dn
 	 *
@@ -0,0 +1,120 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.service;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+
+/**
+ * Keeps approximate counts of persons and groups for statistics. Counters are
+ * updated on add and remove and reconciled periodically with exact count from
+ * DB
+ */
+@ApplicationScoped
+public class EntryCountService implements Serializable {
+
+	private static final long serialVersionUID = 3518413528367305432L;
+
+	private static final long UNKNOWN_COUNT = -1;
+
+	// Exact counts may be expensive, don't run them more often
+	private static final long RECONCILE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private IPersonService personService;
+
+	@Inject
+	private IGroupService groupService;
+
+	private final AtomicLong personCount = new AtomicLong(UNKNOWN_COUNT);
+	private final AtomicLong groupCount = new AtomicLong(UNKNOWN_COUNT);
+
+	private volatile long lastReconcileTime;
+
+	public void personAdded() {
+		increment(personCount, 1);
+	}
+
+	public void personRemoved() {
+		increment(personCount, -1);
+	}
+
+	public void groupAdded() {
+		increment(groupCount, 1);
+	}
+
+	public void groupRemoved() {
+		increment(groupCount, -1);
+	}
+
+	/**
+	 * Get approximate count of persons
+	 * 
+	 * @return Count of persons or -1 if persons were not counted yet
+	 */
+	public long getPersonCount() {
+		return personCount.get();
+	}
+
+	/**
+	 * Get approximate count of groups
+	 * 
+	 * @return Count of groups or -1 if groups were not counted yet
+	 */
+	public long getGroupCount() {
+		return groupCount.get();
+	}
+
+	public boolean isCounted() {
+		return (personCount.get() != UNKNOWN_COUNT) && (groupCount.get() != UNKNOWN_COUNT);
+	}
+
+	/**
+	 * Count entries in DB if they were not counted yet or last count is too old
+	 */
+	public void reconcileIfExpired() {
+		if (!isCounted() || (System.currentTimeMillis() - lastReconcileTime > RECONCILE_INTERVAL)) {
+			reconcile();
+		}
+	}
+
+	/**
+	 * Replace approximate counts with exact counts from DB
+	 */
+	public synchronized void reconcile() {
+		long persons = personService.countPersons();
+		long groups = groupService.countGroups();
+
+		long previousPersons = personCount.getAndSet(persons);
+		long previousGroups = groupCount.getAndSet(groups);
+		this.lastReconcileTime = System.currentTimeMillis();
+
+		log.debug("Reconciled entry counts. Persons: {} (was {}), groups: {} (was {})", persons, previousPersons,
+				groups, previousGroups);
+	}
+
+	private void increment(AtomicLong counter, long delta) {
+		long count;
+		do {
+			count = counter.get();
+			if (count == UNKNOWN_COUNT) {
+				// Will be counted on first reconcile
+				return;
+			}
+		} while (!counter.compareAndSet(count, Math.max(0, count + delta)));
+	}
+
+}
@@ -8,12 +8,16 @@ package org.gluu.oxtrust.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.gluu.oxtrust.model.GluuBaseGroup;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.GluuGroupVisibility;
@@ -21,13 +25,26 @@ import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.persist.PersistenceEntryManager;
 import org.gluu.persist.exception.EntryPersistenceException;
 import org.gluu.persist.exception.operation.DuplicateEntryException;
+import org.gluu.persist.ldap.operation.LdapOperationService;
+import org.gluu.persist.model.BatchOperation;
+import org.gluu.persist.model.PagedResult;
 import org.gluu.persist.model.SearchScope;
 import org.gluu.persist.model.base.SimpleBranch;
+import org.gluu.persist.operation.PersistenceOperationService;
 import org.gluu.search.filter.Filter;
+import org.gluu.service.DataSourceTypeService;
 import org.gluu.util.ArrayHelper;
 import org.gluu.util.StringHelper;
 import org.slf4j.Logger;
 
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.controls.PermissiveModifyRequestControl;
+
 /**
  * Provides operations with groups
  * 
@@ -38,6 +55,12 @@ public class GroupService implements Serializable, IGroupService {
 
 	private static final long serialVersionUID = -9167587377957719152L;
 
+	// Maximum number of owners in one search filter
+	private static final int OWNERS_FILTER_BATCH_SIZE = 100;
+
+	// Maximum number of values in one attribute modification
+	private static final int MODIFICATION_VALUES_BATCH_SIZE = 1000;
+
 	@Inject
 	private Logger log;
 
@@ -50,6 +73,12 @@ public class GroupService implements Serializable, IGroupService {
 	@Inject
 	private PersonService personService;
 
+	@Inject
+	private DataSourceTypeService dataSourceTypeService;
+
+	@Inject
+	private EntryCountService entryCountService;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -64,6 +93,7 @@ public class GroupService implements Serializable, IGroupService {
 		List<GluuGroup> groups = findGroups(displayNameGroup, 1);
 		if (groups == null || groups.size() == 0) {
 			persistenceEntryManager.persist(group);
+			entryCountService.groupAdded();
 		} else {
 			throw new DuplicateEntryException("Duplicate displayName: " + group.getDisplayName());
 		}
@@ -81,6 +111,20 @@ public class GroupService implements Serializable, IGroupService {
 		persistenceEntryManager.merge(group);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IGroupService#updateGroupAttributes(org.gluu.
+	 * oxtrust.model.GluuGroup)
+	 */
+	@Override
+	public void updateGroupAttributes(GluuGroup group) {
+		// Entry without member attribute. Members are neither loaded nor sent to DB
+		// and concurrent member changes are kept
+		persistenceEntryManager.merge(new GluuBaseGroup(group));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -91,26 +135,38 @@ public class GroupService implements Serializable, IGroupService {
 	@Override
 	public void removeGroup(GluuGroup group) {
 		if (group.getMembers() != null) {
-			List<String> memberDNs = group.getMembers();
-			for (String memberDN : memberDNs) {
-				if (personService.contains(memberDN)) {
-					GluuCustomPerson person = personService.getPersonByDn(memberDN);
-					List<String> groupDNs = person.getMemberOf();
-					List<String> updatedGroupDNs = new ArrayList<String>();
-					updatedGroupDNs.addAll(groupDNs);
-					updatedGroupDNs.remove(group.getDn());
-					person.setMemberOf(updatedGroupDNs);
+			// Clear references in gluuPerson entries
+			List<String> groupDns = Arrays.asList(group.getDn());
+			LdapOperationService ldapOperationService = getLdapOperationService(group.getDn());
+			LDAPConnection connection = null;
+			try {
+				if (ldapOperationService != null) {
+					connection = ldapOperationService.getConnection();
+				}
+
+				for (String memberDN : group.getMembers()) {
 					try {
-						personService.updatePerson(person);
-					} catch (Exception e) {
-						e.printStackTrace();
+						if (connection == null) {
+							changePersonMemberOf(memberDN, group.getDn(), false);
+						} else {
+							modifyLdapValues(connection, memberDN, ModificationType.DELETE, OxTrustConstants.memberOf,
+									groupDns);
+						}
+					} catch (LDAPException | EntryPersistenceException ex) {
+						log.error("Failed to remove group '{}' from person '{}' memberOf", group.getDn(), memberDN, ex);
 					}
 				}
+			} catch (Exception ex) {
+				log.error("Failed to remove group '{}' references", group.getDn(), ex);
+			} finally {
+				if (connection != null) {
+					ldapOperationService.releaseConnection(connection);
+				}
 			}
 		}
 
 		persistenceEntryManager.remove(group);
-		// clear references in gluuPerson entries
+		entryCountService.groupRemoved();
 	}
 
 	/*
@@ -197,10 +253,220 @@ public class GroupService implements Serializable, IGroupService {
 		return persistenceEntryManager.countEntries(dn, searchClass, null, SearchScope.BASE);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IGroupService#getGroupDnsByOwners(java.util.
+	 * List)
+	 */
+	@Override
+	public List<String> getGroupDnsByOwners(List<String> ownerDns) {
+		List<String> result = new ArrayList<String>();
+		if ((ownerDns == null) || ownerDns.isEmpty()) {
+			return result;
+		}
+
+		String[] returnAttributes = new String[] { OxTrustConstants.inum };
+		for (int i = 0; i < ownerDns.size(); i += OWNERS_FILTER_BATCH_SIZE) {
+			List<String> batchOwnerDns = ownerDns.subList(i, Math.min(i + OWNERS_FILTER_BATCH_SIZE, ownerDns.size()));
+
+			Filter[] ownerFilters = new Filter[batchOwnerDns.size()];
+			for (int j = 0; j < batchOwnerDns.size(); j++) {
+				ownerFilters[j] = Filter.createEqualityFilter(OxTrustConstants.owner, batchOwnerDns.get(j));
+			}
+			Filter searchFilter = ownerFilters.length == 1 ? ownerFilters[0] : Filter.createORFilter(ownerFilters);
+
+			List<GluuGroup> groups = persistenceEntryManager.findEntries(getDnForGroup(null), GluuGroup.class,
+					searchFilter, returnAttributes);
+			for (GluuGroup group : groups) {
+				result.add(group.getDn());
+			}
+		}
+
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IGroupService#addMember(java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public void addMember(String groupDn, String memberDn) {
+		changeMembers(groupDn, Arrays.asList(memberDn), true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IGroupService#removeMember(java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public void removeMember(String groupDn, String memberDn) {
+		changeMembers(groupDn, Arrays.asList(memberDn), false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IGroupService#addMembers(java.lang.String,
+	 * java.util.List)
+	 */
+	@Override
+	public void addMembers(String groupDn, List<String> memberDns) {
+		changeMembers(groupDn, memberDns, true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IGroupService#removeMembers(java.lang.String,
+	 * java.util.List)
+	 */
+	@Override
+	public void removeMembers(String groupDn, List<String> memberDns) {
+		changeMembers(groupDn, memberDns, false);
+	}
+
+	private void changeMembers(String groupDn, List<String> memberDns, boolean add) {
+		if ((memberDns == null) || memberDns.isEmpty()) {
+			return;
+		}
+
+		LdapOperationService ldapOperationService = getLdapOperationService(groupDn);
+		if (ldapOperationService == null) {
+			changeGroupMembers(groupDn, memberDns, add);
+			for (String memberDn : memberDns) {
+				changePersonMemberOf(memberDn, groupDn, add);
+			}
+			return;
+		}
+
+		ModificationType modificationType = add ? ModificationType.ADD : ModificationType.DELETE;
+		LDAPConnection connection = null;
+		try {
+			connection = ldapOperationService.getConnection();
+			for (int i = 0; i < memberDns.size(); i += MODIFICATION_VALUES_BATCH_SIZE) {
+				List<String> batchMemberDns = memberDns.subList(i,
+						Math.min(i + MODIFICATION_VALUES_BATCH_SIZE, memberDns.size()));
+				modifyLdapValues(connection, groupDn, modificationType, OxTrustConstants.member, batchMemberDns);
+			}
+
+			List<String> groupDns = Arrays.asList(groupDn);
+			for (String memberDn : memberDns) {
+				modifyLdapValues(connection, memberDn, modificationType, OxTrustConstants.memberOf, groupDns);
+			}
+		} catch (LDAPException ex) {
+			throw new EntryPersistenceException(String.format("Failed to %s members of group '%s'",
+					add ? "add" : "remove", groupDn), ex);
+		} finally {
+			if (connection != null) {
+				ldapOperationService.releaseConnection(connection);
+			}
+		}
+	}
+
+	/**
+	 * Add or delete only specified values of attribute. Values which already
+	 * exist or not exist are skipped
+	 */
+	private void modifyLdapValues(LDAPConnection connection, String dn, ModificationType modificationType,
+			String attributeName, List<String> values) throws LDAPException {
+		ModifyRequest modifyRequest = new ModifyRequest(dn,
+				new Modification(modificationType, attributeName, values.toArray(new String[values.size()])));
+		modifyRequest.addControl(new PermissiveModifyRequestControl());
+		try {
+			connection.modify(modifyRequest);
+		} catch (LDAPException ex) {
+			ResultCode resultCode = ex.getResultCode();
+			boolean valuesConflict = ResultCode.ATTRIBUTE_OR_VALUE_EXISTS.equals(resultCode)
+					|| ResultCode.NO_SUCH_ATTRIBUTE.equals(resultCode);
+			boolean entryRemoved = ModificationType.DELETE.equals(modificationType)
+					&& ResultCode.NO_SUCH_OBJECT.equals(resultCode);
+			if (entryRemoved || (valuesConflict && (values.size() == 1))) {
+				log.debug("Skipping {} of '{}' values of '{}': {}", modificationType, attributeName, dn, resultCode);
+				return;
+			}
+			if (!valuesConflict) {
+				throw ex;
+			}
+
+			// Server doesn't support permissive modify. Apply values one by one
+			for (String value : values) {
+				modifyLdapValues(connection, dn, modificationType, attributeName, Arrays.asList(value));
+			}
+		}
+	}
+
+	private void changeGroupMembers(String groupDn, List<String> memberDns, boolean add) {
+		if (!containsGroup(groupDn)) {
+			if (add) {
+				throw new EntryPersistenceException(String.format("Group '%s' not exists", groupDn));
+			}
+			return;
+		}
+
+		GluuGroup group = getGroupByDn(groupDn);
+		Set<String> members = new LinkedHashSet<String>();
+		if (group.getMembers() != null) {
+			members.addAll(group.getMembers());
+		}
+
+		boolean changed = add ? members.addAll(memberDns) : members.removeAll(memberDns);
+		if (changed) {
+			group.setMembers(members.isEmpty() ? null : new ArrayList<String>(members));
+			updateGroup(group);
+		}
+	}
+
+	private void changePersonMemberOf(String personDn, String groupDn, boolean add) {
+		if (!personService.contains(personDn)) {
+			return;
+		}
+
+		GluuCustomPerson person = personService.getPersonByDn(personDn);
+		List<String> memberOf = new ArrayList<String>();
+		if (person.getMemberOf() != null) {
+			memberOf.addAll(person.getMemberOf());
+		}
+
+		boolean changed = add ? !memberOf.contains(groupDn) && memberOf.add(groupDn) : memberOf.remove(groupDn);
+		if (!changed) {
+			return;
+		}
+
+		person.setMemberOf(memberOf);
+		try {
+			personService.updatePerson(person);
+		} catch (Exception ex) {
+			throw new EntryPersistenceException(String.format("Failed to update memberOf of person '%s'", personDn), ex);
+		}
+	}
+
+	private LdapOperationService getLdapOperationService(String dn) {
+		PersistenceOperationService persistenceOperationService = persistenceEntryManager.getOperationService();
+		if (dataSourceTypeService.isLDAP(dn) && (persistenceOperationService instanceof LdapOperationService)) {
+			return (LdapOperationService) persistenceOperationService;
+		}
+
+		return null;
+	}
+
 	public boolean contains(String groupDn) {
 		return persistenceEntryManager.contains(groupDn, GluuCustomPerson.class);
 	}
 
+	public boolean containsGroup(String groupDn) {
+		return persistenceEntryManager.contains(groupDn, GluuGroup.class);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -241,6 +507,23 @@ public class GroupService implements Serializable, IGroupService {
 		return persistenceEntryManager.findEntries(getDnForGroup(null), GluuGroup.class, null, sizeLimit);
 	}
 
+	/**
+	 * Load one page of groups
+	 */
+	public PagedResult<GluuGroup> findPagedGroups(int start, int count) {
+		return persistenceEntryManager.findPagedEntries(getDnForGroup(null), GluuGroup.class, null, null, null, null,
+				start, count, count);
+	}
+
+	/**
+	 * Pass groups to batch operation chunk by chunk without collecting them in
+	 * memory
+	 */
+	public void processGroups(BatchOperation<GluuGroup> batchOperation, int chunkSize) {
+		persistenceEntryManager.findEntries(getDnForGroup(null), GluuGroup.class, null, SearchScope.SUB, null,
+				batchOperation, 0, 0, chunkSize);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
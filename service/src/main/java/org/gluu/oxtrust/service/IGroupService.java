@@ -130,4 +130,63 @@ public interface IGroupService {
 	List<GluuGroup> getAllGroups(int sizeLimit);
 
 	public abstract boolean isMemberOrOwner(String[] groupDNs, String personDN) throws Exception;
+
+	/**
+	 * Get DNs of groups owned by specified persons. Only group DNs are loaded
+	 * 
+	 * @param ownerDns
+	 *            Person DNs
+	 * @return List of group DNs
+	 */
+	public abstract List<String> getGroupDnsByOwners(List<String> ownerDns);
+
+	/**
+	 * Update group entry without changing its members
+	 * 
+	 * @param group
+	 *            Group
+	 */
+	public abstract void updateGroupAttributes(GluuGroup group);
+
+	/**
+	 * Add single member to group and group to member's memberOf. Only added
+	 * values are sent to DB
+	 * 
+	 * @param groupDn
+	 *            Group DN
+	 * @param memberDn
+	 *            Member DN
+	 */
+	public abstract void addMember(String groupDn, String memberDn);
+
+	/**
+	 * Remove single member from group and group from member's memberOf. Only
+	 * removed values are sent to DB
+	 * 
+	 * @param groupDn
+	 *            Group DN
+	 * @param memberDn
+	 *            Member DN
+	 */
+	public abstract void removeMember(String groupDn, String memberDn);
+
+	/**
+	 * Add members to group and group to members memberOf
+	 * 
+	 * @param groupDn
+	 *            Group DN
+	 * @param memberDns
+	 *            Member DNs
+	 */
+	public abstract void addMembers(String groupDn, List<String> memberDns);
+
+	/**
+	 * Remove members from group and group from members memberOf
+	 * 
+	 * @param groupDn
+	 *            Group DN
+	 * @param memberDns
+	 *            Member DNs
+	 */
+	public abstract void removeMembers(String groupDn, List<String> memberDns);
 }
\ No newline at end of file
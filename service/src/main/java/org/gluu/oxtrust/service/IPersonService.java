@@ -5,6 +5,7 @@
  */
 package org.gluu.oxtrust.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +30,15 @@ public interface IPersonService {
 	// method
 	public abstract void addPerson(GluuCustomPerson person) throws Exception;
 
+	/**
+	 * Add new person without uid lookup. Caller should check if uid is unique
+	 * before, e.g. for whole batch of persons
+	 * 
+	 * @param person
+	 *            Person
+	 */
+	public abstract void persistPerson(GluuCustomPerson person);
+
 	/**
 	 * Add person entry
 	 * 
@@ -99,6 +109,17 @@ public interface IPersonService {
 
 	public abstract GluuCustomPerson findPersonByDn(String dn, String... returnAttributes);
 
+	/**
+	 * Find persons by DNs with few searches instead of loading persons one by one
+	 * 
+	 * @param dns
+	 *            Person DNs
+	 * @param returnAttributes
+	 *            Attributes to load
+	 * @return List of existing persons in order of specified DNs
+	 */
+	public abstract List<GluuCustomPerson> findPersonsByDns(Collection<String> dns, String... returnAttributes);
+
 	/**
 	 * Check if LDAP server contains person with specified attributes
 	 * 
@@ -215,6 +236,23 @@ public interface IPersonService {
 
 	List<GluuCustomPerson> findPersonsByMailids(List<String> mailids, String[] returnAttributes) throws Exception;
 
+	/**
+	 * Search persons which have one of values in attribute. Values are checked
+	 * with OR filters of batchSize values
+	 * 
+	 * @param attributeName
+	 *            Attribute name
+	 * @param values
+	 *            Attribute values
+	 * @param batchSize
+	 *            Count of values in one filter
+	 * @param returnAttributes
+	 *            Attributes to load
+	 * @return List of persons
+	 */
+	List<GluuCustomPerson> findPersonsByAttributeValues(String attributeName, List<String> values, int batchSize,
+			String... returnAttributes);
+
 	String getPersonUids(List<GluuCustomPerson> persons) throws Exception;
 
 	String getPersonMailids(List<GluuCustomPerson> persons) throws Exception;
@@ -9,7 +9,9 @@ package org.gluu.oxtrust.service;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +31,7 @@ import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.persist.PersistenceEntryManager;
 import org.gluu.persist.exception.operation.DuplicateEntryException;
 import org.gluu.persist.model.AttributeData;
+import org.gluu.persist.model.BatchOperation;
 import org.gluu.persist.model.PagedResult;
 import org.gluu.persist.model.SearchScope;
 import org.gluu.persist.model.base.SimpleBranch;
@@ -50,6 +53,9 @@ public class PersonService implements Serializable, IPersonService {
 
 	private static final long serialVersionUID = 6685720517520443399L;
 
+	// Maximum number of persons in one search filter
+	private static final int PERSONS_FILTER_BATCH_SIZE = 100;
+
 	@Inject
 	private Logger log;
 
@@ -65,6 +71,9 @@ public class PersonService implements Serializable, IPersonService {
 	@Inject
 	private OrganizationService organizationService;
 
+	@Inject
+	private EntryCountService entryCountService;
+
 	private List<GluuCustomAttribute> mandatoryAttributes;
 
 	/*
@@ -110,6 +119,7 @@ public class PersonService implements Serializable, IPersonService {
 			if (persons == null || persons.size() == 0) {
 				person.setCreationDate(new Date());
 				persistenceEntryManager.persist(person);
+				entryCountService.personAdded();
 			} else {
 				throw new DuplicateEntryException("Duplicate UID value: " + person.getUid());
 			}
@@ -123,6 +133,20 @@ public class PersonService implements Serializable, IPersonService {
 
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IPersonService#persistPerson(org.gluu.oxtrust.
+	 * model.GluuCustomPerson)
+	 */
+	@Override
+	public void persistPerson(GluuCustomPerson person) {
+		person.setCreationDate(new Date());
+		persistenceEntryManager.persist(person);
+		entryCountService.personAdded();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -159,6 +183,7 @@ public class PersonService implements Serializable, IPersonService {
 	@Override
 	public void removePerson(GluuCustomPerson person) {
 		persistenceEntryManager.removeRecursively(person.getDn());
+		entryCountService.personRemoved();
 	}
 
 	/*
@@ -270,6 +295,28 @@ public class PersonService implements Serializable, IPersonService {
 				returnAttributes);
 	}
 
+	/**
+	 * Load one page of persons matching pattern. All persons are loaded if
+	 * pattern is empty
+	 */
+	public PagedResult<GluuCustomPerson> findPagedPersons(String pattern, int start, int count,
+			String... returnAttributes) {
+		Filter filter = StringHelper.isEmpty(pattern) ? null : buildFilter(pattern);
+		return persistenceEntryManager.findPagedEntries(getDnForPerson(null), GluuCustomPerson.class, filter,
+				returnAttributes, null, null, start, count, count);
+	}
+
+	/**
+	 * Pass persons matching pattern to batch operation chunk by chunk without
+	 * collecting them in memory
+	 */
+	public void processPersons(String pattern, BatchOperation<GluuCustomPerson> batchOperation, int chunkSize,
+			String... returnAttributes) {
+		Filter filter = StringHelper.isEmpty(pattern) ? null : buildFilter(pattern);
+		persistenceEntryManager.findEntries(getDnForPerson(null), GluuCustomPerson.class, filter, SearchScope.SUB,
+				returnAttributes, batchOperation, 0, 0, chunkSize);
+	}
+
 	public PagedResult<GluuCustomPerson> findPeople(String pattern, int start, int count) {
 		Filter filter = buildFilterForList(pattern);
 		String[] attributes = { "inum", "uid", "displayName", "mail", "gluuStatus" };
@@ -286,13 +333,7 @@ public class PersonService implements Serializable, IPersonService {
 	 */
 	@Override
 	public List<GluuCustomPerson> findPersonsByUids(List<String> uids, String[] returnAttributes) throws Exception {
-		List<Filter> uidFilters = new ArrayList<Filter>();
-		for (String uid : uids) {
-			uidFilters.add(Filter.createEqualityFilter(OxConstants.UID, uid));
-		}
-		Filter filter = Filter.createORFilter(uidFilters);
-		return persistenceEntryManager.findEntries(getDnForPerson(null), GluuCustomPerson.class, filter,
-				returnAttributes);
+		return findPersonsByAttributeValues(OxConstants.UID, uids, PERSONS_FILTER_BATCH_SIZE, returnAttributes);
 	}
 
 	/*
@@ -305,15 +346,42 @@ public class PersonService implements Serializable, IPersonService {
 	@Override
 	public List<GluuCustomPerson> findPersonsByMailids(List<String> mailids, String[] returnAttributes)
 			throws Exception {
-		List<Filter> mailidFilters = new ArrayList<Filter>();
-		for (String mailid : mailids) {
-			mailidFilters.add(Filter.createEqualityFilter(OxTrustConstants.mail, mailid));
-		}
-		Filter filter = Filter.createORFilter(mailidFilters);
-		return persistenceEntryManager.findEntries(getDnForPerson(null), GluuCustomPerson.class, filter,
+		return findPersonsByAttributeValues(OxTrustConstants.mail, mailids, PERSONS_FILTER_BATCH_SIZE,
 				returnAttributes);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IPersonService#findPersonsByAttributeValues(
+	 * java.lang.String, java.util.List, int, java.lang.String[])
+	 */
+	@Override
+	public List<GluuCustomPerson> findPersonsByAttributeValues(String attributeName, List<String> values,
+			int batchSize, String... returnAttributes) {
+		List<GluuCustomPerson> result = new ArrayList<GluuCustomPerson>();
+		if ((values == null) || values.isEmpty()) {
+			return result;
+		}
+
+		// Use few not too big OR filters instead of one filter with all values
+		String baseDn = getDnForPerson(null);
+		int filterSize = Math.max(1, batchSize);
+		for (int i = 0; i < values.size(); i += filterSize) {
+			List<String> batchValues = values.subList(i, Math.min(i + filterSize, values.size()));
+
+			List<Filter> filters = new ArrayList<Filter>(batchValues.size());
+			for (String value : batchValues) {
+				filters.add(Filter.createEqualityFilter(attributeName, value));
+			}
+			result.addAll(persistenceEntryManager.findEntries(baseDn, GluuCustomPerson.class,
+					Filter.createORFilter(filters), returnAttributes));
+		}
+
+		return result;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -326,6 +394,78 @@ public class PersonService implements Serializable, IPersonService {
 		return persistenceEntryManager.find(dn, GluuCustomPerson.class, returnAttributes);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.gluu.oxtrust.ldap.service.IPersonService#findPersonsByDns(java.util.
+	 * Collection, java.lang.String[])
+	 */
+	@Override
+	public List<GluuCustomPerson> findPersonsByDns(Collection<String> dns, String... returnAttributes) {
+		if ((dns == null) || dns.isEmpty()) {
+			return new ArrayList<GluuCustomPerson>(0);
+		}
+
+		Map<String, GluuCustomPerson> persons = new HashMap<String, GluuCustomPerson>(dns.size());
+		List<String> inums = new ArrayList<String>(dns.size());
+		for (String dn : dns) {
+			String inum = getInumFromDn(dn);
+			if (inum == null) {
+				// Person is not under people branch
+				if (contains(dn)) {
+					persons.put(StringHelper.toLowerCase(dn), findPersonByDn(dn, returnAttributes));
+				}
+			} else {
+				inums.add(inum);
+			}
+		}
+
+		String baseDn = getDnForPerson(null);
+		for (int i = 0; i < inums.size(); i += PERSONS_FILTER_BATCH_SIZE) {
+			List<String> batchInums = inums.subList(i, Math.min(i + PERSONS_FILTER_BATCH_SIZE, inums.size()));
+
+			List<Filter> inumFilters = new ArrayList<Filter>(batchInums.size());
+			for (String inum : batchInums) {
+				inumFilters.add(Filter.createEqualityFilter(OxTrustConstants.inum, inum));
+			}
+			List<GluuCustomPerson> batchPersons = persistenceEntryManager.findEntries(baseDn, GluuCustomPerson.class,
+					Filter.createORFilter(inumFilters), returnAttributes);
+			for (GluuCustomPerson person : batchPersons) {
+				persons.put(StringHelper.toLowerCase(person.getDn()), person);
+			}
+		}
+
+		// Keep order of requested DNs
+		List<GluuCustomPerson> result = new ArrayList<GluuCustomPerson>(persons.size());
+		for (String dn : dns) {
+			GluuCustomPerson person = persons.remove(StringHelper.toLowerCase(dn));
+			if (person != null) {
+				result.add(person);
+			}
+		}
+
+		return result;
+	}
+
+	private String getInumFromDn(String dn) {
+		if ((dn == null) || !StringHelper.toLowerCase(dn).startsWith(OxTrustConstants.inum + "=")) {
+			return null;
+		}
+
+		int rdnEnd = dn.indexOf(',');
+		if (rdnEnd == -1) {
+			return null;
+		}
+
+		String inum = dn.substring(OxTrustConstants.inum.length() + 1, rdnEnd);
+		if (!StringHelper.equalsIgnoreCase(getDnForPerson(inum), dn)) {
+			return null;
+		}
+
+		return inum;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -43,6 +43,7 @@ public final class OxTrustConstants extends OxConstants {
 	public static final String cn = "cn";
 	public static final String owner = "owner";
 	public static final String member = "member";
+	public static final String memberOf = "memberOf";
 
 	public static final String attributeName = "gluuAttributeName";
 
@@ -0,0 +1,116 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.auth;
+
+import org.gluu.oxtrust.auth.CircuitBreaker.State;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterFailureThreshold() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 3, 60000);
+
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+        assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+        assertFalse(circuitBreaker.allowRequest());
+        assertTrue(circuitBreaker.getRemainingOpenTime() > 0);
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 3, 60000);
+
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+    }
+
+    @Test
+    public void testTrialCallClosesCircuit() throws Exception {
+        CircuitBreaker circuitBreaker = openCircuit(100);
+
+        Thread.sleep(150);
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(circuitBreaker.getState(), State.HALF_OPEN);
+        assertFalse(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordSuccess();
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void testFailedTrialCallOpensCircuit() throws Exception {
+        CircuitBreaker circuitBreaker = openCircuit(100);
+
+        Thread.sleep(150);
+        assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void testRejectedCallIsIgnoredInClosedCircuit() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, 60000);
+
+        circuitBreaker.recordRejected();
+        circuitBreaker.recordRejected();
+
+        assertEquals(circuitBreaker.getState(), State.CLOSED);
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void testRejectedTrialCallOpensCircuit() throws Exception {
+        CircuitBreaker circuitBreaker = openCircuit(100);
+
+        Thread.sleep(150);
+        assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordRejected();
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void testStaleTrialCallAllowsNextTrial() throws Exception {
+        CircuitBreaker circuitBreaker = openCircuit(100);
+
+        Thread.sleep(150);
+        assertTrue(circuitBreaker.allowRequest());
+        assertFalse(circuitBreaker.allowRequest());
+
+        // Trial call didn't record any result
+        Thread.sleep(150);
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(circuitBreaker.getState(), State.HALF_OPEN);
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    private CircuitBreaker openCircuit(long openTimeMillis) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, openTimeMillis);
+        circuitBreaker.recordFailure();
+        assertEquals(circuitBreaker.getState(), State.OPEN);
+
+        return circuitBreaker;
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.auth;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class TokenCacheTest {
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        TokenCache<String> cache = new TokenCache<String>(10, 100);
+        cache.put("token", "value", 0);
+        assertEquals(cache.get("token"), "value");
+
+        Thread.sleep(150);
+        assertNull(cache.get("token"));
+
+        TokenCache.Statistics statistics = cache.getStatistics();
+        assertEquals(statistics.getHits(), 1);
+        assertEquals(statistics.getMisses(), 1);
+        assertEquals(statistics.getEvictions(), 1);
+        assertEquals(statistics.getSize(), 0);
+    }
+
+    @Test
+    public void testTokenExpiration() {
+        TokenCache<String> cache = new TokenCache<String>(10, 60000);
+
+        cache.put("expired", "value", System.currentTimeMillis() - 1000);
+        assertNull(cache.get("expired"));
+
+        cache.put("valid", "value", System.currentTimeMillis() + 60000);
+        assertEquals(cache.get("valid"), "value");
+    }
+
+    @Test
+    public void testTimeToIdle() throws Exception {
+        TokenCache<String> cache = new TokenCache<String>(10, 60000, 300);
+        cache.put("token", "value", 0);
+
+        Thread.sleep(200);
+        assertEquals(cache.get("token"), "value");
+        Thread.sleep(200);
+        assertEquals(cache.get("token"), "value");
+
+        Thread.sleep(400);
+        assertNull(cache.get("token"));
+    }
+
+    @Test
+    public void testSizeBound() {
+        long now = System.currentTimeMillis();
+        TokenCache<String> cache = new TokenCache<String>(10, 60000);
+        for (int i = 0; i < 100; i++) {
+            cache.put("token-" + i, "value-" + i, now + 10000 + i * 100);
+            assertTrue(cache.getStatistics().getSize() <= 10);
+        }
+
+        assertEquals(cache.get("token-99"), "value-99");
+        assertTrue(cache.getStatistics().getEvictions() >= 90);
+    }
+
+    @Test
+    public void testEvictsEntriesWhichExpireFirst() {
+        long now = System.currentTimeMillis();
+        TokenCache<String> cache = new TokenCache<String>(10, 60000);
+        cache.put("first", "value", now + 10000);
+        for (int i = 0; i < 9; i++) {
+            cache.put("token-" + i, "value-" + i, now + 20000 + i * 100);
+        }
+
+        cache.put("last", "value", now + 50000);
+
+        assertNull(cache.get("first"));
+        assertEquals(cache.get("token-8"), "value-8");
+        assertEquals(cache.get("last"), "value");
+        assertTrue(cache.getStatistics().getSize() <= 10);
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        TokenCache<String> cache = new TokenCache<String>(10, 60000);
+        cache.put("a", "value-a", 0);
+        cache.put("b", "value-b", 0);
+        cache.put("c", "value-c", 0);
+
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(cache.get("b"), "value-b");
+
+        cache.clear();
+        assertNull(cache.get("b"));
+        assertNull(cache.get("c"));
+        assertEquals(cache.getStatistics().getEvictions(), 3);
+        assertEquals(cache.getStatistics().getSize(), 0);
+    }
+
+    @Test
+    public void testLoadedResultIsCached() throws Exception {
+        TokenCache<String> cache = new TokenCache<String>(10, 60000);
+        final int[] loads = new int[1];
+        TokenCache.Loader<String> loader = new TokenCache.Loader<String>() {
+
+            @Override
+            public String load() {
+                loads[0]++;
+                return "value";
+            }
+
+            @Override
+            public long getExpiresAt(String value) {
+                return 0;
+            }
+        };
+
+        assertEquals(cache.getOrLoad("token", loader), "value");
+        assertEquals(cache.getOrLoad("token", loader), "value");
+        assertEquals(loads[0], 1);
+    }
+
+    @Test
+    public void testLoadWaitTimeout() throws Exception {
+        final TokenCache<String> cache = new TokenCache<String>(10, 60000, 0, 100);
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch loadFinished = new CountDownLatch(1);
+        Thread loadThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    cache.getOrLoad("token", new TokenCache.Loader<String>() {
+
+                        @Override
+                        public String load() throws Exception {
+                            loadStarted.countDown();
+                            loadFinished.await();
+                            return "value";
+                        }
+
+                        @Override
+                        public long getExpiresAt(String value) {
+                            return 0;
+                        }
+                    });
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        });
+        loadThread.start();
+        loadStarted.await();
+
+        try {
+            cache.getOrLoad("token", new TokenCache.Loader<String>() {
+
+                @Override
+                public String load() {
+                    throw new IllegalStateException("Token should be loaded by concurrent call");
+                }
+
+                @Override
+                public long getExpiresAt(String value) {
+                    return 0;
+                }
+            });
+            fail("Waiting for concurrent load should time out");
+        } catch (TimeoutException ex) {
+            assertEquals(cache.getStatistics().getCoalesced(), 1);
+        } finally {
+            loadFinished.countDown();
+            loadThread.join();
+        }
+
+        assertEquals(cache.get("token"), "value");
+    }
+
+}